@@ -0,0 +1,177 @@
+package com.datacenter.canal.benchmark;
+
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.alibaba.otter.canal.protocol.Message;
+import com.datacenter.canal.load.support.SingleDml;
+import com.datacenter.canal.select.support.EtlMessage;
+import com.datacenter.canal.select.support.EtlMessageUtil;
+
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * benchmark 使用的合成資料，欄位型別依序循環，模擬一般業務表
+ */
+public class BenchmarkFixtures {
+
+    public static final String DATABASE = "bench";
+    public static final String TABLE = "t_order";
+
+    // 欄位型別: sqlType, mysqlType, 數值
+    private static final int[] SQL_TYPES = {Types.VARCHAR, Types.INTEGER, Types.DECIMAL, Types.TIMESTAMP, Types.TINYINT,
+            Types.LONGVARCHAR, Types.BIGINT, Types.DATE};
+    private static final String[] MYSQL_TYPES = {"varchar(64)", "int(11)", "decimal(12,2)", "datetime", "tinyint(1)",
+            "text", "bigint(20)", "date"};
+    // 目標庫欄位型別 (PostgreSQL 及 H2 皆可使用)
+    private static final String[] TARGET_TYPES = {"VARCHAR(64)", "INTEGER", "DECIMAL(12,2)", "TIMESTAMP", "SMALLINT",
+            "TEXT", "BIGINT", "DATE"};
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * 建立 canal Message，每個 entry 為一個 row change event
+     *
+     * @param eventType      INSERT, UPDATE 或 DELETE
+     * @param columns        欄位數 (含 PK)
+     * @param rows           總筆數
+     * @param rowsPerEntry   每個 entry 的筆數
+     * @param firstId        第一筆的 PK
+     */
+    public static Message message(CanalEntry.EventType eventType, int columns, int rows, int rowsPerEntry, long firstId) {
+        List<CanalEntry.Entry> entries = new ArrayList<>();
+        entries.add(transaction(CanalEntry.EntryType.TRANSACTIONBEGIN));
+
+        for (int start = 0; start < rows; start += rowsPerEntry) {
+            CanalEntry.RowChange.Builder rowChange = CanalEntry.RowChange.newBuilder()
+                    .setEventType(eventType).setIsDdl(false);
+
+            for (int i = start; i < Math.min(start + rowsPerEntry, rows); i++) {
+                long id = firstId + i;
+                CanalEntry.RowData.Builder rowData = CanalEntry.RowData.newBuilder();
+                if (eventType == CanalEntry.EventType.DELETE) {
+                    rowData.addAllBeforeColumns(row(id, columns, 0, false));
+                } else if (eventType == CanalEntry.EventType.UPDATE) {
+                    rowData.addAllBeforeColumns(row(id, columns, 0, false));
+                    rowData.addAllAfterColumns(row(id, columns, 1, true));
+                } else {
+                    rowData.addAllAfterColumns(row(id, columns, 0, false));
+                }
+                rowChange.addRowDatas(rowData);
+            }
+
+            CanalEntry.Header header = CanalEntry.Header.newBuilder()
+                    .setSchemaName(DATABASE).setTableName(TABLE).setEventType(eventType)
+                    .setExecuteTime(System.currentTimeMillis())
+                    .setLogfileName("mysql-bin.000001").setLogfileOffset(4 + start * 100L)
+                    .build();
+            entries.add(CanalEntry.Entry.newBuilder().setEntryType(CanalEntry.EntryType.ROWDATA)
+                    .setHeader(header).setStoreValue(rowChange.build().toByteString()).build());
+        }
+
+        entries.add(transaction(CanalEntry.EntryType.TRANSACTIONEND));
+        return new Message(1, entries);
+    }
+
+    /**
+     * 建立單一筆資料的欄位
+     *
+     * @param version 修改版本，update 時修改前後數值不同
+     * @param updated 是否標記非 PK 欄位中的前兩個為已修改
+     */
+    private static List<CanalEntry.Column> row(long id, int columns, int version, boolean updated) {
+        List<CanalEntry.Column> row = new ArrayList<>(columns);
+        row.add(CanalEntry.Column.newBuilder().setIndex(0).setName("id").setIsKey(true)
+                .setSqlType(Types.BIGINT).setMysqlType("bigint(20)").setValue(String.valueOf(id)).build());
+
+        for (int c = 1; c < columns; c++) {
+            int type = (c - 1) % SQL_TYPES.length;
+            row.add(CanalEntry.Column.newBuilder().setIndex(c).setName("col_" + c).setIsKey(false)
+                    .setSqlType(SQL_TYPES[type]).setMysqlType(MYSQL_TYPES[type])
+                    .setValue(value(SQL_TYPES[type], id, c, version))
+                    .setUpdated(updated && c <= 2).build());
+        }
+        return row;
+    }
+
+    private static String value(int sqlType, long id, int column, int version) {
+        switch (sqlType) {
+            case Types.INTEGER:
+                return String.valueOf(id % 100000 + version);
+            case Types.DECIMAL:
+                return (id % 1000) + "." + (column % 100);
+            case Types.TIMESTAMP:
+                return "2023-01-0" + (version + 1) + " 12:" + (10 + column % 50) + ":00";
+            case Types.TINYINT:
+                return String.valueOf((id + version) % 2);
+            case Types.BIGINT:
+                return String.valueOf(id * 31 + column);
+            case Types.DATE:
+                return "2023-02-0" + (version + 1);
+            case Types.LONGVARCHAR:
+                return "description of row " + id + " column " + column + " version " + version;
+            default:
+                return "value_" + id + "_" + column + "_" + version;
+        }
+    }
+
+    /**
+     * 目標表的建表語句，欄位與 {@link #message} 產生的資料一致
+     */
+    public static String createTableSql(String table, int columns) {
+        StringBuilder sql = new StringBuilder("CREATE TABLE ").append(table).append(" (id BIGINT PRIMARY KEY");
+        for (int c = 1; c < columns; c++) {
+            sql.append(", col_").append(c).append(' ').append(TARGET_TYPES[(c - 1) % TARGET_TYPES.length]);
+        }
+        return sql.append(')').toString();
+    }
+
+    private static CanalEntry.Entry transaction(CanalEntry.EntryType entryType) {
+        return CanalEntry.Entry.newBuilder().setEntryType(entryType)
+                .setHeader(CanalEntry.Header.newBuilder().setSchemaName(DATABASE).setLogfileName("mysql-bin.000001").build())
+                .build();
+    }
+
+    /**
+     * 混合 INSERT、UPDATE、DELETE 的 EtlMessage，UPDATE 及 DELETE 與 INSERT 的 PK 部分重疊，以產生相依性
+     */
+    public static List<EtlMessage> mixedMessages(int columns, int rows) {
+        List<EtlMessage> messages = new ArrayList<>();
+        messages.addAll(EtlMessageUtil.convert(message(CanalEntry.EventType.INSERT, columns, rows, 50, 0)));
+        messages.addAll(EtlMessageUtil.convert(message(CanalEntry.EventType.UPDATE, columns, rows / 2, 50, rows / 4)));
+        messages.addAll(EtlMessageUtil.convert(message(CanalEntry.EventType.DELETE, columns, rows / 4, 50, rows / 2)));
+        return messages;
+    }
+
+    /**
+     * 將 EtlMessage 展開為 SingleDml
+     */
+    public static List<SingleDml> singleDmlList(List<EtlMessage> messages) {
+        return messages.stream().flatMap(message ->
+                IntStream.range(0, message.getData().size()).mapToObj(i -> new SingleDml(message, i))
+        ).filter(SingleDml::isChange).collect(Collectors.toList());
+    }
+
+    /**
+     * 不執行任何動作的 PreparedStatement，僅量測參數設置本身的成本
+     */
+    public static PreparedStatement noopPreparedStatement() {
+        return (PreparedStatement) Proxy.newProxyInstance(BenchmarkFixtures.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    Class<?> returnType = method.getReturnType();
+                    if (returnType == boolean.class) {
+                        return false;
+                    } else if (returnType == int.class) {
+                        return 0;
+                    } else if (returnType == long.class) {
+                        return 0L;
+                    }
+                    return null;
+                });
+    }
+}
@@ -0,0 +1,75 @@
+package com.datacenter.canal.benchmark;
+
+import com.datacenter.canal.load.support.BinderPlanCache;
+import com.datacenter.canal.load.support.ColumnBinder;
+import com.datacenter.canal.load.support.ParameterBuffer;
+import com.datacenter.canal.load.support.SingleDml;
+import com.datacenter.canal.load.support.SyncUtil;
+import com.datacenter.canal.select.support.EtlColumn;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 參數設置成本，PreparedStatement 不執行任何動作
+ * <p>
+ * perValue: 每個數值各自依 sqlType 及數值類別選擇設置方法，bound: 使用預先解析的 ColumnBinder
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BindBenchmark {
+
+    @Param({"10", "50", "200"})
+    int columns;
+
+    @Param({"1000"})
+    int rows;
+
+    private List<Map<String, EtlColumn>> data;
+    private List<String> columnNames;
+    private ColumnBinder[] binders;
+    private PreparedStatement ps;
+    private ParameterBuffer parameters;
+
+    @Setup
+    public void setup() {
+        List<SingleDml> dmlList = BenchmarkFixtures.singleDmlList(BenchmarkFixtures.mixedMessages(columns, rows)).stream()
+                .filter(dml -> "INSERT".equals(dml.getType())).collect(Collectors.toList());
+        data = dmlList.stream().map(SingleDml::getData).collect(Collectors.toList());
+        columnNames = new ArrayList<>(data.get(0).keySet());
+        binders = new BinderPlanCache().getBinders(BenchmarkFixtures.TABLE, columnNames, data.get(0));
+        ps = BenchmarkFixtures.noopPreparedStatement();
+        parameters = new ParameterBuffer(columns);
+    }
+
+    @Benchmark
+    public void perValue() throws SQLException {
+        for (Map<String, EtlColumn> row : data) {
+            int i = 1;
+            for (String columnName : columnNames) {
+                EtlColumn column = row.get(columnName);
+                SyncUtil.setPStmt(column.getSqlType(), ps, column.getValue(), i++);
+            }
+        }
+    }
+
+    @Benchmark
+    public void bound() throws SQLException {
+        for (Map<String, EtlColumn> row : data) {
+            parameters.clear();
+            for (int i = 0; i < binders.length; i++) {
+                parameters.add(binders[i], row.get(columnNames.get(i)).getValue());
+            }
+            SyncUtil.setPStmt(ps, parameters);
+        }
+    }
+}
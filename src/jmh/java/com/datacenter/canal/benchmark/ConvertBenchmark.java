@@ -0,0 +1,42 @@
+package com.datacenter.canal.benchmark;
+
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.alibaba.otter.canal.protocol.Message;
+import com.datacenter.canal.select.support.EtlMessage;
+import com.datacenter.canal.select.support.EtlMessageUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * canal Message 轉換為 EtlMessage 的成本 (protobuf 解析及數值轉換)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ConvertBenchmark {
+
+    @Param({"10", "50", "200"})
+    int columns;
+
+    @Param({"1000"})
+    int rows;
+
+    @Param({"INSERT", "UPDATE"})
+    String eventType;
+
+    private Message message;
+
+    @Setup
+    public void setup() {
+        message = BenchmarkFixtures.message(CanalEntry.EventType.valueOf(eventType), columns, rows, 50, 0);
+    }
+
+    @Benchmark
+    public List<EtlMessage> convert() {
+        return EtlMessageUtil.convert(message);
+    }
+}
@@ -0,0 +1,336 @@
+package com.datacenter.canal.benchmark;
+
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.alibaba.otter.canal.protocol.Message;
+import com.datacenter.canal.CanalApplication;
+import com.datacenter.canal.extract.support.TableChangedEvent;
+import com.datacenter.canal.process.ProcessService;
+import com.datacenter.canal.process.support.EtlBatch;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 端對端吞吐量量測：產生 canal Message，經 ProcessService.queue 進入完整 pipeline，
+ * 以實際的 LoadService 及 BatchExecutor 寫入目標庫 (預設為 H2 PostgreSQL 模式的 in-memory 資料庫)
+ * <p>
+ * 不連線 canal server，每個 batch 完成後即視為 ack。輸出 rows/s、batch 延遲 (放入 pipeline 至載入完成) 的 p50/p99，
+ * 以及量測期間所有線程的記憶體配置速率
+ * <p>
+ * 參數皆為 key=value：
+ * <ul>
+ * <li>workload: insert, update, mixed 或 all (預設 all)</li>
+ * <li>batches: 每個 workload 量測的 batch 數 (預設 200)，warmup: 預熱的 batch 數 (預設 50)</li>
+ * <li>rows: 每個 batch 的筆數 (預設 1000)，columns: 欄位數 (預設 10)</li>
+ * <li>url, username, password: 目標庫，ex: url=jdbc:postgresql://127.0.0.1:5432/bench</li>
+ * </ul>
+ * 其他以 -- 開頭的參數直接傳給 Spring，ex: --canal.load.parallelism=4
+ */
+public class EndToEndHarness {
+
+    private static final String DEFAULT_URL = "jdbc:h2:mem:bench;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    private final ConfigurableApplicationContext context;
+    private final ProcessService processService;
+    private final DataSource dataSource;
+    private final int rows;
+    private final int columns;
+    private long batchId;
+
+    private EndToEndHarness(ConfigurableApplicationContext context, int rows, int columns) {
+        this.context = context;
+        this.processService = context.getBean(ProcessService.class);
+        this.dataSource = context.getBean(DataSource.class);
+        this.rows = rows;
+        this.columns = columns;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        List<String> springArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                springArgs.add(arg);
+            } else if (arg.contains("=")) {
+                options.put(arg.substring(0, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else {
+                throw new IllegalArgumentException("argument must be key=value: " + arg);
+            }
+        }
+
+        String workload = options.getOrDefault("workload", "all");
+        int batches = Integer.parseInt(options.getOrDefault("batches", "200"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "50"));
+        int rows = Integer.parseInt(options.getOrDefault("rows", "1000"));
+        int columns = Integer.parseInt(options.getOrDefault("columns", "10"));
+
+        // 以命令列參數覆寫 application.yml 及 profile 的設定
+        springArgs.add(0, "--spring.profiles.active=bench");
+        springArgs.add(1, "--spring.datasource.jdbc-url=" + options.getOrDefault("url", DEFAULT_URL));
+        springArgs.add(2, "--spring.datasource.username=" + options.getOrDefault("username", "sa"));
+        springArgs.add(3, "--spring.datasource.password=" + options.getOrDefault("password", ""));
+        springArgs.add(4, "--canal.client.enabled=false");
+        springArgs.add(5, "--canal.checkpoint.store=none");
+        springArgs.add(6, "--canal.dead-letter.enabled=false");
+        springArgs.add(7, "--logging.level.com.datacenter.canal=warn");
+
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(CanalApplication.class)
+                .web(WebApplicationType.NONE).bannerMode(Banner.Mode.OFF)
+                .run(springArgs.toArray(new String[0]))) {
+            EndToEndHarness harness = new EndToEndHarness(context, rows, columns);
+
+            System.out.printf("%-8s %8s %10s %8s %12s %9s %9s %11s %10s%n", "workload", "batches", "rows", "seconds",
+                    "rows/s", "p50(ms)", "p99(ms)", "alloc(MB/s)", "alloc/row");
+            List<String> workloads = "all".equalsIgnoreCase(workload)
+                    ? Arrays.asList("insert", "update", "mixed") : Arrays.asList(workload.split(","));
+            for (String name : workloads) {
+                harness.run(name.trim().toLowerCase(), warmup, batches);
+            }
+        }
+    }
+
+    /**
+     * 重建目標表後，先預熱再量測單一 workload
+     */
+    private void run(String workload, int warmup, int batches) throws Exception {
+        Workload generator;
+        switch (workload) {
+            case "insert":
+                generator = new InsertWorkload();
+                break;
+            case "update":
+                generator = new UpdateWorkload();
+                break;
+            case "mixed":
+                generator = new MixedWorkload();
+                break;
+            default:
+                throw new IllegalArgumentException("unknown workload: " + workload);
+        }
+
+        resetTable();
+        // update 及 mixed 需先有資料，預載不計入量測
+        for (int i = 0; i < generator.preloadBatches(); i++) {
+            measure(Collections.singletonList(BenchmarkFixtures.message(CanalEntry.EventType.INSERT, columns, rows, 50,
+                    (long) i * rows)));
+        }
+        measure(generate(generator, warmup));
+
+        List<Message> messages = generate(generator, batches);
+        int totalRows = batches * generator.rowsPerBatch();
+        Result result = measure(messages);
+
+        double seconds = result.elapsedNanos / 1e9;
+        System.out.printf("%-8s %8d %10d %8.2f %12.0f %9.2f %9.2f %11.1f %10.0f%n", workload, batches, totalRows, seconds,
+                totalRows / seconds, result.percentile(0.5), result.percentile(0.99),
+                result.allocatedBytes / 1048576.0 / seconds, (double) result.allocatedBytes / totalRows);
+    }
+
+    /**
+     * 於量測前先產生所有 Message，避免產生資料的成本計入結果
+     */
+    private List<Message> generate(Workload generator, int batches) {
+        List<Message> messages = new ArrayList<>(batches);
+        for (int i = 0; i < batches; i++) {
+            messages.add(generator.next());
+        }
+        return messages;
+    }
+
+    /**
+     * 依序放入 pipeline，由另一線程等待各 batch 完成並記錄延遲；ProcessService 的 Queue 已滿時放入會阻塞，
+     * 與 CanalClient 的行為相同
+     */
+    private Result measure(List<Message> messages) throws Exception {
+        int count = messages.size();
+        EtlBatch[] queued = new EtlBatch[count];
+        long[] queuedAt = new long[count];
+        long[] latencies = new long[count];
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread collector = new Thread(() -> {
+            try {
+                for (int i = 0; i < count; i++) {
+                    EtlBatch batch;
+                    synchronized (queued) {
+                        while ((batch = queued[i]) == null) {
+                            queued.wait();
+                        }
+                    }
+                    // load 僅有一個線程，batch 依序完成
+                    batch.await(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                    latencies[i] = System.nanoTime() - queuedAt[i];
+                    if (batch.isFailed()) {
+                        failure.set(batch.getCause());
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "bench-collector");
+
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        collector.start();
+        for (int i = 0; i < count && failure.get() == null; i++) {
+            long now = System.nanoTime();
+            EtlBatch batch = processService.queue(++batchId, messages.get(i));
+            synchronized (queued) {
+                queuedAt[i] = now;
+                queued[i] = batch;
+                queued.notifyAll();
+            }
+        }
+        collector.join();
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        if (failure.get() != null) {
+            throw new IllegalStateException("batch failed", failure.get());
+        }
+        return new Result(elapsed, allocated, latencies);
+    }
+
+    private void resetTable() throws SQLException {
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS " + BenchmarkFixtures.TABLE);
+            stmt.execute(BenchmarkFixtures.createTableSql(BenchmarkFixtures.TABLE, columns));
+            if (!conn.getAutoCommit()) {
+                conn.commit();
+            }
+        }
+        // 與 DDL 相同，讓 LoadService 清除快取的 SQL 模板及 PreparedStatement
+        context.publishEvent(new TableChangedEvent(BenchmarkFixtures.DATABASE, BenchmarkFixtures.TABLE, "DROP TABLE"));
+    }
+
+    /**
+     * 所有存活線程累計配置的記憶體 (HotSpot 提供)
+     */
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long bytes : threadMXBean.getThreadAllocatedBytes(threadMXBean.getAllThreadIds())) {
+            total += Math.max(bytes, 0);
+        }
+        return total;
+    }
+
+    private static class Result {
+        private final long elapsedNanos;
+        private final long allocatedBytes;
+        private final long[] latencies;
+
+        Result(long elapsedNanos, long allocatedBytes, long[] latencies) {
+            this.elapsedNanos = elapsedNanos;
+            this.allocatedBytes = allocatedBytes;
+            this.latencies = latencies.clone();
+            Arrays.sort(this.latencies);
+        }
+
+        double percentile(double p) {
+            int idx = (int) Math.ceil(p * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(idx, latencies.length - 1))] / 1e6;
+        }
+    }
+
+    private interface Workload {
+        Message next();
+
+        int rowsPerBatch();
+
+        default int preloadBatches() {
+            return 0;
+        }
+    }
+
+    /**
+     * 每個 batch 皆為新資料
+     */
+    private class InsertWorkload implements Workload {
+        private long nextId;
+
+        @Override
+        public Message next() {
+            Message message = BenchmarkFixtures.message(CanalEntry.EventType.INSERT, columns, rows, 50, nextId);
+            nextId += rows;
+            return message;
+        }
+
+        @Override
+        public int rowsPerBatch() {
+            return rows;
+        }
+    }
+
+    /**
+     * 預載資料後，每個 batch 依序更新其中一段
+     */
+    private class UpdateWorkload implements Workload {
+        private static final int PRELOAD = 4;
+        private long batch;
+
+        @Override
+        public Message next() {
+            long firstId = (batch++ % PRELOAD) * rows;
+            return BenchmarkFixtures.message(CanalEntry.EventType.UPDATE, columns, rows, 50, firstId);
+        }
+
+        @Override
+        public int rowsPerBatch() {
+            return rows;
+        }
+
+        @Override
+        public int preloadBatches() {
+            return PRELOAD;
+        }
+    }
+
+    /**
+     * 每個 batch 插入 1/2、更新 1/4 較早插入的資料，並刪除 1/4 最舊的資料
+     */
+    private class MixedWorkload implements Workload {
+        private static final int PRELOAD = 4;
+        private final int half = rows / 2;
+        private final int quarter = rows / 4;
+        private long nextId = (long) PRELOAD * rows;
+        private long deleteId;
+
+        @Override
+        public Message next() {
+            List<CanalEntry.Entry> entries = new ArrayList<>();
+            entries.addAll(BenchmarkFixtures.message(CanalEntry.EventType.INSERT, columns, half, 50, nextId).getEntries());
+            entries.addAll(BenchmarkFixtures.message(CanalEntry.EventType.UPDATE, columns, quarter, 50, nextId - rows).getEntries());
+            entries.addAll(BenchmarkFixtures.message(CanalEntry.EventType.DELETE, columns, quarter, 50, deleteId).getEntries());
+            nextId += half;
+            deleteId += quarter;
+            return new Message(1, entries);
+        }
+
+        @Override
+        public int rowsPerBatch() {
+            return half + quarter * 2;
+        }
+
+        @Override
+        public int preloadBatches() {
+            return PRELOAD;
+        }
+    }
+}
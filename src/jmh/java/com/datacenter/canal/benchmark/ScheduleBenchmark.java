@@ -0,0 +1,39 @@
+package com.datacenter.canal.benchmark;
+
+import com.datacenter.canal.load.support.DmlScheduler;
+import com.datacenter.canal.load.support.SingleDml;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LoadService 依 PK 相依性排定執行優先度的成本
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ScheduleBenchmark {
+
+    @Param({"10"})
+    int columns;
+
+    @Param({"1000", "10000"})
+    int rows;
+
+    private List<SingleDml> dmlList;
+
+    @Setup(Level.Invocation)
+    public void setup() {
+        // schedule 會修改優先度，每次執行前重新建立
+        dmlList = BenchmarkFixtures.singleDmlList(BenchmarkFixtures.mixedMessages(columns, rows));
+    }
+
+    @Benchmark
+    public SortedMap<Integer, List<SingleDml>> schedule() {
+        return DmlScheduler.schedule(dmlList);
+    }
+}
@@ -0,0 +1,57 @@
+package com.datacenter.canal.benchmark;
+
+import com.datacenter.canal.load.support.DmlKey;
+import com.datacenter.canal.load.support.SingleDml;
+import com.datacenter.canal.select.support.EtlMessage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SingleDml 建立 (比對修改欄位、產生 key) 及 key 集合比對的成本
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SingleDmlBenchmark {
+
+    @Param({"10", "50", "200"})
+    int columns;
+
+    @Param({"1000"})
+    int rows;
+
+    private List<EtlMessage> messages;
+    private List<SingleDml> dmlList;
+    private Set<DmlKey> comparedKeys;
+
+    @Setup
+    public void setup() {
+        messages = BenchmarkFixtures.mixedMessages(columns, rows);
+        dmlList = BenchmarkFixtures.singleDmlList(messages);
+
+        // 一半的 DML 與比對集合有交集
+        comparedKeys = new HashSet<>();
+        for (int i = 0; i < dmlList.size(); i += 2) {
+            comparedKeys.addAll(dmlList.get(i).getDataKeys());
+        }
+    }
+
+    @Benchmark
+    public List<SingleDml> construct() {
+        return BenchmarkFixtures.singleDmlList(messages);
+    }
+
+    @Benchmark
+    public void compareDataKeys(Blackhole blackhole) {
+        for (SingleDml dml : dmlList) {
+            blackhole.consume(dml.compareDataKeys(comparedKeys));
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.datacenter.canal.benchmark;
+
+import com.datacenter.canal.load.support.SqlBuilder;
+import com.datacenter.canal.load.support.SqlTemplateCache;
+import com.datacenter.canal.load.support.SqlTemplateKey;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * 合併 INSERT SQL 的拼接成本，及 SQL 模板快取命中時的成本
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SqlBuilderBenchmark {
+
+    @Param({"10", "50", "200"})
+    int columns;
+
+    @Param({"256"})
+    int rows;
+
+    private List<String> columnNames;
+    private SqlTemplateCache cache;
+
+    @Setup
+    public void setup() {
+        columnNames = IntStream.range(0, columns).mapToObj(i -> "col_" + i).collect(Collectors.toList());
+        cache = new SqlTemplateCache(1024);
+    }
+
+    @Benchmark
+    public String build() {
+        return insertSql();
+    }
+
+    @Benchmark
+    public String cached() {
+        return cache.get(new SqlTemplateKey(BenchmarkFixtures.TABLE, "INSERT", columnNames, rows), this::insertSql);
+    }
+
+    private String insertSql() {
+        String sqlValue = new SqlBuilder("\"")
+                .append("(").appendRepeat(columnNames.size(), "?,").deleteBehind(1).append("),").toString();
+        return new SqlBuilder("\"").append("INSERT INTO ").appendWithBacktick(BenchmarkFixtures.TABLE)
+                .append(" (").appendJoinWithBacktick(",", columnNames).deleteBehind(1)
+                .append(") VALUES ").appendRepeat(rows, sqlValue).deleteBehind(1).toString();
+    }
+}
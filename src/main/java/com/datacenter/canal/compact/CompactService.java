@@ -0,0 +1,205 @@
+package com.datacenter.canal.compact;
+
+import com.datacenter.canal.load.support.DmlKey;
+import com.datacenter.canal.select.support.EtlColumn;
+import com.datacenter.canal.select.support.EtlMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * 將同一 PK 的多筆變動合併為一筆淨變動，減少對目標資料庫的寫入
+ * <p>
+ * INSERT + UPDATE => INSERT (最終資料), INSERT + DELETE => 無,
+ * UPDATE + UPDATE => UPDATE (合併修改欄位), UPDATE + DELETE => DELETE,
+ * DELETE + INSERT => UPDATE
+ */
+@Slf4j
+@Service
+public class CompactService {
+
+    @Value("${canal.compact.enabled:false}")
+    boolean enabled;
+
+    public List<EtlMessage> compact(List<EtlMessage> messages) {
+        if (!enabled) {
+            return messages;
+        }
+        log.debug("do compact");
+
+        // 無 PK 或有修改 PK 的資料表，無法以 PK 合併，直接略過
+        Set<String> skippedTables = findSkippedTables(messages);
+
+        List<EtlMessage> result = new ArrayList<>();
+        Map<DmlKey, NetRow> netRows = new LinkedHashMap<>();
+        int rowCount = 0;
+
+        for (EtlMessage message : messages) {
+            if (skippedTables.contains(tableName(message))) {
+                result.add(message);
+                continue;
+            }
+
+            for (int i = 0; i < message.getData().size(); i++) {
+                Map<String, EtlColumn> data = message.getData().get(i);
+                Map<String, EtlColumn> old = "UPDATE".equals(message.getType()) ? message.getOld().get(i) : null;
+                DmlKey key = new DmlKey(message.getDatabase(), message.getTable(), message.getPkNames(), data);
+
+                NetRow netRow = netRows.get(key);
+                if (netRow == null) {
+                    netRows.put(key, new NetRow(message, message.getType(), data, old));
+                } else if (!netRow.fold(message, data, old)) {
+                    netRows.remove(key);
+                }
+                rowCount++;
+            }
+        }
+
+        // 依資料表及類型重新組成 EtlMessage
+        Map<List<String>, EtlMessage> netMessages = new LinkedHashMap<>();
+        for (NetRow netRow : netRows.values()) {
+            EtlMessage source = netRow.source;
+            EtlMessage netMessage = netMessages.computeIfAbsent(
+                    Arrays.asList(source.getDatabase(), source.getTable(), netRow.type), k -> newMessage(source, netRow.type));
+
+            netMessage.getData().add(netRow.data);
+            if ("UPDATE".equals(netRow.type)) {
+                netMessage.getOld().add(netRow.old);
+            }
+            updatePosition(netMessage, source);
+        }
+        result.addAll(netMessages.values());
+
+        log.debug("compact rows: {} -> {}", rowCount, netRows.size());
+        return result;
+    }
+
+    /**
+     * 找出無 PK 或有修改 PK 的資料表
+     */
+    private Set<String> findSkippedTables(List<EtlMessage> messages) {
+        Set<String> skippedTables = new HashSet<>();
+        for (EtlMessage message : messages) {
+            if (message.getPkNames() == null || message.getPkNames().isEmpty()) {
+                skippedTables.add(tableName(message));
+                continue;
+            }
+
+            if (!"UPDATE".equals(message.getType())) {
+                continue;
+            }
+
+            for (int i = 0; i < message.getData().size(); i++) {
+                Map<String, EtlColumn> data = message.getData().get(i);
+                Map<String, EtlColumn> old = message.getOld().get(i);
+                for (String pkName : message.getPkNames()) {
+                    if (!data.get(pkName).sameValue(old.get(pkName))) {
+                        skippedTables.add(tableName(message));
+                        break;
+                    }
+                }
+            }
+        }
+        return skippedTables;
+    }
+
+    private static String tableName(EtlMessage message) {
+        return message.getDatabase() + "." + message.getTable();
+    }
+
+    private static EtlMessage newMessage(EtlMessage source, String type) {
+        EtlMessage message = new EtlMessage();
+        message.setDatabase(source.getDatabase());
+        message.setTable(source.getTable());
+        message.setPkNames(source.getPkNames());
+        message.setIsDdl(false);
+        message.setType(type);
+        message.setEs(source.getEs());
+        message.setTs(source.getTs());
+        message.setLogfileName(source.getLogfileName());
+        message.setLogfileOffset(source.getLogfileOffset());
+        message.setData(new ArrayList<>());
+        message.setOld(new ArrayList<>());
+        return message;
+    }
+
+    /**
+     * 合併後的 EtlMessage 紀錄最後一筆來源的 binlog 位置
+     */
+    private static void updatePosition(EtlMessage message, EtlMessage source) {
+        if (source.getEs() != null && (message.getEs() == null || source.getEs() > message.getEs())) {
+            message.setEs(source.getEs());
+        }
+        if (compareTo(source.getLogfileName(), source.getLogfileOffset(),
+                message.getLogfileName(), message.getLogfileOffset()) > 0) {
+            message.setLogfileName(source.getLogfileName());
+            message.setLogfileOffset(source.getLogfileOffset());
+        }
+    }
+
+    private static int compareTo(String fileName, Long offset, String otherFileName, Long otherOffset) {
+        int result = Objects.compare(fileName, otherFileName, Comparator.nullsFirst(Comparator.naturalOrder()));
+        if (result != 0) {
+            return result;
+        }
+        return Objects.compare(offset, otherOffset, Comparator.nullsFirst(Comparator.naturalOrder()));
+    }
+
+    /**
+     * 單一 PK 的淨變動
+     */
+    private static class NetRow {
+        private EtlMessage source;
+        private String type;
+        private Map<String, EtlColumn> data;
+        private Map<String, EtlColumn> old;
+
+        NetRow(EtlMessage source, String type, Map<String, EtlColumn> data, Map<String, EtlColumn> old) {
+            this.source = source;
+            this.type = type;
+            this.data = data;
+            this.old = old;
+        }
+
+        /**
+         * 合併下一筆變動，回傳 false 表示兩筆變動互相抵銷
+         */
+        boolean fold(EtlMessage message, Map<String, EtlColumn> nextData, Map<String, EtlColumn> nextOld) {
+            String nextType = message.getType();
+            this.source = message;
+
+            switch (type + ">" + nextType) {
+                case "INSERT>UPDATE":
+                    // 以最終資料插入
+                    this.data = nextData;
+                    return true;
+                case "INSERT>DELETE":
+                    return false;
+                case "UPDATE>UPDATE":
+                    // 保留最早的舊資料，比對後即為合併的修改欄位
+                    this.data = nextData;
+                    return true;
+                case "UPDATE>DELETE":
+                    this.type = "DELETE";
+                    this.data = nextData;
+                    this.old = null;
+                    return true;
+                case "DELETE>INSERT":
+                    // 刪除後再插入，視為以刪除前的資料更新
+                    this.type = "UPDATE";
+                    this.old = this.data;
+                    this.data = nextData;
+                    return true;
+                default:
+                    log.warn("Unexpected event sequence {} -> {} for table: {}.{}, keep the latest",
+                            type, nextType, message.getDatabase(), message.getTable());
+                    this.type = nextType;
+                    this.data = nextData;
+                    this.old = nextOld;
+                    return true;
+            }
+        }
+    }
+}
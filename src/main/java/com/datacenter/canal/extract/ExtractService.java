@@ -1,7 +1,10 @@
 package com.datacenter.canal.extract;
 
+import com.datacenter.canal.extract.support.TableChangedEvent;
 import com.datacenter.canal.select.support.EtlMessage;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
@@ -11,6 +14,9 @@ import java.util.stream.Collectors;
 @Service
 public class ExtractService {
 
+    @Autowired
+    ApplicationEventPublisher eventPublisher;
+
     public List<EtlMessage> extract(List<EtlMessage> messages) {
         log.debug("do extract");
 
@@ -21,6 +27,14 @@ public class ExtractService {
     }
 
     private List<EtlMessage> excludeDdl(List<EtlMessage> messages) {
-        return messages.stream().filter(m -> !m.getIsDdl()).collect(Collectors.toList());
+        return messages.stream().filter(m -> {
+            if (m.getIsDdl()) {
+                // 通知各快取資料表結構已變更 (同步執行，完成後才會載入後續 DML)
+                log.info("DDL on {}.{}: {}", m.getDatabase(), m.getTable(), m.getSql());
+                eventPublisher.publishEvent(new TableChangedEvent(m.getDatabase(), m.getTable(), m.getSql()));
+                return false;
+            }
+            return true;
+        }).collect(Collectors.toList());
     }
 }
@@ -0,0 +1,29 @@
+package com.datacenter.canal.extract.support;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 資料表結構變更事件 (DDL)，由 ExtractService 於排除 DDL 前發布，供各快取清除該資料表的資料
+ */
+@Getter
+@ToString
+public class TableChangedEvent {
+
+    private final String database;
+    private final String table; // DDL 未指定資料表時 (ex: CREATE DATABASE) 為空字串
+    private final String sql;
+
+    public TableChangedEvent(String database, String table, String sql) {
+        this.database = database;
+        this.table = table == null ? "" : table;
+        this.sql = sql;
+    }
+
+    /**
+     * 是否影響所有資料表
+     */
+    public boolean isAllTables() {
+        return table.isEmpty();
+    }
+}
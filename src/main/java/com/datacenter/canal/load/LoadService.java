@@ -1,21 +1,48 @@
 package com.datacenter.canal.load;
 
+import com.datacenter.canal.extract.support.TableChangedEvent;
 import com.datacenter.canal.load.support.BatchExecutor;
+import com.datacenter.canal.load.support.BinderPlanCache;
+import com.datacenter.canal.load.support.Checkpoint;
+import com.datacenter.canal.load.support.CheckpointStore;
+import com.datacenter.canal.load.support.ColumnBinder;
+import com.datacenter.canal.load.support.DbType;
+import com.datacenter.canal.load.support.DmlScheduler;
+import com.datacenter.canal.load.support.FileCheckpointStore;
+import com.datacenter.canal.load.support.LoadProgress;
+import com.datacenter.canal.load.support.MergeLoader;
+import com.datacenter.canal.load.support.ParameterBuffer;
 import com.datacenter.canal.load.support.SingleDml;
 import com.datacenter.canal.load.support.SqlBuilder;
+import com.datacenter.canal.load.support.SqlTemplateCache;
+import com.datacenter.canal.load.support.SqlTemplateKey;
 import com.datacenter.canal.load.support.SyncUtil;
+import com.datacenter.canal.load.support.TableCheckpointStore;
+import com.datacenter.canal.load.support.TableMeta;
+import com.datacenter.canal.load.support.TargetSchemaCache;
+import com.datacenter.canal.process.support.BatchSizeController;
+import com.datacenter.canal.process.support.PipelineMetrics;
 import com.datacenter.canal.select.support.EtlColumn;
 import com.datacenter.canal.select.support.EtlMessage;
 import com.google.common.collect.Lists;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -23,26 +50,212 @@ import java.util.stream.IntStream;
 @Service
 public class LoadService {
 
-    private static final int MERGE_INSERT_SIZE = 200;
-    private static final int BATCH_UPDATE_SIZE = 500;
-    private static final int BATCH_DELETE_SIZE = 1000;
-
     @Autowired
     DataSource dataSource;
 
+    @Autowired
+    BatchSizeController batchSizeController; // 合併 INSERT、批次 UPDATE/DELETE 的筆數
+
+    @Autowired
+    PipelineMetrics metrics;
+
     @Value("${canal.target.suffix:}")
     String tableSuffix;
 
-    private BatchExecutor batchExecutor;
+    @Value("${canal.load.parallelism:1}")
+    int parallelism;
+
+    @Value("${canal.load.partition-mode:table}")
+    String partitionMode; // table: 依資料表切分, key: 依資料表及 PK 切分
+
+    @Value("${canal.load.mode:auto}")
+    String loadMode; // statement: 逐筆 SQL, merge: 暫存表合併寫入, auto: Redshift/PostgreSQL 使用 merge
+
+    @Value("${canal.load.copy-enabled:true}")
+    boolean copyEnabled; // PostgreSQL 時，INSERT 及暫存表使用 COPY FROM STDIN 寫入
+
+    @Value("${canal.load.upsert:false}")
+    boolean upsert; // 逐筆 SQL 時，INSERT 及 UPDATE 改為冪等寫入，重複套用不會失敗
+
+    @Value("${canal.load.sql-cache-size:1024}")
+    int sqlCacheSize; // SQL 模板快取上限
+
+    @Value("${canal.load.statement-cache-size:128}")
+    int statementCacheSize; // 每個連線的 PreparedStatement 快取上限，0 表示不快取
+
+    @Value("${canal.load.schema-cache-enabled:true}")
+    boolean schemaCacheEnabled; // 啟動時自 information_schema 載入目標資料表結構，依目標欄位型別設置參數
+
+    @Value("${canal.load.schema-cache-missing-ttl-ms:60000}")
+    long schemaCacheMissingTtlMillis; // 目標庫不存在的資料表，經過此時間後重新查詢 (ex: 之後才建立的資料表)
+
+    @Value("${canal.load.prepare-on-start:true}")
+    boolean prepareOnStart; // 逐筆 SQL 時，啟動時為目標庫已有的資料表預先建立 INSERT/DELETE statement
+
+    @Value("${canal.checkpoint.store:none}")
+    String checkpointStoreType; // none: 不記錄, table: 與資料同一交易寫入目標資料庫, file: 提交後寫入本機檔案
+
+    @Value("${canal.checkpoint.table:canal_checkpoint}")
+    String checkpointTable;
+
+    @Value("${canal.checkpoint.file:checkpoint/canal.checkpoint}")
+    String checkpointFile;
+
+    private SqlTemplateCache sqlTemplateCache;
+    private final BinderPlanCache binderPlanCache = new BinderPlanCache();
+    private BatchExecutor[] batchExecutors; // 每個 worker 各自使用獨立的連線
+    private ExecutorService workerPool;
+    private MergeLoader mergeLoader; // 非 merge 模式時為 null
+    private CheckpointStore checkpointStore; // 不記錄位置時為 null
+    private TargetSchemaCache schemaCache; // 未啟用時為 null
 
     @PostConstruct
-    private void init() throws SQLException {
-        log.trace("Init LoadService: MERGE_INSERT_SIZE: {}, BATCH_UPDATE_SIZE: {}, BATCH_DELETE_SIZE: {}",
-                MERGE_INSERT_SIZE, BATCH_UPDATE_SIZE, BATCH_DELETE_SIZE);
-        this.batchExecutor = new BatchExecutor(dataSource);
+    void init() throws SQLException, IOException {
+        log.trace("Init LoadService: parallelism: {}, partitionMode: {}", parallelism, partitionMode);
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("canal.load.parallelism must be greater than 0");
+        }
+
+        this.sqlTemplateCache = new SqlTemplateCache(sqlCacheSize);
+        this.batchExecutors = new BatchExecutor[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            this.batchExecutors[i] = new BatchExecutor(dataSource, statementCacheSize);
+            this.batchExecutors[i].setCopyEnabled(copyEnabled);
+            this.batchExecutors[i].setMetrics(metrics);
+        }
+
+        if ("table".equalsIgnoreCase(checkpointStoreType)) {
+            this.checkpointStore = new TableCheckpointStore(checkpointTable, batchExecutors[0]);
+        } else if ("file".equalsIgnoreCase(checkpointStoreType)) {
+            this.checkpointStore = new FileCheckpointStore(Paths.get(checkpointFile));
+        }
+
+        DbType dbType = batchExecutors[0].getDbType();
+        if ("merge".equalsIgnoreCase(loadMode) || ("auto".equalsIgnoreCase(loadMode)
+                && (dbType == DbType.REDSHIFT || dbType == DbType.POSTGRESQL))) {
+            this.mergeLoader = new MergeLoader(sqlTemplateCache, binderPlanCache, batchSizeController::getInsertSize);
+        }
+        log.info("LoadService target: {}, load mode: {}, copy: {}, upsert: {}, checkpoint: {}", dbType,
+                mergeLoader != null ? "merge" : "statement", batchExecutors[0].isCopySupported(), upsert, checkpointStoreType);
+        if (upsert && !upsertSupported(dbType)) {
+            log.warn("canal.load.upsert is not supported by target {}, use plain INSERT and UPDATE", dbType);
+        }
+
+        if (schemaCacheEnabled) {
+            this.schemaCache = new TargetSchemaCache(dataSource, dbType, schemaCacheMissingTtlMillis);
+            this.schemaCache.loadAll();
+            this.binderPlanCache.setSchemaCache(schemaCache);
+            if (prepareOnStart && mergeLoader == null) {
+                prepareStatements();
+            }
+        }
+
+        AtomicInteger threadIdx = new AtomicInteger(0);
+        this.workerPool = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "etl-apply-" + threadIdx.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 為目標庫已有的資料表預先拼接 SQL 並於各連線建立 statement，欄位依目標表順序，
+     * 與來源欄位順序相同時 (目標表與來源表一致) 第一個批次即可直接使用；失敗時只記錄警告
+     */
+    private void prepareStatements() {
+        long start = System.currentTimeMillis();
+        DbType dbType = batchExecutors[0].getDbType();
+        String backtick = batchExecutors[0].getBacktick();
+        int prepared = 0;
+        try {
+            for (TableMeta meta : schemaCache.getTables()) {
+                String table = meta.getTable();
+                if (table.equals(checkpointTable) || !table.endsWith(tableSuffix)) {
+                    continue;
+                }
+
+                List<String> columnNames = new ArrayList<>(meta.getColumns().keySet());
+                List<String> pkNames = meta.getPkNames();
+                List<String> sqlList = new ArrayList<>(2);
+                if (!pkNames.isEmpty()) {
+                    sqlList.add(deleteSql(table, pkNames, backtick));
+                }
+                // 與 insert 相同的判斷，COPY 寫入時不需 statement
+                boolean upsertRows = isUpsert(pkNames, dbType) && dbType != DbType.REDSHIFT;
+                if (upsertRows || !batchExecutors[0].isCopySupported()) {
+                    int mergeSize = Math.max(1, Math.min(batchSizeController.getInsertSize(), SyncUtil.MAX_PARAMETERS / columnNames.size()));
+                    sqlList.add(upsertRows ? upsertSql(table, columnNames, pkNames, mergeSize, batchExecutors[0])
+                            : insertSql(table, columnNames, mergeSize, backtick));
+                }
+
+                // 不超過 statement 快取上限，避免預先建立的 statement 互相淘汰
+                if (prepared + sqlList.size() > statementCacheSize) {
+                    break;
+                }
+                for (BatchExecutor batchExecutor : batchExecutors) {
+                    for (String sql : sqlList) {
+                        batchExecutor.prepareStatement(table, sql);
+                    }
+                }
+                prepared += sqlList.size();
+            }
+            log.info("Prepared {} statements per connection, cost: {}ms", prepared, System.currentTimeMillis() - start);
+        } catch (SQLException e) {
+            log.warn("Prepare statements failed: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        workerPool.shutdownNow();
+        Arrays.stream(batchExecutors).forEach(BatchExecutor::close);
+    }
+
+    /**
+     * 資料表結構變更時，清除該資料表的結構、SQL 模板、參數設置方法及 PreparedStatement 快取，
+     * 結構於下次載入該資料表時重新查詢
+     * <p>
+     * 事件於 load 執行緒載入前同步發布，此時各 worker 皆已閒置
+     */
+    @EventListener
+    public void onTableChanged(TableChangedEvent event) {
+        if (event.isAllTables()) {
+            log.info("Invalidate all load caches, database: {}", event.getDatabase());
+            sqlTemplateCache.clear();
+            binderPlanCache.clear();
+            if (schemaCache != null) {
+                schemaCache.clear();
+            }
+            Arrays.stream(batchExecutors).forEach(BatchExecutor::clearStatements);
+        } else {
+            String table = tableSuffix.isEmpty() ? event.getTable() : event.getTable() + tableSuffix;
+            log.info("Invalidate load caches, table: {}", table);
+            sqlTemplateCache.invalidate(table);
+            sqlTemplateCache.invalidate(MergeLoader.stageTable(table));
+            binderPlanCache.invalidate(table);
+            binderPlanCache.invalidate(MergeLoader.stageTable(table));
+            if (schemaCache != null) {
+                schemaCache.invalidate(table);
+            }
+            for (BatchExecutor batchExecutor : batchExecutors) {
+                batchExecutor.clearStatements(table);
+            }
+        }
     }
 
+    /**
+     * 將 DML 依資料表 (或資料表及 PK) 切分後，各分區平行執行並各自提交，
+     * 所有分區皆提交完成後才返回，因此 ack 必定在所有分區提交之後
+     */
     public void load(List<EtlMessage> messages) throws SQLException {
+        load(messages, new LoadProgress());
+    }
+
+    /**
+     * 同 {@link #load(List)}，略過 progress 中已提交的分區並記錄本次提交的分區，
+     * 同一 batch 重試時傳入同一個 progress，已提交的分區不會重複套用
+     */
+    public void load(List<EtlMessage> messages, LoadProgress progress) throws SQLException {
         log.debug("do load process");
 
         // 將所有 Message 轉為單一 DML 語句
@@ -51,135 +264,380 @@ public class LoadService {
         ).filter(SingleDml::isChange).collect(Collectors.toList());
         log.debug("load process total sql size: {}", totalDml.size());
 
-        // 檢查所有 DML 語句使用到的 PK 值，並排定優先度
-        for (int i = 0; i < totalDml.size(); i++) {
-            SingleDml dml = totalDml.get(i);
-            for (int j = i - 1; j >= 0; j--) {
-                SingleDml comparedDml = totalDml.get(j);
-                if (dml.compareDataKeys(comparedDml.getDataKeys())) {
-                    dml.setPriority(comparedDml.getPriority() + 10);
-                    break;
+        // 略過已套用的 DML (ex: 提交後尚未 ack 即中斷，重新抓取的資料)
+        if (checkpointStore != null) {
+            int total = totalDml.size();
+            totalDml.removeIf(this::isApplied);
+            if (totalDml.size() < total) {
+                log.info("load process skip {} applied dml", total - totalDml.size());
+            }
+        }
+
+        // 修改 PK 的 update 會同時影響新舊兩個 key，key 模式時該資料表只能整張表分在同一區
+        Set<String> keyChangedTables = new HashSet<>();
+        if ("key".equalsIgnoreCase(partitionMode)) {
+            totalDml.stream().filter(SingleDml::isKeyChanged)
+                    .forEach(dml -> keyChangedTables.add(dml.getDatabase() + "." + dml.getTable()));
+        }
+
+        // 依分區切分 DML，同一分區內保持原本順序
+        List<List<SingleDml>> partitions = partition(totalDml, keyChangedTables);
+        progress.setKeyChangedTables(keyChangedTables);
+
+        if (parallelism == 1) {
+            apply(partitions.get(0), batchExecutors[0], keyChangedTables);
+            progress.commit(0);
+            return;
+        }
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < parallelism; i++) {
+            int index = i;
+            List<SingleDml> partition = partitions.get(i);
+            BatchExecutor batchExecutor = batchExecutors[i];
+            if (progress.isCommitted(i)) {
+                log.info("load process skip committed partition: {}, dml count: {}", i, partition.size());
+            } else if (!partition.isEmpty()) {
+                futures.add(workerPool.submit(() -> {
+                    apply(partition, batchExecutor, keyChangedTables);
+                    progress.commit(index);
+                    return null;
+                }));
+            }
+        }
+        log.debug("load process partition count: {}", futures.size());
+
+        // 等待所有分區完成，任一分區失敗則拋出第一個錯誤
+        Throwable failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) {
+                    failure = e;
                 }
             }
         }
 
-        // 根據 SQL 的類型，修正優先度，INSERT -> UPDATE -> DELETE
-        totalDml.forEach(SingleDml::addTypePriority);
+        if (failure instanceof SQLException) {
+            throw (SQLException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
 
-        // 根據優先度切分
-        Map<Integer, List<SingleDml>> priorityMap = totalDml.stream().collect(Collectors.groupingBy(SingleDml::getPriority));
-        log.debug("load process priority count: {}", priorityMap.size());
+    /**
+     * 依資料表 (或資料表及 PK) 的 hash 值切分 DML，相同 key 的 DML 必定位於同一分區，以維持執行順序
+     */
+    private List<List<SingleDml>> partition(List<SingleDml> totalDml, Set<String> keyChangedTables) {
+        List<List<SingleDml>> partitions = new ArrayList<>(parallelism);
+        IntStream.range(0, parallelism).forEach(i -> partitions.add(new ArrayList<>()));
 
-        // 依據優先度執行
-        List<Integer> priorityIds = priorityMap.keySet().stream().sorted().collect(Collectors.toList());
-        for (Integer priorityId : priorityIds) {
-            List<SingleDml> dmlList = priorityMap.get(priorityId);
+        if (parallelism == 1) {
+            partitions.get(0).addAll(totalDml);
+            return partitions;
+        }
+
+        for (SingleDml dml : totalDml) {
+            partitions.get(partitionOf(dml, keyChangedTables)).add(dml);
+        }
+        return partitions;
+    }
+
+    private int partitionOf(SingleDml dml, Set<String> keyChangedTables) {
+        String tableName = dml.getDatabase() + "." + dml.getTable();
+        int hash = tableName.hashCode();
+
+        if ("key".equalsIgnoreCase(partitionMode) && !keyChangedTables.contains(tableName)) {
+            hash = keyHash(dml);
+        }
+        return Math.floorMod(hash, parallelism);
+    }
+
+    /**
+     * 資料列所屬的分區是否已提交，message 為 compact 前 (與載入的 DML 同一個 key) 的資料
+     */
+    public boolean isCommitted(LoadProgress progress, EtlMessage message, int index) {
+        if (!progress.hasCommitted()) {
+            return false;
+        }
+        if (parallelism == 1) {
+            return progress.isCommitted(0);
+        }
+        return progress.isCommitted(partitionOf(new SingleDml(message, index), progress.getKeyChangedTables()));
+    }
+
+    /**
+     * 依資料表及所有 PK 欄位 (依 pkNames 順序) 的數值計算的 hash 值，修改 PK 的 update 取修改後的 key
+     */
+    private static int keyHash(SingleDml dml) {
+        return dml.getKey().hashCode();
+    }
+
+    /**
+     * 取得 DML 的 checkpoint lane，table 模式為資料表，key 模式為資料表及依 PK 計算的分區
+     * <p>
+     * key 模式的 lane 一律依 PK 計算，不受該批次是否整張表分在同一區影響，
+     * 並包含分區數量，分區數量變更後舊的位置不再適用
+     */
+    private String lane(SingleDml dml) {
+        String tableName = dml.getDatabase() + "." + dml.getTable();
+        if (!"key".equalsIgnoreCase(partitionMode)) {
+            return tableName;
+        }
+        return keyLane(tableName, Math.floorMod(keyHash(dml), parallelism));
+    }
+
+    private String keyLane(String tableName, int index) {
+        return tableName + "#" + index + "/" + parallelism;
+    }
+
+    /**
+     * DML 是否已套用過 (位置不晚於所屬 lane 的 checkpoint)
+     */
+    private boolean isApplied(SingleDml dml) {
+        if (dml.getPosition() == null) {
+            return false;
+        }
+        Checkpoint checkpoint = checkpointStore.get(lane(dml));
+        return checkpoint != null && dml.getPosition().compareTo(checkpoint) <= 0;
+    }
+
+    /**
+     * 計算分區中各 lane 的最新位置
+     */
+    private Map<String, Checkpoint> checkpoints(List<SingleDml> totalDml, Set<String> keyChangedTables) {
+        Map<String, Checkpoint> checkpoints = new HashMap<>();
+        for (SingleDml dml : totalDml) {
+            if (dml.getPosition() == null) {
+                continue;
+            }
+
+            String tableName = dml.getDatabase() + "." + dml.getTable();
+            if (keyChangedTables.contains(tableName)) {
+                // 整張表皆在此分區，所有 lane 皆已套用至此位置
+                for (int i = 0; i < parallelism; i++) {
+                    checkpoints.merge(keyLane(tableName, i), dml.getPosition(), Checkpoint::max);
+                }
+            } else {
+                checkpoints.merge(lane(dml), dml.getPosition(), Checkpoint::max);
+            }
+        }
+        return checkpoints;
+    }
 
-            if (dmlList.size() > 0) {
-                String table = messages.get(0).getTable();
-                List<String> pkNames = messages.get(0).getPkNames();
+    /**
+     * 執行單一分區的 DML，並於同一交易中提交
+     */
+    private void apply(List<SingleDml> totalDml, BatchExecutor batchExecutor, Set<String> keyChangedTables) throws SQLException {
+        Map<String, Checkpoint> checkpoints;
+        try {
+            if (mergeLoader == null) {
+                applyStatements(totalDml, batchExecutor);
+            } else {
+                // 以暫存表合併寫入，無 PK 的資料表無法合併，改為逐筆執行；
+                // 修改 PK 的 update 合併時需刪除後重新寫入，會清除目標表中來源沒有的欄位，該資料表同樣逐筆執行
+                List<SingleDml> statementDml = new ArrayList<>();
+                for (List<SingleDml> tableDmlList : groupByTable(totalDml).values()) {
+                    SingleDml firstDml = tableDmlList.get(0);
+
+                    if (firstDml.getPkNames().isEmpty() || tableDmlList.stream().anyMatch(SingleDml::isKeyChanged)) {
+                        statementDml.addAll(tableDmlList);
+                    } else {
+                        log.trace("load process do merge, table: {}", firstDml.getTable());
+                        mergeLoader.merge(targetTable(firstDml), firstDml.getPkNames(), tableDmlList, batchExecutor);
+                    }
+                }
 
-                if(!tableSuffix.isEmpty()) {
-                    table += tableSuffix;
+                if (!statementDml.isEmpty()) {
+                    applyStatements(statementDml, batchExecutor);
                 }
+            }
+
+            // 與資料在同一交易中記錄位置
+            checkpoints = checkpointStore == null ? Collections.emptyMap() : checkpoints(totalDml, keyChangedTables);
+            if (!checkpoints.isEmpty()) {
+                checkpointStore.save(checkpoints, batchExecutor);
+            }
+
+            log.trace("Start commit");
+            batchExecutor.commit(); // 提交所有的 SQL
+            log.trace("End commit");
+        } catch (SQLException | RuntimeException e) {
+            // 任何錯誤皆回滾並關閉連線，避免殘留的 SQL 於下次提交，下次執行時重新取得連線
+            try {
+                batchExecutor.rollback();
+            } catch (SQLException rollbackException) {
+                log.warn("Rollback failed: {}", rollbackException.getMessage());
+            }
+            batchExecutor.close();
+            throw e;
+        }
+
+        if (!checkpoints.isEmpty()) {
+            checkpointStore.committed(checkpoints);
+        }
+
+        // 記錄各資料表、各操作已提交的筆數
+        totalDml.stream().collect(Collectors.groupingBy(dml -> Arrays.asList(dml.getDatabase() + "." + dml.getTable(), dml.getType()),
+                Collectors.counting())).forEach((key, count) -> metrics.recordRows(key.get(0), key.get(1), count));
+    }
+
+    /**
+     * 依優先度逐筆執行 DML (尚未提交)
+     */
+    private void applyStatements(List<SingleDml> totalDml, BatchExecutor batchExecutor) throws SQLException {
+        // 檢查所有 DML 語句使用到的 PK 值，並排定優先度，INSERT -> UPDATE -> DELETE
+        SortedMap<Integer, List<SingleDml>> priorityMap = DmlScheduler.schedule(totalDml);
+        log.debug("load process priority count: {}", priorityMap.size());
+
+        // 依據優先度執行
+        for (List<SingleDml> dmlList : priorityMap.values()) {
+            // 同一優先度可能包含多張資料表，需依資料表分組後各自執行
+            for (List<SingleDml> tableDmlList : groupByTable(dmlList).values()) {
+                String table = targetTable(tableDmlList.get(0));
+                List<String> pkNames = tableDmlList.get(0).getPkNames();
 
                 // 依據事件類型執行不同的 SQL
-                switch (dmlList.get(0).getType()) {
+                switch (tableDmlList.get(0).getType()) {
                     case "INSERT":
-                        log.trace("load process do insert");
-                        insert(table, dmlList, batchExecutor);
+                        log.trace("load process do insert, table: {}", table);
+                        // 欄位組合不同時 (ex: 批次中途有 DDL)，需分開拼接 SQL
+                        Map<Set<String>, List<SingleDml>> columnMap = tableDmlList.stream().collect(Collectors.groupingBy(
+                                dml -> dml.getData().keySet(), LinkedHashMap::new, Collectors.toList()));
+                        for (List<SingleDml> columnDmlList : columnMap.values()) {
+                            insert(table, pkNames, columnDmlList, batchExecutor);
+                        }
                         break;
                     case "UPDATE":
-                        log.trace("load process do update");
-                        update(table, pkNames, dmlList, batchExecutor);
+                        log.trace("load process do update, table: {}", table);
+                        if (isUpsert(pkNames, batchExecutor.getDbType())) {
+                            // 以修改後的完整資料 upsert，資料不存在時 (ex: 重複套用) 亦可寫入；修改 PK 的 update 仍需 UPDATE
+                            Map<Boolean, List<SingleDml>> keyChangedMap = tableDmlList.stream()
+                                    .collect(Collectors.partitioningBy(SingleDml::isKeyChanged));
+                            Map<Set<String>, List<SingleDml>> updateColumnMap = keyChangedMap.get(false).stream()
+                                    .collect(Collectors.groupingBy(dml -> dml.getData().keySet(), LinkedHashMap::new, Collectors.toList()));
+                            for (List<SingleDml> columnDmlList : updateColumnMap.values()) {
+                                insert(table, pkNames, columnDmlList, batchExecutor);
+                            }
+                            if (!keyChangedMap.get(true).isEmpty()) {
+                                update(table, pkNames, keyChangedMap.get(true), batchExecutor);
+                            }
+                        } else {
+                            update(table, pkNames, tableDmlList, batchExecutor);
+                        }
                         break;
                     case "DELETE":
-                        log.trace("load process do delete");
-                        delete(table, pkNames, dmlList, batchExecutor);
+                        log.trace("load process do delete, table: {}", table);
+                        delete(table, pkNames, tableDmlList, batchExecutor);
                         break;
                     default:
-                        log.warn("Unsupported event type: {}", dmlList.get(0).getType());
+                        log.warn("Unsupported event type: {}", tableDmlList.get(0).getType());
                         break;
                 }
             }
         }
+    }
 
-        try {
-            log.trace("Start commit");
-            batchExecutor.commit(); // 提交所有的 SQL
-            log.trace("End commit");
-        } catch (Throwable e) {
-            batchExecutor.rollback();
-            throw new RuntimeException(e);
-        }
+    /**
+     * 依資料表 (database, table) 分組，保持原本順序
+     */
+    private static Map<List<String>, List<SingleDml>> groupByTable(List<SingleDml> dmlList) {
+        return dmlList.stream().collect(Collectors.groupingBy(
+                dml -> Arrays.asList(dml.getDatabase(), dml.getTable()), LinkedHashMap::new, Collectors.toList()));
     }
 
     /**
-     * 插入操作
+     * 取得目標資料表名稱
      */
-    private void insert(String table, List<SingleDml> dmlList, BatchExecutor batchExecutor) throws SQLException {
+    private String targetTable(SingleDml dml) {
+        return tableSuffix.isEmpty() ? dml.getTable() : dml.getTable() + tableSuffix;
+    }
+
+    /**
+     * 插入操作，upsert 模式時資料已存在則覆寫
+     */
+    private void insert(String table, List<String> pkNames, List<SingleDml> dmlList, BatchExecutor batchExecutor) throws SQLException {
         // 取得所有欄位
         List<String> columnNames = new ArrayList<>(dmlList.get(0).getData().keySet());
 
-        // 串接基本 INSERT SQL (到 value 為止), ex: INSERT INTO "table" ("col_1", "col_2", "col_3") VALUES
-        String sqlPrefix = new SqlBuilder(batchExecutor.getBacktick()).append("INSERT INTO ").appendWithBacktick(table)
-                .append(" (").appendJoinWithBacktick(",", columnNames).deleteBehind(1) // 插入欄位
-                .append(") VALUES ").toString();
+        // 無 PK 的資料表或目標庫不支援時，仍使用一般 INSERT
+        DbType dbType = batchExecutor.getDbType();
+        boolean upsertRows = isUpsert(pkNames, dbType);
+        if (upsertRows && dbType == DbType.REDSHIFT) {
+            // Redshift 不支援 upsert 語法，先刪除再插入
+            delete(table, pkNames, dmlList, batchExecutor);
+            upsertRows = false;
+        }
 
-        // 串接 INSERT SQL (value 部分), ex: (?,?,?),
-        String sqlValue = new SqlBuilder(batchExecutor.getBacktick())
-                .append("(").appendRepeat(columnNames.size(), "?,").deleteBehind(1).append("),").toString();
+        // PostgreSQL 直接以 COPY 串流寫入所有資料，COPY 無法 upsert
+        if (!upsertRows && batchExecutor.isCopySupported()) {
+            long count = batchExecutor.copyIn(table, columnNames, writer -> {
+                for (SingleDml dml : dmlList) {
+                    Map<String, EtlColumn> data = dml.getData();
+                    for (String columnName : columnNames) {
+                        writer.write(data.get(columnName).getValue());
+                    }
+                    writer.endRow();
+                }
+            });
+
+            if (log.isTraceEnabled()) {
+                log.trace("Copy into target table: {}, count: {}", table, count);
+            }
+            return;
+        }
+
+        // 各欄位預先解析的參數設置方法
+        ColumnBinder[] binders = binderPlanCache.getBinders(table, columnNames, dmlList.get(0).getData());
 
         // 完整合併 INSERT SQL (待串接)
-        SqlBuilder sql;
+        String sql;
 
-        // 依據預設合併大小切割 DML
-        List<List<SingleDml>> mergeDmlList = Lists.partition(dmlList, MERGE_INSERT_SIZE);
+        // 依據合併大小切割 DML，合併大小依載入狀況動態調整，且參數數量不可超過資料庫上限
+        int mergeSize = Math.max(1, Math.min(batchSizeController.getInsertSize(), SyncUtil.MAX_PARAMETERS / columnNames.size()));
+        List<List<SingleDml>> mergeDmlList = Lists.partition(dmlList, mergeSize);
         List<SingleDml> lastMergeDml = mergeDmlList.get(mergeDmlList.size() - 1);
 
-        if (mergeDmlList.size() > 1 || lastMergeDml.size() == MERGE_INSERT_SIZE) {
+        if (mergeDmlList.size() > 1 || lastMergeDml.size() == mergeSize) {
             // 串接合併 INSERT SQL (for 預設大小)
-            sql = new SqlBuilder(sqlPrefix, batchExecutor.getBacktick())
-                    .appendRepeat(MERGE_INSERT_SIZE, sqlValue).deleteBehind(1);
+            sql = upsertRows ? upsertSql(table, columnNames, pkNames, mergeSize, batchExecutor)
+                    : insertSql(table, columnNames, mergeSize, batchExecutor.getBacktick());
 
             // 使用批次插入多筆合併 INSERT SQL (for 預設大小)
-            List<List<Map<String, ?>>> batchValues = new ArrayList<>();
-            mergeDmlList.stream().filter(l -> l.size() == MERGE_INSERT_SIZE).forEach(mergeDml -> {
-                List<Map<String, ?>> values = new ArrayList<>();
+            List<List<SingleDml>> fullMergeDmlList = mergeDmlList.stream()
+                    .filter(l -> l.size() == mergeSize).collect(Collectors.toList());
+
+            // 批次執行 SQL (尚未提交)
+            batchExecutor.executeBatch(table, sql, fullMergeDmlList, (mergeDml, parameters) -> {
                 for (SingleDml dml : mergeDml) {
-                    columnNames.forEach(columnName -> {
-                        EtlColumn column = dml.getData().get(columnName);
-                        BatchExecutor.setValue(values, column.getSqlType(), column.getValue());
-                    });
+                    bindColumns(dml.getData(), columnNames, binders, parameters);
                 }
-                batchValues.add(values);
             });
 
-            // 批次執行 SQL (尚未提交)
-            batchExecutor.executeBatch(sql.toString(), batchValues);
-
             if (log.isTraceEnabled()) {
-                log.trace("Batch insert into target table, count: {}, sql: {}", batchValues.size(), sql);
+                log.trace("Batch insert into target table, count: {}, sql: {}", fullMergeDmlList.size(), sql);
             }
         }
 
         // 檢查是否有小於預設合併大小的 DML，若有則重組 SQL，單獨執行一遍
-        if (lastMergeDml.size() != MERGE_INSERT_SIZE) {
-            sql = new SqlBuilder(sqlPrefix, batchExecutor.getBacktick())
-                    .appendRepeat(lastMergeDml.size(), sqlValue).deleteBehind(1);
-            List<Map<String, ?>> values = new ArrayList<>();
-
-            for (SingleDml dml : lastMergeDml) {
-                Map<String, EtlColumn> data = dml.getData();
-
-                columnNames.forEach(columnName -> {
-                    EtlColumn column = data.get(columnName);
-                    BatchExecutor.setValue(values, column.getSqlType(), column.getValue());
-                });
-            }
+        if (lastMergeDml.size() != mergeSize) {
+            sql = upsertRows ? upsertSql(table, columnNames, pkNames, lastMergeDml.size(), batchExecutor)
+                    : insertSql(table, columnNames, lastMergeDml.size(), batchExecutor.getBacktick());
 
             // 執行 SQL (尚未提交)
-            batchExecutor.execute(sql.toString(), values);
+            batchExecutor.execute(table, sql, parameters -> {
+                for (SingleDml dml : lastMergeDml) {
+                    bindColumns(dml.getData(), columnNames, binders, parameters);
+                }
+            });
 
             if (log.isTraceEnabled()) {
                 log.trace("Insert into target table, sql: {}", sql);
@@ -188,51 +646,46 @@ public class LoadService {
     }
 
     /**
-     * 更新操作
+     * 是否以 upsert 冪等寫入，INSERT 及 UPDATE 皆依此判斷；不支援時 UPDATE 需維持 UPDATE，
+     * 否則改寫為一般 INSERT 會造成重複的資料
      */
-    private void update(String tableName, List<String> pkNames, List<SingleDml> dmlList, BatchExecutor batchExecutor) throws SQLException {
-        // 串接基本 UPDATE SQL (到 set 為止), ex: UPDATE "table" SET
-        String sqlPrefix = new SqlBuilder(batchExecutor.getBacktick())
-                .append("UPDATE ").appendWithBacktick(tableName).append(" SET ").toString();
+    private boolean isUpsert(List<String> pkNames, DbType dbType) {
+        return upsert && !pkNames.isEmpty() && upsertSupported(dbType);
+    }
 
-        // 串接 UPDATE SQL (where 部分), ex: WHERE "col_1" =? AND "col_2" =? AND "col_3"=?
-        String sqlWhere = new SqlBuilder(batchExecutor.getBacktick())
-                .append(" WHERE ").appendJoinWithBacktick("=? AND ", pkNames).deleteBehind(4).toString();
+    /**
+     * 目標庫是否可冪等寫入：MySQL、PostgreSQL 使用 upsert 語法，Redshift 先刪除再插入，無法判斷類型時不支援
+     */
+    static boolean upsertSupported(DbType dbType) {
+        return dbType == DbType.MYSQL || dbType == DbType.POSTGRESQL || dbType == DbType.REDSHIFT;
+    }
 
+    /**
+     * 更新操作
+     */
+    private void update(String tableName, List<String> pkNames, List<SingleDml> dmlList, BatchExecutor batchExecutor) throws SQLException {
         // 依據預設批次大小切割 DML
-        List<List<SingleDml>> batches = Lists.partition(dmlList, BATCH_UPDATE_SIZE);
+        List<List<SingleDml>> batches = Lists.partition(dmlList, batchSizeController.getUpdateSize());
         for (List<SingleDml> batch : batches) {
-            // 合併被修改的欄位，取該批次所有 DML 修改欄位的聯集
+            // 合併被修改的欄位，取該批次所有 DML 修改欄位的聯集，排序後以便重用 SQL 模板
             List<String> changedKeys = new ArrayList<>(batch.stream().map(SingleDml::getChangedKeys)
                     .reduce(new HashSet<>(), SyncUtil::mergeSet));
+            Collections.sort(changedKeys);
 
-            // 串接該批次完整的 UPDATE SQL
-            SqlBuilder sql = new SqlBuilder(sqlPrefix, batchExecutor.getBacktick())
-                    .appendJoinWithBacktick("=?, ", changedKeys).deleteBehind(2)
-                    .append(sqlWhere);
+            // 串接該批次完整的 UPDATE SQL, ex: UPDATE "table" SET "col_2"=?, "col_3"=? WHERE "col_1"=?
+            String sql = updateSql(tableName, changedKeys, pkNames, batchExecutor.getBacktick());
 
-            // 使用批次更新多筆資料
-            List<List<Map<String, ?>>> batchValues = new ArrayList<>();
-            for (SingleDml dml : batch) {
-                List<Map<String, ?>> values = new ArrayList<>();
+            ColumnBinder[] changedBinders = binderPlanCache.getBinders(tableName, changedKeys, batch.get(0).getData());
+            ColumnBinder[] pkBinders = binderPlanCache.getBinders(tableName, pkNames, batch.get(0).getOld());
 
+            // 使用批次更新多筆資料 (尚未提交)
+            batchExecutor.executeBatch(tableName, sql, batch, (dml, parameters) -> {
                 // 設定更改欄位的數值
-                for (String changedKey : changedKeys) {
-                    EtlColumn column = dml.getData().get(changedKey);
-                    BatchExecutor.setValue(values, column.getSqlType(), column.getValue());
-                }
-
-                // 設定條件欄位的數值
-                for (String pkName : pkNames) {
-                    EtlColumn column = dml.getData().get(pkName);
-                    BatchExecutor.setValue(values, column.getSqlType(), column.getValue());
-                }
-
-                batchValues.add(values);
-            }
+                bindColumns(dml.getData(), changedKeys, changedBinders, parameters);
 
-            // 批次執行 SQL (尚未提交)
-            batchExecutor.executeBatch(sql.toString(), batchValues);
+                // 設定條件欄位的數值，需使用修改前的 PK，以支援修改 PK 的 update
+                bindColumns(dml.getOld(), pkNames, pkBinders, parameters);
+            });
 
             if (log.isTraceEnabled()) {
                 log.trace("Batch update target table, sql: {}", sql);
@@ -244,35 +697,105 @@ public class LoadService {
      * 删除操作
      */
     private void delete(String tableName, List<String> pkNames, List<SingleDml> dmlList, BatchExecutor batchExecutor) throws SQLException {
-        // 串接 DELETE SQL
-        String sql = new SqlBuilder(batchExecutor.getBacktick())
-                .append("DELETE FROM ").appendWithBacktick(tableName)
-                .append(" WHERE ").appendJoinWithBacktick("=? AND ", pkNames).deleteBehind(4).toString();
+        // 串接 DELETE SQL, ex: DELETE FROM "table" WHERE "col_1"=?
+        String sql = deleteSql(tableName, pkNames, batchExecutor.getBacktick());
 
         // 依據預設批次大小切割 DML
-        List<List<SingleDml>> batches = Lists.partition(dmlList, BATCH_DELETE_SIZE);
+        List<List<SingleDml>> batches = Lists.partition(dmlList, batchSizeController.getDeleteSize());
         for (List<SingleDml> batch : batches) {
 
-            // 使用批次刪除多筆資料
-            List<List<Map<String, ?>>> batchValues = new ArrayList<>();
-            for (SingleDml dml : batch) {
-                List<Map<String, ?>> values = new ArrayList<>();
-
-                // 設定條件欄位的數值
-                for (String pkName : pkNames) {
-                    EtlColumn column = dml.getData().get(pkName);
-                    BatchExecutor.setValue(values, column.getSqlType(), column.getValue());
-                }
-
-                batchValues.add(values);
-            }
+            ColumnBinder[] pkBinders = binderPlanCache.getBinders(tableName, pkNames, batch.get(0).getData());
 
-            // 批次執行 SQL (尚未提交)
-            batchExecutor.executeBatch(sql, batchValues);
+            // 使用批次刪除多筆資料，設定條件欄位的數值 (尚未提交)
+            batchExecutor.executeBatch(tableName, sql, batch, (dml, parameters) ->
+                    bindColumns(dml.getData(), pkNames, pkBinders, parameters));
 
             if (log.isTraceEnabled()) {
                 log.trace("Batch delete target table, sql: {}", sql);
             }
         }
     }
+
+    /**
+     * 依欄位順序將數值寫入參數緩衝區
+     */
+    private static void bindColumns(Map<String, EtlColumn> row, List<String> columnNames, ColumnBinder[] binders,
+                                    ParameterBuffer parameters) {
+        for (int i = 0; i < binders.length; i++) {
+            EtlColumn column = row.get(columnNames.get(i));
+            if (binders[i] != null) {
+                parameters.add(binders[i], column.getValue());
+            } else {
+                parameters.add(column.getSqlType(), column.getValue());
+            }
+        }
+    }
+
+    /**
+     * 取得合併 INSERT SQL, ex: INSERT INTO "table" ("col_1","col_2") VALUES (?,?),(?,?)
+     */
+    private String insertSql(String table, List<String> columnNames, int rows, String backtick) {
+        return sqlTemplateCache.get(new SqlTemplateKey(table, "INSERT", columnNames, rows), () -> {
+            // 串接 INSERT SQL (value 部分), ex: (?,?,?),
+            String sqlValue = new SqlBuilder(backtick)
+                    .append("(").appendRepeat(columnNames.size(), "?,").deleteBehind(1).append("),").toString();
+
+            // 串接 INSERT SQL (到 value 為止) 並重複插入 value 部分
+            return new SqlBuilder(backtick).append("INSERT INTO ").appendWithBacktick(table)
+                    .append(" (").appendJoinWithBacktick(",", columnNames).deleteBehind(1) // 插入欄位
+                    .append(") VALUES ").appendRepeat(rows, sqlValue).deleteBehind(1).toString();
+        });
+    }
+
+    /**
+     * 取得合併 UPSERT SQL，資料已存在時覆寫非 PK 欄位
+     * <p>
+     * MySQL, ex: INSERT INTO `table` (`col_1`,`col_2`) VALUES (?,?),(?,?) ON DUPLICATE KEY UPDATE `col_2`=VALUES(`col_2`)
+     * <br>
+     * PostgreSQL, ex: INSERT INTO "table" ("col_1","col_2") VALUES (?,?),(?,?) ON CONFLICT ("col_1") DO UPDATE SET "col_2"=EXCLUDED."col_2"
+     */
+    private String upsertSql(String table, List<String> columnNames, List<String> pkNames, int rows, BatchExecutor batchExecutor) {
+        String backtick = batchExecutor.getBacktick();
+        return sqlTemplateCache.get(new SqlTemplateKey(table, "UPSERT", columnNames, rows), () -> {
+            List<String> valueNames = columnNames.stream().filter(c -> !pkNames.contains(c)).collect(Collectors.toList());
+            SqlBuilder sql = new SqlBuilder(insertSql(table, columnNames, rows, backtick), backtick);
+
+            if (batchExecutor.getDbType() == DbType.MYSQL) {
+                sql.append(" ON DUPLICATE KEY UPDATE ");
+                if (valueNames.isEmpty()) {
+                    // 只有 PK 欄位時，更新為原值即可
+                    sql.appendWithBacktick(pkNames.get(0)).append("=").appendWithBacktick(pkNames.get(0)).append(",");
+                }
+                valueNames.forEach(c -> sql.appendWithBacktick(c).append("=VALUES(").appendWithBacktick(c).append("),"));
+                return sql.deleteBehind(1).toString();
+            }
+
+            sql.append(" ON CONFLICT (").appendJoinWithBacktick(",", pkNames).deleteBehind(1).append(")");
+            if (valueNames.isEmpty()) {
+                return sql.append(" DO NOTHING").toString();
+            }
+            sql.append(" DO UPDATE SET ");
+            valueNames.forEach(c -> sql.appendWithBacktick(c).append("=EXCLUDED.").appendWithBacktick(c).append(","));
+            return sql.deleteBehind(1).toString();
+        });
+    }
+
+    /**
+     * 取得 UPDATE SQL, ex: UPDATE "table" SET "col_2"=?, "col_3"=? WHERE "col_1"=?
+     */
+    private String updateSql(String table, List<String> changedKeys, List<String> pkNames, String backtick) {
+        return sqlTemplateCache.get(new SqlTemplateKey(table, "UPDATE", changedKeys, 1), () ->
+                new SqlBuilder(backtick).append("UPDATE ").appendWithBacktick(table).append(" SET ")
+                        .appendJoinWithBacktick("=?, ", changedKeys).deleteBehind(2)
+                        .append(" WHERE ").appendJoinWithBacktick("=? AND ", pkNames).deleteBehind(4).toString());
+    }
+
+    /**
+     * 取得 DELETE SQL, ex: DELETE FROM "table" WHERE "col_1"=?
+     */
+    private String deleteSql(String table, List<String> pkNames, String backtick) {
+        return sqlTemplateCache.get(new SqlTemplateKey(table, "DELETE", pkNames, 1), () ->
+                new SqlBuilder(backtick).append("DELETE FROM ").appendWithBacktick(table)
+                        .append(" WHERE ").appendJoinWithBacktick("=? AND ", pkNames).deleteBehind(4).toString());
+    }
 }
@@ -1,15 +1,20 @@
 package com.datacenter.canal.load.support;
 
+import com.datacenter.canal.process.support.PipelineMetrics;
 import com.zaxxer.hikari.HikariDataSource;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
 
 import javax.sql.DataSource;
 import java.io.Closeable;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -22,73 +27,253 @@ public class BatchExecutor implements Closeable {
 
     private final AtomicInteger idx = new AtomicInteger(0);
     private final DataSource dataSource;
+    private final ParameterBuffer parameters = new ParameterBuffer(256); // 每個 statement 重複使用
+    private final int statementCacheSize;
+    private final Map<StatementKey, PreparedStatement> statements; // 以資料表及 SQL 為 key 的 PreparedStatement 快取 (LRU)
     private Connection conn;
 
     @Getter
     private final String backtick;
 
+    @Getter
+    private final DbType dbType;
+
+    @Setter
+    private boolean copyEnabled; // PostgreSQL 時，是否使用 COPY FROM STDIN 寫入
+
+    @Setter
+    private PipelineMetrics metrics; // 未設定時不記錄
+
     public BatchExecutor(DataSource dataSource) throws SQLException {
+        this(dataSource, 0);
+    }
+
+    /**
+     * @param statementCacheSize 連線上保留的 PreparedStatement 數量，0 表示不快取
+     */
+    public BatchExecutor(DataSource dataSource, int statementCacheSize) throws SQLException {
         this.dataSource = dataSource;
         this.backtick = getBacktick(dataSource);
+        this.dbType = getDbType(dataSource);
+        this.statementCacheSize = statementCacheSize;
+        this.statements = new LinkedHashMap<StatementKey, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<StatementKey, PreparedStatement> eldest) {
+                if (size() > statementCacheSize) {
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
     }
 
-    public Connection getConn() {
+    /**
+     * 取得連線，尚未連線或連線已關閉時重新取得
+     */
+    public Connection getConn() throws SQLException {
         if (conn == null) {
+            Connection connection = dataSource.getConnection();
             try {
-                conn = dataSource.getConnection();
-                this.conn.setAutoCommit(false);
+                connection.setAutoCommit(false);
             } catch (SQLException e) {
-                log.error(e.getMessage(), e);
+                connection.close();
+                throw e;
             }
+            this.conn = connection;
         }
         return conn;
     }
 
-    public static void setValue(List<Map<String, ?>> values, int type, Object value) {
-        Map<String, Object> valueItem = new HashMap<>();
-        valueItem.put("type", type);
-        valueItem.put("value", value);
-        values.add(valueItem);
+    /**
+     * 執行不需參數的 SQL，不快取 statement (尚未提交)
+     */
+    public void execute(String sql) throws SQLException {
+        execute(sql, parameters -> {
+        });
+    }
+
+    /**
+     * 執行單一 SQL，不快取 statement，回傳異動筆數 (尚未提交)，
+     * 用於參照暫存表等每批次重建的物件，或只執行一次的 SQL
+     */
+    public int execute(String sql, ParameterBinder binder) throws SQLException {
+        return execute(null, sql, binder);
+    }
+
+    /**
+     * 執行單一 SQL，並以資料表及 SQL 快取 statement，回傳異動筆數 (尚未提交)
+     *
+     * @param table SQL 操作的資料表，該資料表結構變更時移除 statement，null 時不快取
+     */
+    public int execute(String table, String sql, ParameterBinder binder) throws SQLException {
+        boolean cached = table != null && statementCacheSize > 0;
+        PreparedStatement ps = cached ? prepare(table, sql) : getConn().prepareStatement(sql);
+        try {
+            try {
+                parameters.clear();
+                binder.bind(parameters);
+                SyncUtil.setPStmt(ps, parameters);
+            } finally {
+                parameters.clear();
+            }
+
+            log.trace("start execute");
+            long start = System.nanoTime();
+            ps.execute();
+            if (metrics != null) {
+                metrics.recordExecute(System.nanoTime() - start);
+            }
+            idx.incrementAndGet();
+            log.trace("end execute");
+            return ps.getUpdateCount();
+        } finally {
+            if (!cached) {
+                ps.close();
+            }
+        }
+    }
+
+    /**
+     * 批次執行 SQL，每筆資料綁定一組參數，並以資料表及 SQL 快取 statement (尚未提交)
+     *
+     * @param table SQL 操作的資料表，該資料表結構變更時移除 statement
+     */
+    public <T> void executeBatch(String table, String sql, List<T> rows, RowBinder<T> binder) throws SQLException {
+        boolean cached = statementCacheSize > 0;
+        PreparedStatement ps = cached ? prepare(table, sql) : getConn().prepareStatement(sql);
+
+        try {
+            try {
+                for (T row : rows) {
+                    parameters.clear();
+                    binder.bind(row, parameters);
+                    SyncUtil.setPStmt(ps, parameters);
+                    ps.addBatch();
+                }
+            } finally {
+                parameters.clear();
+            }
+
+            log.trace("start executeBatch, size: {}", rows.size());
+            long start = System.nanoTime();
+            ps.executeBatch();
+            if (metrics != null) {
+                metrics.recordExecuteBatch(System.nanoTime() - start);
+            }
+            idx.incrementAndGet();
+            log.trace("end executeBatch, size: {}", rows.size());
+        } catch (SQLException | RuntimeException e) {
+            // 快取的 statement 需清除未送出的批次，避免下次執行時重複送出
+            if (cached) {
+                try {
+                    ps.clearBatch();
+                } catch (SQLException ignore) {
+                    // 原本的錯誤較重要
+                }
+            }
+            throw e;
+        } finally {
+            if (!cached) {
+                ps.close();
+            }
+        }
     }
 
-    public void execute(String sql, List<Map<String, ?>> values) throws SQLException {
-        PreparedStatement ps = getConn().prepareStatement(sql);
-        int len = values.size();
-        for (int i = 0; i < len; i++) {
-            int type = (Integer) values.get(i).get("type");
-            Object value = values.get(i).get("value");
-            SyncUtil.setPStmt(type, ps, value, i + 1);
+    /**
+     * 自快取取得 PreparedStatement，不存在時於目前連線上建立
+     */
+    private PreparedStatement prepare(String table, String sql) throws SQLException {
+        StatementKey key = new StatementKey(table, sql);
+        PreparedStatement ps = statements.get(key);
+        if (ps == null || ps.isClosed()) {
+            ps = getConn().prepareStatement(sql);
+            statements.put(key, ps);
         }
+        return ps;
+    }
 
-        log.trace("start execute");
-        ps.execute();
-        idx.incrementAndGet();
-        ps.close();
-        log.trace("end execute");
+    /**
+     * 預先建立並快取 statement (ex: 啟動時為已知資料表建立)，未啟用快取時不處理
+     */
+    public void prepareStatement(String table, String sql) throws SQLException {
+        if (statementCacheSize > 0) {
+            prepare(table, sql);
+        }
     }
 
-    public void executeBatch(String sql, List<List<Map<String, ?>>> batchValues) throws SQLException {
-        PreparedStatement ps = getConn().prepareStatement(sql);
-        int len = batchValues.get(0).size();
+    /**
+     * 關閉並移除所有快取的 statement (ex: 資料表結構變更)
+     */
+    public void clearStatements() {
+        statements.values().forEach(BatchExecutor::closeQuietly);
+        statements.clear();
+    }
 
-        for (List<Map<String, ?>> values : batchValues) {
-            for (int i = 0; i < len; i++) {
-                int type = (Integer) values.get(i).get("type");
-                Object value = values.get(i).get("value");
-                SyncUtil.setPStmt(type, ps, value, i + 1);
+    /**
+     * 關閉並移除該資料表的 statement (ex: 資料表結構變更)
+     */
+    public void clearStatements(String table) {
+        Iterator<Map.Entry<StatementKey, PreparedStatement>> iterator = statements.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<StatementKey, PreparedStatement> entry = iterator.next();
+            if (table.equals(entry.getKey().getTable())) {
+                closeQuietly(entry.getValue());
+                iterator.remove();
             }
-            ps.addBatch();
         }
+    }
+
+    public int getStatementCount() {
+        return statements.size();
+    }
 
-        log.trace("start executeBatch, size: {}", batchValues.size());
-        ps.executeBatch();
-        idx.incrementAndGet();
-        ps.close();
-        log.trace("end executeBatch, size: {}", batchValues.size());
+    /**
+     * 是否可使用 COPY FROM STDIN 寫入
+     */
+    public boolean isCopySupported() {
+        return copyEnabled && dbType == DbType.POSTGRESQL;
+    }
+
+    /**
+     * 使用 COPY FROM STDIN 串流寫入 (CSV 格式)，回傳寫入筆數
+     *
+     * @param table       目標資料表
+     * @param columnNames 寫入欄位，順序需與 CopyWriter 寫入的數值相同
+     * @param rows        將資料逐筆寫入 CopyWriter
+     */
+    public long copyIn(String table, List<String> columnNames, CopyRows rows) throws SQLException {
+        // ex: COPY "table" ("col_1","col_2") FROM STDIN WITH (FORMAT csv)
+        String sql = new SqlBuilder(backtick).append("COPY ").appendWithBacktick(table)
+                .append(" (").appendJoinWithBacktick(",", columnNames).deleteBehind(1)
+                .append(") FROM STDIN WITH (FORMAT csv)").toString();
+
+        long start = System.nanoTime();
+        CopyIn copyIn = getConn().unwrap(PGConnection.class).getCopyAPI().copyIn(sql);
+        try {
+            log.trace("start copyIn");
+            CopyWriter writer = new CopyWriter(copyIn);
+            rows.write(writer);
+            long count = writer.finish();
+            if (metrics != null) {
+                metrics.recordCopy(System.nanoTime() - start);
+            }
+            idx.incrementAndGet();
+            log.trace("end copyIn, size: {}", count);
+            return count;
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
     }
 
     public void commit() throws SQLException {
+        long start = System.nanoTime();
         getConn().commit();
+        if (metrics != null) {
+            metrics.recordCommit(System.nanoTime() - start);
+        }
         if (log.isTraceEnabled()) {
             log.trace("Batch executor commit " + idx.get() + " rows");
         }
@@ -96,7 +281,10 @@ public class BatchExecutor implements Closeable {
     }
 
     public void rollback() throws SQLException {
-        getConn().rollback();
+        if (conn == null) {
+            return;
+        }
+        conn.rollback();
         if (log.isTraceEnabled()) {
             log.trace("Batch executor rollback " + idx.get() + " rows");
         }
@@ -105,6 +293,7 @@ public class BatchExecutor implements Closeable {
 
     @Override
     public void close() {
+        clearStatements();
         if (conn != null) {
             try {
                 conn.close();
@@ -116,6 +305,14 @@ public class BatchExecutor implements Closeable {
         }
     }
 
+    private static void closeQuietly(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException e) {
+            log.warn("Close statement failed: {}", e.getMessage());
+        }
+    }
+
     /**
      * 依據資料來源，取得 Backtick
      */
@@ -128,4 +325,40 @@ public class BatchExecutor implements Closeable {
         log.warn("Can not detect dataSource type");
         return "";
     }
+
+    /**
+     * 依據資料來源，取得資料庫類型
+     */
+    private static DbType getDbType(DataSource dataSource) throws SQLException {
+        if (dataSource instanceof HikariDataSource) {
+            HikariDataSource hikariDataSource = (HikariDataSource) dataSource;
+            return SyncUtil.getDbTypeByUrl(hikariDataSource.getJdbcUrl());
+        }
+
+        return DbType.UNKNOWN;
+    }
+
+    /**
+     * 將參數寫入 ParameterBuffer
+     */
+    @FunctionalInterface
+    public interface ParameterBinder {
+        void bind(ParameterBuffer parameters);
+    }
+
+    /**
+     * 將單筆資料的參數寫入 ParameterBuffer
+     */
+    @FunctionalInterface
+    public interface RowBinder<T> {
+        void bind(T row, ParameterBuffer parameters);
+    }
+
+    /**
+     * 將資料逐筆寫入 COPY 串流
+     */
+    @FunctionalInterface
+    public interface CopyRows {
+        void write(CopyWriter writer) throws SQLException;
+    }
 }
@@ -0,0 +1,74 @@
+package com.datacenter.canal.load.support;
+
+import com.datacenter.canal.select.support.EtlColumn;
+import lombok.Setter;
+
+import java.sql.Types;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 各資料表欄位的 ColumnBinder 快取，以 (table, column) 為 key
+ * <p>
+ * 有目標資料表結構時依目標欄位型別設置參數，否則使用來源欄位 (樣本資料) 的 sqlType
+ */
+public class BinderPlanCache {
+
+    private final Map<String, Map<String, ColumnBinder>> plans = new ConcurrentHashMap<>();
+
+    @Setter
+    private TargetSchemaCache schemaCache; // 未設定時使用來源欄位型別
+
+    /**
+     * 依欄位順序取得 ColumnBinder，欄位不存在時為 null
+     */
+    public ColumnBinder[] getBinders(String table, List<String> columnNames, Map<String, EtlColumn> sample) {
+        return getBinders(table, table, columnNames, sample);
+    }
+
+    /**
+     * 依欄位順序取得 ColumnBinder，欄位不存在時為 null
+     *
+     * @param typeTable 取得目標欄位型別的資料表 (ex: 暫存表與目標表結構相同)
+     */
+    public ColumnBinder[] getBinders(String table, String typeTable, List<String> columnNames,
+                                     Map<String, EtlColumn> sample) {
+        TableMeta meta = schemaCache == null ? null : schemaCache.get(typeTable);
+        Map<String, ColumnBinder> tablePlans = plans.computeIfAbsent(table, k -> new ConcurrentHashMap<>());
+        ColumnBinder[] binders = new ColumnBinder[columnNames.size()];
+
+        for (int i = 0; i < binders.length; i++) {
+            String columnName = columnNames.get(i);
+            EtlColumn column = sample.get(columnName);
+            if (column == null) {
+                continue;
+            }
+
+            int sqlType = column.getSqlType();
+            TableMeta.Column target = meta == null ? null : meta.getColumn(columnName);
+            if (target != null && target.getSqlType() != Types.OTHER) {
+                sqlType = target.getSqlType();
+            }
+
+            ColumnBinder binder = tablePlans.get(columnName);
+            if (binder == null || binder.getSqlType() != sqlType || binder.getSourceSqlType() != column.getSqlType()) {
+                binder = new ColumnBinder(sqlType, column.getSqlType());
+                tablePlans.put(columnName, binder);
+            }
+            binders[i] = binder;
+        }
+        return binders;
+    }
+
+    /**
+     * 移除資料表的快取 (ex: 資料表結構變更)
+     */
+    public void invalidate(String table) {
+        plans.remove(table);
+    }
+
+    public void clear() {
+        plans.clear();
+    }
+}
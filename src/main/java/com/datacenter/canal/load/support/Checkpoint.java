@@ -0,0 +1,73 @@
+package com.datacenter.canal.load.support;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+/**
+ * 已套用至目標資料庫的 binlog 位置
+ */
+@Getter
+@EqualsAndHashCode
+public class Checkpoint implements Comparable<Checkpoint> {
+
+    private final String logfileName;
+    private final long logfileOffset;
+
+    public Checkpoint(String logfileName, long logfileOffset) {
+        this.logfileName = logfileName;
+        this.logfileOffset = logfileOffset;
+    }
+
+    /**
+     * 解析 {@link #toString()} 的結果, ex: mysql-bin.000123:4567
+     */
+    public static Checkpoint parse(String str) {
+        int idx = str.lastIndexOf(':');
+        if (idx <= 0) {
+            throw new IllegalArgumentException("Invalid checkpoint: " + str);
+        }
+        return new Checkpoint(str.substring(0, idx), Long.parseLong(str.substring(idx + 1)));
+    }
+
+    /**
+     * 取較新的位置，任一為 null 時回傳另一個
+     */
+    public static Checkpoint max(Checkpoint a, Checkpoint b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    /**
+     * 依 binlog 檔案序號及檔案內位置比較，檔名無序號時以字串比較
+     */
+    @Override
+    public int compareTo(Checkpoint other) {
+        int result = Long.compare(fileIndex(logfileName), fileIndex(other.logfileName));
+        if (result == 0) {
+            result = logfileName.compareTo(other.logfileName);
+        }
+        return result != 0 ? result : Long.compare(logfileOffset, other.logfileOffset);
+    }
+
+    @Override
+    public String toString() {
+        return logfileName + ":" + logfileOffset;
+    }
+
+    /**
+     * 取得 binlog 檔案序號, ex: mysql-bin.000123 -> 123
+     */
+    private static long fileIndex(String logfileName) {
+        int idx = logfileName.lastIndexOf('.');
+        try {
+            return Long.parseLong(logfileName.substring(idx + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
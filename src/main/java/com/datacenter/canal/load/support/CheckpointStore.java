@@ -0,0 +1,26 @@
+package com.datacenter.canal.load.support;
+
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * 記錄各 lane (資料表或資料表分區) 已套用至目標資料庫的 binlog 位置，
+ * 重新啟動或 rollback 後重新抓取時，可略過已套用的資料
+ */
+public interface CheckpointStore {
+
+    /**
+     * 取得 lane 已套用的位置，無紀錄時為 null
+     */
+    Checkpoint get(String lane);
+
+    /**
+     * 於提交前寫入位置，與資料在同一交易中 (尚未提交)
+     */
+    void save(Map<String, Checkpoint> checkpoints, BatchExecutor batchExecutor) throws SQLException;
+
+    /**
+     * 提交成功後呼叫
+     */
+    void committed(Map<String, Checkpoint> checkpoints);
+}
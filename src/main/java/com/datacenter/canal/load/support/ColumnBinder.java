@@ -0,0 +1,63 @@
+package com.datacenter.canal.load.support;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * 單一欄位的參數設置方法，依 sqlType 及實際數值類型預先解析，之後直接呼叫
+ * <p>
+ * 數值類型改變時 (ex: 同一欄位轉換失敗回傳字串)，重新解析並取代；
+ * 使用目標欄位型別時，數值類型與目標型別不相容則改用來源欄位型別
+ */
+public class ColumnBinder {
+
+    private final int sqlType;
+    private final int sourceSqlType;
+    private volatile Plan plan;
+
+    public ColumnBinder(int sqlType) {
+        this(sqlType, sqlType);
+    }
+
+    /**
+     * @param sqlType       目標欄位型別
+     * @param sourceSqlType 來源欄位型別
+     */
+    public ColumnBinder(int sqlType, int sourceSqlType) {
+        this.sqlType = sqlType;
+        this.sourceSqlType = sourceSqlType;
+    }
+
+    public int getSqlType() {
+        return sqlType;
+    }
+
+    public int getSourceSqlType() {
+        return sourceSqlType;
+    }
+
+    public void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, sqlType);
+            return;
+        }
+
+        Plan current = this.plan;
+        if (current == null || current.valueClass != value.getClass()) {
+            int type = sqlType == sourceSqlType || SyncUtil.isSupported(sqlType, value.getClass()) ? sqlType : sourceSqlType;
+            current = new Plan(value.getClass(), SyncUtil.getBinder(type, value.getClass()));
+            this.plan = current;
+        }
+        current.binder.bind(ps, index, value);
+    }
+
+    private static class Plan {
+        private final Class<?> valueClass;
+        private final ValueBinder binder;
+
+        Plan(Class<?> valueClass, ValueBinder binder) {
+            this.valueClass = valueClass;
+            this.binder = binder;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.datacenter.canal.load.support;
+
+import org.postgresql.copy.CopyIn;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+
+/**
+ * 以 CSV 格式將資料直接寫入 PostgreSQL COPY FROM STDIN 串流
+ * <p>
+ * 數值直接編碼為 UTF-8 寫入可重用的緩衝區，緩衝區滿時才送出，不產生中間物件
+ */
+public class CopyWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final CopyIn copyIn;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private boolean firstValue = true;
+    private long rows;
+
+    CopyWriter(CopyIn copyIn) {
+        this.copyIn = copyIn;
+    }
+
+    /**
+     * 寫入單一欄位數值，null 以空白 (未加引號) 表示
+     */
+    public CopyWriter write(Object value) throws SQLException {
+        if (!firstValue) {
+            writeByte(',');
+        }
+        firstValue = false;
+
+        if (value == null) {
+            return this;
+        }
+
+        if (value instanceof String) {
+            writeQuoted((String) value);
+        } else if (value instanceof Boolean) {
+            writeByte((Boolean) value ? 't' : 'f');
+        } else if (value instanceof BigDecimal) {
+            writeAscii(((BigDecimal) value).toPlainString());
+        } else if (value instanceof Number) {
+            writeAscii(value.toString());
+        } else if (value instanceof byte[]) {
+            // bytea hex 格式, ex: \x0a1b
+            byte[] bytes = (byte[]) value;
+            writeByte('\\');
+            writeByte('x');
+            for (byte b : bytes) {
+                writeByte(HEX[(b >> 4) & 0xF]);
+                writeByte(HEX[b & 0xF]);
+            }
+        } else if (value instanceof java.sql.Timestamp || value instanceof java.sql.Date || value instanceof java.sql.Time) {
+            writeAscii(value.toString());
+        } else if (value instanceof java.util.Date) {
+            writeAscii(new java.sql.Timestamp(((java.util.Date) value).getTime()).toString());
+        } else {
+            writeQuoted(value.toString());
+        }
+        return this;
+    }
+
+    /**
+     * 結束一筆資料
+     */
+    public void endRow() throws SQLException {
+        writeByte('\n');
+        firstValue = true;
+        rows++;
+    }
+
+    /**
+     * 送出剩餘資料並結束 COPY，回傳寫入筆數
+     */
+    long finish() throws SQLException {
+        flush();
+        copyIn.endCopy();
+        return rows;
+    }
+
+    private void writeQuoted(String str) throws SQLException {
+        writeByte('"');
+        int len = str.length();
+        for (int i = 0; i < len; i++) {
+            char c = str.charAt(i);
+            if (c == '"') {
+                writeByte('"');
+                writeByte('"');
+            } else if (c < 0x80) {
+                writeByte(c);
+            } else if (c < 0x800) {
+                writeByte(0xC0 | (c >> 6));
+                writeByte(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(str.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, str.charAt(++i));
+                writeByte(0xF0 | (codePoint >> 18));
+                writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+                writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+                writeByte(0x80 | (codePoint & 0x3F));
+            } else {
+                writeByte(0xE0 | (c >> 12));
+                writeByte(0x80 | ((c >> 6) & 0x3F));
+                writeByte(0x80 | (c & 0x3F));
+            }
+        }
+        writeByte('"');
+    }
+
+    private void writeAscii(String str) throws SQLException {
+        int len = str.length();
+        for (int i = 0; i < len; i++) {
+            writeByte(str.charAt(i));
+        }
+    }
+
+    private void writeByte(int b) throws SQLException {
+        if (position == BUFFER_SIZE) {
+            flush();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    private void flush() throws SQLException {
+        if (position > 0) {
+            copyIn.writeToCopy(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.datacenter.canal.load.support;
+
+/**
+ * 目標資料庫類型
+ */
+public enum DbType {
+    MYSQL,
+    POSTGRESQL,
+    REDSHIFT,
+    UNKNOWN
+}
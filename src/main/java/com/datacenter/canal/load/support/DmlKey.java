@@ -0,0 +1,54 @@
+package com.datacenter.canal.load.support;
+
+import com.datacenter.canal.select.support.EtlColumn;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 資料列的 key，由資料表及所有 PK 欄位的數值組成，用於判斷 DML 之間的相依性
+ */
+public class DmlKey {
+    private final String database;
+    private final String table;
+    private final Object[] values;
+    private final int hash;
+
+    public DmlKey(String database, String table, List<String> pkNames, Map<String, EtlColumn> row) {
+        this.database = database;
+        this.table = table;
+        this.values = new Object[pkNames.size()];
+        for (int i = 0; i < values.length; i++) {
+            EtlColumn column = row.get(pkNames.get(i));
+            this.values[i] = column == null ? null : column.getValue();
+        }
+        this.hash = 31 * (31 * Objects.hashCode(database) + Objects.hashCode(table)) + Arrays.deepHashCode(values);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DmlKey)) {
+            return false;
+        }
+        DmlKey other = (DmlKey) o;
+        return hash == other.hash
+                && Objects.equals(table, other.table)
+                && Objects.equals(database, other.database)
+                && Arrays.deepEquals(values, other.values); // byte[] 等陣列需比對內容
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return database + "." + table + Arrays.deepToString(values);
+    }
+}
@@ -0,0 +1,40 @@
+package com.datacenter.canal.load.support;
+
+import java.util.*;
+
+/**
+ * DML 排程，依 PK 相依性及 SQL 類型計算執行優先度
+ */
+public class DmlScheduler {
+
+    private static final int LEVEL_STEP = 10;
+
+    /**
+     * 排定所有 DML 的優先度，並依優先度由低至高分組
+     * <p>
+     * 以 key 對應最後一筆使用該 key 的 DML，每筆 DML 只需查詢自身的 key，時間複雜度為 O(n)。
+     * 有相依的 DML 優先度為前一筆加 10，最後再依 SQL 類型修正，INSERT -> UPDATE -> DELETE
+     */
+    public static SortedMap<Integer, List<SingleDml>> schedule(List<SingleDml> totalDml) {
+        Map<DmlKey, SingleDml> lastDmlMap = new HashMap<>(totalDml.size() * 2);
+
+        for (SingleDml dml : totalDml) {
+            int priority = 0;
+            for (DmlKey key : dml.getDataKeys()) {
+                SingleDml lastDml = lastDmlMap.put(key, dml);
+                if (lastDml != null && lastDml != dml) {
+                    priority = Math.max(priority, lastDml.getPriority() + LEVEL_STEP);
+                }
+            }
+            dml.setPriority(priority);
+        }
+
+        // 根據 SQL 的類型，修正優先度，INSERT -> UPDATE -> DELETE
+        SortedMap<Integer, List<SingleDml>> priorityMap = new TreeMap<>();
+        for (SingleDml dml : totalDml) {
+            dml.addTypePriority();
+            priorityMap.computeIfAbsent(dml.getPriority(), k -> new ArrayList<>()).add(dml);
+        }
+        return priorityMap;
+    }
+}
@@ -0,0 +1,83 @@
+package com.datacenter.canal.load.support;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 將位置寫入本機檔案，每次提交後寫入暫存檔並 fsync，再以 rename 取代原檔
+ * <p>
+ * 位置於資料提交後才寫入，兩者之間中斷時，該 batch 會再套用一次 (at-least-once)
+ */
+@Slf4j
+public class FileCheckpointStore implements CheckpointStore {
+
+    private final Path file;
+    private final Path tmpFile;
+    private final Map<String, Checkpoint> checkpoints = new ConcurrentHashMap<>();
+
+    public FileCheckpointStore(Path file) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.tmpFile = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+        Files.createDirectories(this.file.getParent());
+
+        if (Files.exists(this.file)) {
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(this.file, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+            properties.stringPropertyNames().forEach(lane ->
+                    checkpoints.put(lane, Checkpoint.parse(properties.getProperty(lane))));
+        }
+        log.info("Load {} checkpoints from file: {}", checkpoints.size(), this.file);
+    }
+
+    @Override
+    public Checkpoint get(String lane) {
+        return checkpoints.get(lane);
+    }
+
+    @Override
+    public void save(Map<String, Checkpoint> laneCheckpoints, BatchExecutor batchExecutor) {
+        // 提交後才寫入檔案
+    }
+
+    @Override
+    public synchronized void committed(Map<String, Checkpoint> laneCheckpoints) {
+        laneCheckpoints.forEach((lane, checkpoint) -> checkpoints.merge(lane, checkpoint, Checkpoint::max));
+
+        Properties properties = new Properties();
+        new TreeMap<>(checkpoints).forEach((lane, checkpoint) -> properties.setProperty(lane, checkpoint.toString()));
+
+        try {
+            StringWriter writer = new StringWriter();
+            properties.store(writer, null);
+            ByteBuffer buffer = ByteBuffer.wrap(writer.toString().getBytes(StandardCharsets.UTF_8));
+
+            try (FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Write checkpoint file failed: " + file, e);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.datacenter.canal.load.support;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 單一 batch 的載入進度，平行載入時各分區各自提交，重試時只重新執行尚未提交的分區
+ * <p>
+ * 同一 batch 重試時載入的 DML 不變，切分結果相同，分區編號可直接對應
+ */
+public class LoadProgress {
+
+    private final Set<Integer> committed = ConcurrentHashMap.newKeySet();
+    private volatile Set<String> keyChangedTables = Collections.emptySet(); // 最近一次切分時整張表分在同一區的資料表
+
+    public boolean isCommitted(int partition) {
+        return committed.contains(partition);
+    }
+
+    public void commit(int partition) {
+        committed.add(partition);
+    }
+
+    /**
+     * 是否已有分區提交 (batch 已部分套用至目標庫)
+     */
+    public boolean hasCommitted() {
+        return !committed.isEmpty();
+    }
+
+    public int getCommittedCount() {
+        return committed.size();
+    }
+
+    public Set<String> getKeyChangedTables() {
+        return keyChangedTables;
+    }
+
+    public void setKeyChangedTables(Set<String> keyChangedTables) {
+        this.keyChangedTables = keyChangedTables;
+    }
+}
@@ -0,0 +1,218 @@
+package com.datacenter.canal.load.support;
+
+import com.datacenter.canal.select.support.EtlColumn;
+import com.google.common.collect.Lists;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.*;
+import java.util.function.IntSupplier;
+
+/**
+ * 使用暫存表合併寫入，適用於 Redshift/PostgreSQL
+ * <p>
+ * 先將批次中每個 PK 的最終狀態寫入暫存表，再以 DELETE ... USING 刪除目標表中被新增或刪除的資料，
+ * 以 UPDATE ... FROM 修改只有 update 的資料 (只修改來源有的欄位，目標表其他欄位保持不變)，
+ * 最後以 INSERT ... SELECT 寫回新增的資料，不論批次大小，對目標表只需執行固定數量的 SQL
+ */
+@Slf4j
+public class MergeLoader {
+
+    private static final String STAGE_PREFIX = "canal_stage_";
+    private static final String OP_COLUMN = "canal_op";
+    private static final String OP_INSERT = "I"; // 刪除後重新寫入
+    private static final String OP_UPDATE = "U"; // 只修改來源有的欄位
+    private static final String OP_DELETE = "D";
+
+    private final SqlTemplateCache sqlTemplateCache;
+    private final BinderPlanCache binderPlanCache;
+    private final IntSupplier stageInsertSize;
+
+    public MergeLoader(SqlTemplateCache sqlTemplateCache, BinderPlanCache binderPlanCache, IntSupplier stageInsertSize) {
+        this.sqlTemplateCache = sqlTemplateCache;
+        this.binderPlanCache = binderPlanCache;
+        this.stageInsertSize = stageInsertSize;
+    }
+
+    /**
+     * 合併寫入單一資料表的所有 DML (尚未提交)
+     */
+    public void merge(String table, List<String> pkNames, List<SingleDml> dmlList, BatchExecutor batchExecutor) throws SQLException {
+        // 計算每個 PK 的最終狀態，後面的 DML 覆蓋前面的 DML
+        Map<DmlKey, StageRow> stageRows = new LinkedHashMap<>(dmlList.size() * 2);
+        for (SingleDml dml : dmlList) {
+            switch (dml.getType()) {
+                case "INSERT":
+                    stageRows.put(dml.getKey(), new StageRow(OP_INSERT, dml.getData()));
+                    break;
+                case "UPDATE":
+                    if (dml.isKeyChanged()) {
+                        // 修改 PK 時，修改前的 key 需刪除，修改後的 key 重新寫入
+                        stageRows.put(dml.getOldKey(), new StageRow(OP_DELETE, dml.getOld()));
+                        stageRows.put(dml.getKey(), new StageRow(OP_INSERT, dml.getData()));
+                    } else {
+                        // 同一批次中先新增 (或刪除後新增) 再修改時，仍需完整寫入
+                        StageRow previous = stageRows.get(dml.getKey());
+                        String op = previous != null && !OP_UPDATE.equals(previous.op) ? OP_INSERT : OP_UPDATE;
+                        stageRows.put(dml.getKey(), new StageRow(op, dml.getData()));
+                    }
+                    break;
+                case "DELETE":
+                    stageRows.put(dml.getKey(), new StageRow(OP_DELETE, dml.getData()));
+                    break;
+                default:
+                    log.warn("Unsupported event type: {}", dml.getType());
+                    break;
+            }
+        }
+
+        if (stageRows.isEmpty()) {
+            return;
+        }
+
+        String backtick = batchExecutor.getBacktick();
+        String stage = stageTable(table);
+        List<String> columnNames = columnNames(pkNames, stageRows.values());
+
+        // 建立暫存表，欄位與目標表相同，並加上操作類型欄位
+        batchExecutor.execute(sqlTemplateCache.get(new SqlTemplateKey(table, "STAGE_CREATE", pkNames, 1), () ->
+                new SqlBuilder(backtick).append("CREATE TEMP TABLE ").appendWithBacktick(stage)
+                        .append(" AS SELECT *, CAST(NULL AS CHAR(1)) AS ").appendWithBacktick(OP_COLUMN)
+                        .append(" FROM ").appendWithBacktick(table).append(" WHERE 1=0").toString()));
+
+        // 將最終狀態寫入暫存表
+        stage(table, stage, columnNames, new ArrayList<>(stageRows.values()), batchExecutor);
+
+        // 刪除目標表中被新增或刪除的資料,
+        // ex: DELETE FROM "table" USING "stage" WHERE "table"."id"="stage"."id" AND "stage"."canal_op"<>'U'
+        String deleteSql = sqlTemplateCache.get(new SqlTemplateKey(table, "STAGE_DELETE", pkNames, 1), () -> {
+            SqlBuilder sql = new SqlBuilder(backtick).append("DELETE FROM ").appendWithBacktick(table)
+                    .append(" USING ").appendWithBacktick(stage).append(" WHERE ");
+            pkNames.forEach(pkName -> sql.appendWithBacktick(table).append(".").appendWithBacktick(pkName).append("=")
+                    .appendWithBacktick(stage).append(".").appendWithBacktick(pkName).append(" AND "));
+            return sql.appendWithBacktick(stage).append(".").appendWithBacktick(OP_COLUMN)
+                    .append("<>'").append(OP_UPDATE).append("'").toString();
+        });
+        batchExecutor.execute(deleteSql);
+
+        // 只修改來源有的欄位, ex: UPDATE "table" SET "name"="stage"."name" FROM "stage"
+        // WHERE "table"."id"="stage"."id" AND "stage"."canal_op"='U'
+        List<String> updateColumns = new ArrayList<>(columnNames);
+        updateColumns.removeAll(pkNames);
+        if (!updateColumns.isEmpty() && stageRows.values().stream().anyMatch(row -> OP_UPDATE.equals(row.op))) {
+            String updateSql = sqlTemplateCache.get(new SqlTemplateKey(table, "STAGE_UPDATE", columnNames, 1), () -> {
+                SqlBuilder sql = new SqlBuilder(backtick).append("UPDATE ").appendWithBacktick(table).append(" SET ");
+                updateColumns.forEach(columnName -> sql.appendWithBacktick(columnName).append("=")
+                        .appendWithBacktick(stage).append(".").appendWithBacktick(columnName).append(","));
+                sql.deleteBehind(1).append(" FROM ").appendWithBacktick(stage).append(" WHERE ");
+                pkNames.forEach(pkName -> sql.appendWithBacktick(table).append(".").appendWithBacktick(pkName).append("=")
+                        .appendWithBacktick(stage).append(".").appendWithBacktick(pkName).append(" AND "));
+                return sql.appendWithBacktick(stage).append(".").appendWithBacktick(OP_COLUMN)
+                        .append("='").append(OP_UPDATE).append("'").toString();
+            });
+            batchExecutor.execute(updateSql);
+        }
+
+        // 寫回新增的資料, ex: INSERT INTO "table" ("id","name") SELECT "id","name" FROM "stage" WHERE "canal_op"='I'
+        String insertSql = sqlTemplateCache.get(new SqlTemplateKey(table, "STAGE_INSERT", columnNames, 1), () ->
+                new SqlBuilder(backtick).append("INSERT INTO ").appendWithBacktick(table)
+                        .append(" (").appendJoinWithBacktick(",", columnNames).deleteBehind(1)
+                        .append(") SELECT ").appendJoinWithBacktick(",", columnNames).deleteBehind(1)
+                        .append(" FROM ").appendWithBacktick(stage)
+                        .append(" WHERE ").appendWithBacktick(OP_COLUMN).append("='").append(OP_INSERT).append("'").toString());
+        batchExecutor.execute(insertSql);
+
+        if (log.isTraceEnabled()) {
+            log.trace("Merge target table: {}, dml count: {}, stage count: {}", table, dmlList.size(), stageRows.size());
+        }
+
+        // 暫存表僅用於本次批次，執行失敗時會隨交易回滾一併移除
+        batchExecutor.execute(new SqlBuilder(backtick).append("DROP TABLE ").appendWithBacktick(stage).toString());
+    }
+
+    /**
+     * 寫入暫存表的欄位，取自新增或修改的資料 (刪除的資料可能只有 PK，ex: minimal row image)
+     */
+    private static List<String> columnNames(List<String> pkNames, Collection<StageRow> rows) {
+        for (StageRow row : rows) {
+            if (!OP_DELETE.equals(row.op)) {
+                return new ArrayList<>(row.data.keySet());
+            }
+        }
+        return new ArrayList<>(pkNames);
+    }
+
+    /**
+     * 取得目標表對應的暫存表名稱
+     */
+    public static String stageTable(String table) {
+        return STAGE_PREFIX + table;
+    }
+
+    /**
+     * 以多筆合併 INSERT (或 COPY) 寫入暫存表
+     */
+    private void stage(String table, String stage, List<String> columnNames, List<StageRow> rows, BatchExecutor batchExecutor) throws SQLException {
+        List<String> stageColumns = new ArrayList<>(columnNames);
+        stageColumns.add(OP_COLUMN);
+
+        // PostgreSQL 直接以 COPY 串流寫入暫存表
+        if (batchExecutor.isCopySupported()) {
+            batchExecutor.copyIn(stage, stageColumns, writer -> {
+                for (StageRow row : rows) {
+                    for (String columnName : columnNames) {
+                        EtlColumn column = row.data.get(columnName);
+                        writer.write(column == null ? null : column.getValue());
+                    }
+                    writer.write(row.op).endRow();
+                }
+            });
+            return;
+        }
+
+        ColumnBinder[] binders = binderPlanCache.getBinders(stage, table, columnNames, rows.get(0).data);
+
+        // 每筆 INSERT 的參數數量不可超過資料庫上限
+        int mergeSize = Math.max(1, Math.min(stageInsertSize.getAsInt(), SyncUtil.MAX_PARAMETERS / stageColumns.size()));
+        for (List<StageRow> mergeRows : Lists.partition(rows, mergeSize)) {
+            String sql = sqlTemplateCache.get(new SqlTemplateKey(stage, "INSERT", stageColumns, mergeRows.size()), () -> {
+                String sqlValue = new SqlBuilder(batchExecutor.getBacktick())
+                        .append("(").appendRepeat(stageColumns.size(), "?,").deleteBehind(1).append("),").toString();
+                return new SqlBuilder(batchExecutor.getBacktick()).append("INSERT INTO ").appendWithBacktick(stage)
+                        .append(" (").appendJoinWithBacktick(",", stageColumns).deleteBehind(1)
+                        .append(") VALUES ").appendRepeat(mergeRows.size(), sqlValue).deleteBehind(1).toString();
+            });
+
+            // 暫存表每批次重建，statement 不可快取
+            batchExecutor.execute(sql, parameters -> {
+                for (StageRow row : mergeRows) {
+                    for (int i = 0; i < binders.length; i++) {
+                        EtlColumn column = row.data.get(columnNames.get(i));
+                        if (column == null) {
+                            parameters.add(Types.NULL, null);
+                        } else if (binders[i] != null) {
+                            parameters.add(binders[i], column.getValue());
+                        } else {
+                            parameters.add(column.getSqlType(), column.getValue());
+                        }
+                    }
+                    parameters.add(Types.CHAR, row.op);
+                }
+            });
+        }
+    }
+
+    /**
+     * 暫存表中的一筆資料
+     */
+    private static class StageRow {
+        private final String op;
+        private final Map<String, EtlColumn> data;
+
+        StageRow(String op, Map<String, EtlColumn> data) {
+            this.op = op;
+            this.data = data;
+        }
+    }
+}
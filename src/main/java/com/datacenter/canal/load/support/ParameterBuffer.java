@@ -0,0 +1,69 @@
+package com.datacenter.canal.load.support;
+
+import java.util.Arrays;
+
+/**
+ * SQL 參數緩衝區，以欄為單位存放型別及數值，每個 statement 重複使用，避免每個參數都產生物件
+ */
+public class ParameterBuffer {
+
+    private int[] types;
+    private Object[] values;
+    private ColumnBinder[] binders;
+    private int size;
+
+    public ParameterBuffer(int capacity) {
+        this.types = new int[capacity];
+        this.values = new Object[capacity];
+        this.binders = new ColumnBinder[capacity];
+    }
+
+    public void add(int type, Object value) {
+        add(type, null, value);
+    }
+
+    /**
+     * 加入參數，並使用預先解析的 ColumnBinder 設置
+     */
+    public void add(ColumnBinder binder, Object value) {
+        add(binder.getSqlType(), binder, value);
+    }
+
+    private void add(int type, ColumnBinder binder, Object value) {
+        if (size == types.length) {
+            int capacity = types.length * 2;
+            types = Arrays.copyOf(types, capacity);
+            values = Arrays.copyOf(values, capacity);
+            binders = Arrays.copyOf(binders, capacity);
+        }
+        types[size] = type;
+        values[size] = value;
+        binders[size] = binder;
+        size++;
+    }
+
+    /**
+     * 清空緩衝區，並釋放數值參照
+     */
+    public void clear() {
+        Arrays.fill(values, 0, size, null);
+        Arrays.fill(binders, 0, size, null);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getType(int i) {
+        return types[i];
+    }
+
+    public Object getValue(int i) {
+        return values[i];
+    }
+
+    public ColumnBinder getBinder(int i) {
+        return binders[i];
+    }
+}
@@ -13,19 +13,31 @@ import java.util.*;
 @Getter
 @Setter
 public class SingleDml {
+    private String database;
+    private String table;
+    private List<String> pkNames;
     private String type;
     private boolean isChange;
     private Map<String, EtlColumn> data;
     private Map<String, EtlColumn> old;
-    private Set<String> dataKeys; // 變動或被變動資料的 key 集合，串接所有 PK 欄位的數值，用於計算優先權
+    private DmlKey key; // 資料的 key，update 時為修改後的 key
+    private DmlKey oldKey; // 修改 PK 的 update 時，為修改前的 key，其餘為 null
+    private Set<DmlKey> dataKeys; // 變動或被變動資料的 key 集合，由資料表及所有 PK 欄位的數值組成，用於計算優先權
     private Set<String> changedKeys; // update 時，被變動的欄位名稱集合
     private int priority; // 執行 SQL 的優先權，越低越優先
+    private Checkpoint position; // binlog 位置，用於略過已套用的資料
 
     public SingleDml(EtlMessage etlMessage, int index) {
         this.isChange = true;
+        this.database = etlMessage.getDatabase();
+        this.table = etlMessage.getTable();
+        this.pkNames = etlMessage.getPkNames();
         this.type = etlMessage.getType();
         this.data = etlMessage.getData().get(index);
         this.priority = 0;
+        if (etlMessage.getLogfileName() != null && etlMessage.getLogfileOffset() != null) {
+            this.position = new Checkpoint(etlMessage.getLogfileName(), etlMessage.getLogfileOffset());
+        }
 
         // 假如為 update
         if ("UPDATE".equalsIgnoreCase(this.type)) {
@@ -41,14 +53,14 @@ public class SingleDml {
         }
 
         // 產生變動或被變動資料的 key 集合
-        generateDataKeys(etlMessage.getPkNames());
+        generateDataKeys();
     }
 
     /**
      * 比對變動或被變動資料的 key 集合有無交集
      */
-    public boolean compareDataKeys(Set<String> comparedDataKeys) {
-        for (String key : this.dataKeys) {
+    public boolean compareDataKeys(Set<DmlKey> comparedDataKeys) {
+        for (DmlKey key : this.dataKeys) {
             if (comparedDataKeys.contains(key)) {
                 return true;
             }
@@ -56,6 +68,13 @@ public class SingleDml {
         return false;
     }
 
+    /**
+     * 是否為修改 PK 的 update，此時新舊資料的 key 不同
+     */
+    public boolean isKeyChanged() {
+        return this.oldKey != null;
+    }
+
     /**
      * 依 SQL 類別，增加優先權
      */
@@ -73,28 +92,23 @@ public class SingleDml {
     }
 
     /**
-     * 產生變動或被變動資料的 key 集合，串接所有 PK 欄位的數值，用於計算優先權
+     * 產生變動或被變動資料的 key 集合，由資料表及所有 PK 欄位的數值組成，用於計算優先權
      */
-    private void generateDataKeys(List<String> pkNames) {
-        this.dataKeys = new HashSet<>();
-
-        StringBuilder key = new StringBuilder();
-        for (String pkName : pkNames) {
-            Object value = this.data.get(pkName).getValue();
-            key.append(value).append("+!#");
-        }
-        this.dataKeys.add(key.toString());
+    private void generateDataKeys() {
+        this.key = new DmlKey(this.database, this.table, this.pkNames, this.data);
 
         // 假如為 update，需要額外產生被變動的資料 key
         if ("UPDATE".equalsIgnoreCase(this.type)) {
-            key = new StringBuilder();
-
-            for (String pkName : pkNames) {
-                Object value = this.old.get(pkName).getValue();
-                key.append(value).append("+!#");
+            DmlKey oldKey = new DmlKey(this.database, this.table, this.pkNames, this.old);
+            if (!this.key.equals(oldKey)) {
+                this.oldKey = oldKey;
+                this.dataKeys = new HashSet<>(4);
+                this.dataKeys.add(this.key);
+                this.dataKeys.add(oldKey);
+                return;
             }
-            this.dataKeys.add(key.toString());
         }
+        this.dataKeys = Collections.singleton(this.key);
     }
 
     /**
@@ -106,7 +120,8 @@ public class SingleDml {
             String columnName = column.getName();
             EtlColumn oldColumn = old.get(columnName);
 
-            if (oldColumn == null || !Objects.equals(column.getValue(), oldColumn.getValue())) {
+            // 未修改的欄位與修改後共用同一個 EtlColumn，不需解碼即可判斷
+            if (!column.sameValue(oldColumn)) {
                 this.changedKeys.add(columnName);
             }
         });
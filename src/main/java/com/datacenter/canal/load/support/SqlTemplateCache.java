@@ -0,0 +1,70 @@
+package com.datacenter.canal.load.support;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * SQL 模板快取，相同資料表、操作、欄位組合及筆數的 SQL 只需拼接一次
+ * <p>
+ * 超過上限時移除最久未使用的模板，資料表結構變更時可依資料表移除
+ */
+public class SqlTemplateCache {
+
+    private final Map<SqlTemplateKey, String> templates;
+
+    public SqlTemplateCache(int maxSize) {
+        this.templates = new LinkedHashMap<SqlTemplateKey, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<SqlTemplateKey, String> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * 取得 SQL 模板，若不存在則拼接後放入快取
+     */
+    public String get(SqlTemplateKey key, Supplier<String> builder) {
+        synchronized (templates) {
+            String sql = templates.get(key);
+            if (sql != null) {
+                return sql;
+            }
+        }
+
+        // 拼接 SQL 不需持有鎖
+        String sql = builder.get();
+        synchronized (templates) {
+            templates.putIfAbsent(key, sql);
+        }
+        return sql;
+    }
+
+    /**
+     * 移除資料表的所有模板 (ex: 資料表結構變更)
+     */
+    public void invalidate(String table) {
+        synchronized (templates) {
+            Iterator<SqlTemplateKey> iterator = templates.keySet().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getTable().equals(table)) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (templates) {
+            templates.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (templates) {
+            return templates.size();
+        }
+    }
+}
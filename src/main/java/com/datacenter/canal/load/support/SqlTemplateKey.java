@@ -0,0 +1,22 @@
+package com.datacenter.canal.load.support;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * SQL 模板的 key，由資料表、操作類型、欄位組合及合併筆數組成
+ */
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+public class SqlTemplateKey {
+    private final String table;
+    private final String operation;
+    private final List<String> columns;
+    private final int rows;
+}
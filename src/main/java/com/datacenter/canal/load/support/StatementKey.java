@@ -0,0 +1,18 @@
+package com.datacenter.canal.load.support;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 快取 PreparedStatement 的 key，由 SQL 操作的資料表及 SQL 組成，資料表結構變更時依資料表移除
+ */
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+public class StatementKey {
+    private final String table;
+    private final String sql;
+}
@@ -2,14 +2,18 @@ package com.datacenter.canal.load.support;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
-import org.joda.time.DateTime;
-import org.joda.time.DateTimeZone;
 
-import java.io.Reader;
 import java.io.StringReader;
 import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
 import java.sql.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
 import java.util.Set;
 import java.util.TimeZone;
 
@@ -20,7 +24,19 @@ import java.util.TimeZone;
 public class SyncUtil {
 
     public final static String timeZone;    // 当前时区
-    private final static DateTimeZone dateTimeZone;
+    public final static int MAX_PARAMETERS = 32767; // 單一 statement 的參數上限 (PostgreSQL/Redshift)
+    private final static ZoneOffset zoneOffset;
+
+    // 日期时间格式, ex: 2023-01-01, 2023-01-01 12:00:00, 2023-01-01T12:00:00.123456
+    private final static DateTimeFormatter DATE_TIME_FORMATTER = new DateTimeFormatterBuilder()
+            .append(DateTimeFormatter.ISO_LOCAL_DATE)
+            .optionalStart()
+            .optionalStart().appendLiteral(' ').optionalEnd()
+            .optionalStart().appendLiteral('T').optionalEnd()
+            .append(DateTimeFormatter.ISO_LOCAL_TIME)
+            .optionalEnd()
+            .parseDefaulting(ChronoField.HOUR_OF_DAY, 0)
+            .toFormatter();
 
     static {
         TimeZone localTimeZone = TimeZone.getDefault();
@@ -35,10 +51,25 @@ public class SyncUtil {
         String hour = String.format("%1$02d", offsetHour);
         String minute = String.format("%1$02d", offsetMinute);
         timeZone = symbol + hour + ":" + minute;
-        dateTimeZone = DateTimeZone.forID(timeZone);
+        zoneOffset = ZoneOffset.of(timeZone);
         TimeZone.setDefault(TimeZone.getTimeZone("GMT" + timeZone));
     }
 
+    /**
+     * 依 ParameterBuffer 依序设置 preparedStatement 的所有参数，有预先解析的 ColumnBinder 时直接使用
+     */
+    public static void setPStmt(PreparedStatement ps, ParameterBuffer parameters) throws SQLException {
+        int len = parameters.size();
+        for (int i = 0; i < len; i++) {
+            ColumnBinder binder = parameters.getBinder(i);
+            if (binder != null) {
+                binder.bind(ps, i + 1, parameters.getValue(i));
+            } else {
+                setPStmt(parameters.getType(i), ps, parameters.getValue(i), i + 1);
+            }
+        }
+    }
+
     /**
      * 设置 preparedStatement
      *
@@ -48,198 +79,200 @@ public class SyncUtil {
      * @param i     索引号
      */
     public static void setPStmt(int type, PreparedStatement ps, Object value, int i) throws SQLException {
+        if (value == null) {
+            ps.setNull(i, type);
+        } else {
+            getBinder(type, value.getClass()).bind(ps, i, value);
+        }
+    }
+
+    /**
+     * 依 sqlType 及数值类型，取得设置 preparedStatement 的方法 (数值不为 null)
+     *
+     * @param type       sqlType
+     * @param valueClass 数值类型
+     */
+    public static ValueBinder getBinder(int type, Class<?> valueClass) {
         switch (type) {
             case Types.BIT:
             case Types.BOOLEAN:
-                if (value instanceof Boolean) {
-                    ps.setBoolean(i, (Boolean) value);
-                } else if (value instanceof String) {
-                    boolean v = !value.equals("0");
-                    ps.setBoolean(i, v);
-                } else if (value instanceof Number) {
-                    boolean v = ((Number) value).intValue() != 0;
-                    ps.setBoolean(i, v);
-                } else {
-                    ps.setNull(i, type);
+                if (Boolean.class == valueClass) {
+                    return (ps, i, value) -> ps.setBoolean(i, (Boolean) value);
+                } else if (String.class == valueClass) {
+                    return (ps, i, value) -> ps.setBoolean(i, !value.equals("0"));
+                } else if (Number.class.isAssignableFrom(valueClass)) {
+                    return (ps, i, value) -> ps.setBoolean(i, ((Number) value).intValue() != 0);
                 }
-                break;
+                return nullBinder(type);
             case Types.CHAR:
             case Types.NCHAR:
             case Types.VARCHAR:
             case Types.LONGVARCHAR:
-                if (value instanceof String) {
-                    ps.setString(i, (String) value);
-                } else if (value == null) {
-                    ps.setNull(i, type);
-                } else {
-                    ps.setString(i, value.toString());
+                if (String.class == valueClass) {
+                    return (ps, i, value) -> ps.setString(i, (String) value);
                 }
-                break;
+                return (ps, i, value) -> ps.setString(i, value.toString());
             case Types.TINYINT:
                 // 向上提升一级，处理unsigned情况
-                if (value instanceof Number) {
-                    ps.setShort(i, ((Number) value).shortValue());
-                } else if (value instanceof String) {
-                    ps.setShort(i, Short.parseShort((String) value));
-                } else {
-                    ps.setNull(i, type);
+                if (Number.class.isAssignableFrom(valueClass)) {
+                    return (ps, i, value) -> ps.setShort(i, ((Number) value).shortValue());
+                } else if (String.class == valueClass) {
+                    return (ps, i, value) -> ps.setShort(i, Short.parseShort((String) value));
                 }
-                break;
+                return nullBinder(type);
             case Types.SMALLINT:
-                if (value instanceof Number) {
-                    ps.setInt(i, ((Number) value).intValue());
-                } else if (value instanceof String) {
-                    ps.setInt(i, Integer.parseInt((String) value));
-                } else {
-                    ps.setNull(i, type);
+                if (Number.class.isAssignableFrom(valueClass)) {
+                    return (ps, i, value) -> ps.setInt(i, ((Number) value).intValue());
+                } else if (String.class == valueClass) {
+                    return (ps, i, value) -> ps.setInt(i, Integer.parseInt((String) value));
                 }
-                break;
+                return nullBinder(type);
             case Types.INTEGER:
-                if (value instanceof Number) {
-                    ps.setLong(i, ((Number) value).longValue());
-                } else if (value instanceof String) {
-                    ps.setLong(i, Long.parseLong((String) value));
-                } else {
-                    ps.setNull(i, type);
+                if (Number.class.isAssignableFrom(valueClass)) {
+                    return (ps, i, value) -> ps.setLong(i, ((Number) value).longValue());
+                } else if (String.class == valueClass) {
+                    return (ps, i, value) -> ps.setLong(i, Long.parseLong((String) value));
                 }
-                break;
+                return nullBinder(type);
             case Types.BIGINT:
-                if (value instanceof Number) {
-                    ps.setBigDecimal(i, new BigDecimal(value.toString()));
-                } else if (value instanceof String) {
-                    ps.setBigDecimal(i, new BigDecimal(value.toString()));
-                } else {
-                    ps.setNull(i, type);
+                if (Long.class == valueClass || Integer.class == valueClass) {
+                    return (ps, i, value) -> ps.setLong(i, ((Number) value).longValue());
+                } else if (Number.class.isAssignableFrom(valueClass) || String.class == valueClass) {
+                    // unsigned bigint 需使用 BigDecimal
+                    return (ps, i, value) -> ps.setBigDecimal(i, new BigDecimal(value.toString()));
                 }
-                break;
+                return nullBinder(type);
             case Types.DECIMAL:
             case Types.NUMERIC:
-                if (value instanceof BigDecimal) {
-                    ps.setBigDecimal(i, (BigDecimal) value);
-                } else if (value instanceof Byte) {
-                    ps.setInt(i, ((Byte) value).intValue());
-                } else if (value instanceof Short) {
-                    ps.setInt(i, ((Short) value).intValue());
-                } else if (value instanceof Integer) {
-                    ps.setInt(i, (Integer) value);
-                } else if (value instanceof Long) {
-                    ps.setLong(i, (Long) value);
-                } else if (value instanceof Float) {
-                    ps.setBigDecimal(i, BigDecimal.valueOf((float) value));
-                } else if (value instanceof Double) {
-                    ps.setBigDecimal(i, BigDecimal.valueOf((double) value));
-                } else if (value != null) {
-                    ps.setBigDecimal(i, new BigDecimal(value.toString()));
-                } else {
-                    ps.setNull(i, type);
+                if (BigDecimal.class == valueClass) {
+                    return (ps, i, value) -> ps.setBigDecimal(i, (BigDecimal) value);
+                } else if (Byte.class == valueClass || Short.class == valueClass || Integer.class == valueClass) {
+                    return (ps, i, value) -> ps.setInt(i, ((Number) value).intValue());
+                } else if (Long.class == valueClass) {
+                    return (ps, i, value) -> ps.setLong(i, (Long) value);
+                } else if (Float.class == valueClass) {
+                    return (ps, i, value) -> ps.setBigDecimal(i, BigDecimal.valueOf((Float) value));
+                } else if (Double.class == valueClass) {
+                    return (ps, i, value) -> ps.setBigDecimal(i, BigDecimal.valueOf((Double) value));
                 }
-                break;
+                return (ps, i, value) -> ps.setBigDecimal(i, new BigDecimal(value.toString()));
             case Types.REAL:
-                if (value instanceof Number) {
-                    ps.setFloat(i, ((Number) value).floatValue());
-                } else if (value instanceof String) {
-                    ps.setFloat(i, Float.parseFloat((String) value));
-                } else {
-                    ps.setNull(i, type);
+                if (Number.class.isAssignableFrom(valueClass)) {
+                    return (ps, i, value) -> ps.setFloat(i, ((Number) value).floatValue());
+                } else if (String.class == valueClass) {
+                    return (ps, i, value) -> ps.setFloat(i, Float.parseFloat((String) value));
                 }
-                break;
+                return nullBinder(type);
             case Types.FLOAT:
             case Types.DOUBLE:
-                if (value instanceof Number) {
-                    ps.setDouble(i, ((Number) value).doubleValue());
-                } else if (value instanceof String) {
-                    ps.setDouble(i, Double.parseDouble((String) value));
-                } else {
-                    ps.setNull(i, type);
+                if (Number.class.isAssignableFrom(valueClass)) {
+                    return (ps, i, value) -> ps.setDouble(i, ((Number) value).doubleValue());
+                } else if (String.class == valueClass) {
+                    return (ps, i, value) -> ps.setDouble(i, Double.parseDouble((String) value));
                 }
-                break;
+                return nullBinder(type);
             case Types.BINARY:
             case Types.VARBINARY:
             case Types.LONGVARBINARY:
             case Types.BLOB:
-                if (value instanceof Blob) {
-                    ps.setBlob(i, (Blob) value);
-                } else if (value instanceof byte[]) {
-                    ps.setBytes(i, (byte[]) value);
-                } else if (value instanceof String) {
-                    ps.setBytes(i, ((String) value).getBytes(StandardCharsets.ISO_8859_1));
-                } else {
-                    ps.setNull(i, type);
+                if (Blob.class.isAssignableFrom(valueClass)) {
+                    return (ps, i, value) -> ps.setBlob(i, (Blob) value);
+                } else if (byte[].class == valueClass) {
+                    return (ps, i, value) -> ps.setBytes(i, (byte[]) value);
+                } else if (String.class == valueClass) {
+                    return (ps, i, value) -> ps.setBytes(i, ((String) value).getBytes(StandardCharsets.ISO_8859_1));
                 }
-                break;
+                return nullBinder(type);
             case Types.CLOB:
-                if (value instanceof Clob) {
-                    ps.setClob(i, (Clob) value);
-                } else if (value instanceof byte[]) {
-                    ps.setBytes(i, (byte[]) value);
-                } else if (value instanceof String) {
-                    Reader clobReader = new StringReader((String) value);
-                    ps.setCharacterStream(i, clobReader);
-                } else {
-                    ps.setNull(i, type);
+                if (Clob.class.isAssignableFrom(valueClass)) {
+                    return (ps, i, value) -> ps.setClob(i, (Clob) value);
+                } else if (byte[].class == valueClass) {
+                    return (ps, i, value) -> ps.setBytes(i, (byte[]) value);
+                } else if (String.class == valueClass) {
+                    return (ps, i, value) -> ps.setCharacterStream(i, new StringReader((String) value));
                 }
-                break;
+                return nullBinder(type);
             case Types.DATE:
-                if (value instanceof java.sql.Date) {
-                    ps.setDate(i, (java.sql.Date) value);
-                } else if (value instanceof java.util.Date) {
-                    ps.setDate(i, new java.sql.Date(((java.util.Date) value).getTime()));
-                } else if (value instanceof String) {
-                    String v = (String) value;
-                    if (!v.startsWith("0000-00-00")) {
-                        java.util.Date date = parseDate(v);
-                        if (date != null) {
-                            ps.setDate(i, new Date(date.getTime()));
+                if (java.sql.Date.class == valueClass) {
+                    return (ps, i, value) -> ps.setDate(i, (java.sql.Date) value);
+                } else if (java.util.Date.class.isAssignableFrom(valueClass)) {
+                    return (ps, i, value) -> ps.setDate(i, new java.sql.Date(((java.util.Date) value).getTime()));
+                } else if (String.class == valueClass) {
+                    return (ps, i, value) -> {
+                        String v = ((String) value).trim();
+                        if (v.startsWith("0000-00-00")) {
+                            ps.setObject(i, value);
+                        } else if (v.isEmpty()) {
+                            ps.setNull(i, Types.DATE);
                         } else {
-                            ps.setNull(i, type);
+                            ps.setDate(i, java.sql.Date.valueOf(LocalDate.parse(v, DATE_TIME_FORMATTER)));
                         }
-                    } else {
-                        ps.setObject(i, value);
-                    }
-                } else {
-                    ps.setNull(i, type);
+                    };
                 }
-                break;
+                return nullBinder(type);
             case Types.TIME:
-                if (value instanceof java.sql.Time) {
-                    ps.setTime(i, (java.sql.Time) value);
-                } else if (value instanceof java.util.Date) {
-                    ps.setTime(i, new java.sql.Time(((java.util.Date) value).getTime()));
-                } else if (value instanceof String) {
-                    String v = (String) value;
-                    java.util.Date date = parseDate(v);
-                    if (date != null) {
-                        ps.setTime(i, new Time(date.getTime()));
-                    } else {
-                        ps.setNull(i, type);
-                    }
-                } else {
-                    ps.setNull(i, type);
+                if (java.sql.Time.class == valueClass) {
+                    return (ps, i, value) -> ps.setTime(i, (java.sql.Time) value);
+                } else if (java.util.Date.class.isAssignableFrom(valueClass)) {
+                    return (ps, i, value) -> ps.setTime(i, new java.sql.Time(((java.util.Date) value).getTime()));
+                } else if (String.class == valueClass) {
+                    return (ps, i, value) -> {
+                        java.util.Date date = parseDate((String) value);
+                        if (date != null) {
+                            ps.setTime(i, new Time(date.getTime()));
+                        } else {
+                            ps.setNull(i, Types.TIME);
+                        }
+                    };
                 }
-                break;
+                return nullBinder(type);
             case Types.TIMESTAMP:
-                if (value instanceof java.sql.Timestamp) {
-                    ps.setTimestamp(i, (java.sql.Timestamp) value);
-                } else if (value instanceof java.util.Date) {
-                    ps.setTimestamp(i, new java.sql.Timestamp(((java.util.Date) value).getTime()));
-                } else if (value instanceof String) {
-                    String v = (String) value;
-                    if (!v.startsWith("0000-00-00")) {
-                        java.util.Date date = parseDate(v);
-                        if (date != null) {
-                            ps.setTimestamp(i, new Timestamp(date.getTime()));
+                if (java.sql.Timestamp.class == valueClass) {
+                    return (ps, i, value) -> ps.setTimestamp(i, (java.sql.Timestamp) value);
+                } else if (java.util.Date.class.isAssignableFrom(valueClass)) {
+                    return (ps, i, value) -> ps.setTimestamp(i, new java.sql.Timestamp(((java.util.Date) value).getTime()));
+                } else if (String.class == valueClass) {
+                    return (ps, i, value) -> {
+                        String v = ((String) value).trim();
+                        if (v.startsWith("0000-00-00")) {
+                            ps.setObject(i, value);
+                        } else if (v.isEmpty()) {
+                            ps.setNull(i, Types.TIMESTAMP);
                         } else {
-                            ps.setNull(i, type);
+                            ps.setTimestamp(i, Timestamp.valueOf(LocalDateTime.parse(v, DATE_TIME_FORMATTER)));
                         }
-                    } else {
-                        ps.setObject(i, value);
-                    }
-                } else {
-                    ps.setNull(i, type);
+                    };
                 }
-                break;
+                return nullBinder(type);
             default:
-                ps.setObject(i, value, type);
+                return (ps, i, value) -> ps.setObject(i, value, type);
+        }
+    }
+
+    private static ValueBinder nullBinder(int type) {
+        return new NullBinder(type);
+    }
+
+    /**
+     * 是否可依 sqlType 設置該數值类型 (不會一律設為 null)
+     */
+    public static boolean isSupported(int type, Class<?> valueClass) {
+        return !(getBinder(type, valueClass) instanceof NullBinder);
+    }
+
+    /**
+     * 数值类型与 sqlType 不相容时，一律设置为 null
+     */
+    private static class NullBinder implements ValueBinder {
+        private final int type;
+
+        NullBinder(int type) {
+            this.type = type;
+        }
+
+        @Override
+        public void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+            ps.setNull(index, type);
         }
     }
 
@@ -264,6 +297,30 @@ public class SyncUtil {
         return "";
     }
 
+    /**
+     * 依據 jdbc url 取得資料庫類型
+     */
+    public static DbType getDbTypeByUrl(String url) throws SQLException {
+        String[] tokens = url.split(":");
+
+        if (tokens.length < 2) {
+            throw new SQLException("wrong format of jdbc");
+        }
+
+        switch (tokens[1].toLowerCase()) {
+            case "mysql":
+            case "mariadb":
+            case "oceanbase":
+                return DbType.MYSQL;
+            case "postgresql":
+                return DbType.POSTGRESQL;
+            case "redshift":
+                return DbType.REDSHIFT;
+            default:
+                return DbType.UNKNOWN;
+        }
+    }
+
     /**
      * 通用日期时间字符解析
      *
@@ -275,17 +332,17 @@ public class SyncUtil {
             return null;
         }
         datetimeStr = datetimeStr.trim();
+
+        LocalDateTime dateTime;
         if (datetimeStr.contains("-")) {
-            if (datetimeStr.contains(":")) {
-                datetimeStr = datetimeStr.replace(" ", "T");
-            }
+            dateTime = LocalDateTime.parse(datetimeStr, DATE_TIME_FORMATTER);
         } else if (datetimeStr.contains(":")) {
-            datetimeStr = "T" + datetimeStr;
+            dateTime = LocalTime.parse(datetimeStr, DateTimeFormatter.ISO_LOCAL_TIME).atDate(LocalDate.of(1970, 1, 1));
+        } else {
+            return null;
         }
 
-        DateTime dateTime = new DateTime(datetimeStr, dateTimeZone);
-
-        return dateTime.toDate();
+        return java.util.Date.from(dateTime.toInstant(zoneOffset));
     }
 
     /**
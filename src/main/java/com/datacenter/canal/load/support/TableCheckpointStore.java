@@ -0,0 +1,93 @@
+package com.datacenter.canal.load.support;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 將位置寫入目標資料庫的 checkpoint 表，與資料在同一交易中提交，
+ * 資料已提交則位置必定已提交，重新套用時可準確略過 (exactly-once)
+ */
+@Slf4j
+public class TableCheckpointStore implements CheckpointStore {
+
+    private final String table;
+    private final Map<String, Checkpoint> checkpoints = new ConcurrentHashMap<>();
+
+    /**
+     * 建立 checkpoint 表 (若不存在) 並載入所有位置
+     */
+    public TableCheckpointStore(String table, BatchExecutor batchExecutor) throws SQLException {
+        this.table = table;
+        String backtick = batchExecutor.getBacktick();
+
+        // ex: CREATE TABLE IF NOT EXISTS "canal_checkpoint" ("lane" VARCHAR(255) NOT NULL, ... PRIMARY KEY ("lane"))
+        batchExecutor.execute(new SqlBuilder(backtick).append("CREATE TABLE IF NOT EXISTS ").appendWithBacktick(table)
+                .append(" (").appendWithBacktick("lane").append(" VARCHAR(255) NOT NULL, ")
+                .appendWithBacktick("logfile_name").append(" VARCHAR(255) NOT NULL, ")
+                .appendWithBacktick("logfile_offset").append(" BIGINT NOT NULL, ")
+                .appendWithBacktick("update_time").append(" TIMESTAMP, ")
+                .append("PRIMARY KEY (").appendWithBacktick("lane").append("))").toString());
+        batchExecutor.commit();
+
+        String sql = new SqlBuilder(backtick).append("SELECT ").appendWithBacktick("lane").append(",")
+                .appendWithBacktick("logfile_name").append(",").appendWithBacktick("logfile_offset")
+                .append(" FROM ").appendWithBacktick(table).toString();
+        try (Statement statement = batchExecutor.getConn().createStatement();
+             ResultSet rs = statement.executeQuery(sql)) {
+            while (rs.next()) {
+                checkpoints.put(rs.getString(1), new Checkpoint(rs.getString(2), rs.getLong(3)));
+            }
+        }
+        batchExecutor.commit();
+        log.info("Load {} checkpoints from table: {}", checkpoints.size(), table);
+    }
+
+    @Override
+    public Checkpoint get(String lane) {
+        return checkpoints.get(lane);
+    }
+
+    @Override
+    public void save(Map<String, Checkpoint> laneCheckpoints, BatchExecutor batchExecutor) throws SQLException {
+        String backtick = batchExecutor.getBacktick();
+
+        // ex: UPDATE "canal_checkpoint" SET "logfile_name"=?, "logfile_offset"=?, "update_time"=CURRENT_TIMESTAMP WHERE "lane"=?
+        String updateSql = new SqlBuilder(backtick).append("UPDATE ").appendWithBacktick(table).append(" SET ")
+                .appendWithBacktick("logfile_name").append("=?, ").appendWithBacktick("logfile_offset").append("=?, ")
+                .appendWithBacktick("update_time").append("=CURRENT_TIMESTAMP WHERE ").appendWithBacktick("lane").append("=?")
+                .toString();
+
+        for (Map.Entry<String, Checkpoint> entry : laneCheckpoints.entrySet()) {
+            Checkpoint checkpoint = entry.getValue();
+            int count = batchExecutor.execute(table, updateSql, parameters -> {
+                parameters.add(Types.VARCHAR, checkpoint.getLogfileName());
+                parameters.add(Types.BIGINT, checkpoint.getLogfileOffset());
+                parameters.add(Types.VARCHAR, entry.getKey());
+            });
+
+            // 第一次寫入該 lane
+            if (count == 0) {
+                String insertSql = new SqlBuilder(backtick).append("INSERT INTO ").appendWithBacktick(table).append(" (")
+                        .appendWithBacktick("lane").append(",").appendWithBacktick("logfile_name").append(",")
+                        .appendWithBacktick("logfile_offset").append(",").appendWithBacktick("update_time")
+                        .append(") VALUES (?,?,?,CURRENT_TIMESTAMP)").toString();
+                batchExecutor.execute(table, insertSql, parameters -> {
+                    parameters.add(Types.VARCHAR, entry.getKey());
+                    parameters.add(Types.VARCHAR, checkpoint.getLogfileName());
+                    parameters.add(Types.BIGINT, checkpoint.getLogfileOffset());
+                });
+            }
+        }
+    }
+
+    @Override
+    public void committed(Map<String, Checkpoint> laneCheckpoints) {
+        laneCheckpoints.forEach((lane, checkpoint) -> checkpoints.merge(lane, checkpoint, Checkpoint::max));
+    }
+}
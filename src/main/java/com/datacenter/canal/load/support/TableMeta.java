@@ -0,0 +1,53 @@
+package com.datacenter.canal.load.support;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 目標資料表結構 (information_schema)，欄位依順序排列
+ */
+@Getter
+@ToString
+public class TableMeta {
+
+    private final String table;
+    private final Map<String, Column> columns;
+    private final List<String> pkNames;
+    private final List<String> sortKeys; // Redshift 以外為空
+    private final String distKey; // Redshift 以外為 null
+
+    public TableMeta(String table, Map<String, Column> columns, List<String> pkNames, List<String> sortKeys,
+                     String distKey) {
+        this.table = table;
+        this.columns = Collections.unmodifiableMap(columns);
+        this.pkNames = Collections.unmodifiableList(pkNames);
+        this.sortKeys = Collections.unmodifiableList(sortKeys);
+        this.distKey = distKey;
+    }
+
+    /**
+     * 取得欄位，名稱不同時再以小寫比對 (ex: Redshift 的欄位名稱一律為小寫)，不存在時為 null
+     */
+    public Column getColumn(String name) {
+        Column column = columns.get(name);
+        return column != null ? column : columns.get(name.toLowerCase());
+    }
+
+    @Getter
+    @ToString
+    public static class Column {
+        private final String name;
+        private final String typeName;
+        private final int sqlType; // 無法對應時為 Types.OTHER
+
+        public Column(String name, String typeName, int sqlType) {
+            this.name = name;
+            this.typeName = typeName;
+            this.sqlType = sqlType;
+        }
+    }
+}
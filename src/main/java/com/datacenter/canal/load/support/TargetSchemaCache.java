@@ -0,0 +1,252 @@
+package com.datacenter.canal.load.support;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 目標資料表結構快取，啟動時自 information_schema 一次載入目前 schema 的所有資料表，
+ * 之後的資料表 (或 DDL 後被移除的資料表) 於第一次使用時單獨載入；
+ * 目標庫不存在的資料表只在 missingTtlMillis 內視為不存在，之後使用時重新查詢 (ex: 之後才建立的資料表)
+ * <p>
+ * 查詢使用獨立的連線，不影響 BatchExecutor 進行中的交易；查詢失敗時不快取，使用來源欄位的型別
+ */
+@Slf4j
+public class TargetSchemaCache {
+
+    private static final String COLUMNS_SQL = "SELECT table_name, column_name, data_type FROM information_schema.columns"
+            + " WHERE table_schema = ?";
+    private static final String PK_SQL = "SELECT k.table_name, k.column_name FROM information_schema.table_constraints t"
+            + " JOIN information_schema.key_column_usage k ON k.constraint_name = t.constraint_name"
+            + " AND k.table_schema = t.table_schema AND k.table_name = t.table_name"
+            + " WHERE t.constraint_type = 'PRIMARY KEY' AND t.table_schema = ?";
+    // pg_table_def 只包含 search_path 中的 schema，改以系統表依 schema 名稱查詢
+    private static final String REDSHIFT_KEYS_SQL = "SELECT c.relname, a.attname, a.attisdistkey, a.attsortkeyord"
+            + " FROM pg_attribute a JOIN pg_class c ON c.oid = a.attrelid JOIN pg_namespace n ON n.oid = c.relnamespace"
+            + " WHERE n.nspname = ? AND a.attnum > 0 AND NOT a.attisdropped AND (a.attisdistkey OR a.attsortkeyord <> 0)";
+
+    private final DataSource dataSource;
+    private final DbType dbType;
+    private final long missingTtlNanos;
+    private final Map<String, TableMeta> tables = new ConcurrentHashMap<>();
+    private final Map<String, Long> missing = new ConcurrentHashMap<>(); // 目標庫不存在的資料表 -> 重新查詢的時間 (nanoTime)
+    private volatile String schema; // 無法取得時為 null，不查詢
+
+    /**
+     * @param missingTtlMillis 目標庫不存在的資料表，經過此時間後再次使用時重新查詢
+     */
+    public TargetSchemaCache(DataSource dataSource, DbType dbType, long missingTtlMillis) {
+        this.dataSource = dataSource;
+        this.dbType = dbType;
+        this.missingTtlNanos = TimeUnit.MILLISECONDS.toNanos(missingTtlMillis);
+    }
+
+    /**
+     * 載入目前 schema 的所有資料表，失敗時只記錄警告
+     */
+    public void loadAll() {
+        long start = System.currentTimeMillis();
+        try (Connection conn = dataSource.getConnection()) {
+            this.schema = dbType == DbType.MYSQL ? conn.getCatalog() : conn.getSchema();
+            if (schema == null) {
+                log.warn("Target schema cache disabled, can not detect current schema");
+                return;
+            }
+            tables.putAll(load(conn, null));
+            log.info("Target schema cache loaded, schema: {}, tables: {}, cost: {}ms", schema, tables.size(),
+                    System.currentTimeMillis() - start);
+        } catch (SQLException e) {
+            this.schema = null;
+            log.warn("Target schema cache disabled, load failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 取得資料表結構，目標庫無此資料表或無法查詢時為 null
+     */
+    public TableMeta get(String table) {
+        if (schema == null) {
+            return null;
+        }
+        TableMeta meta = tables.get(table);
+        if (meta != null) {
+            return meta;
+        }
+        Long recheckAt = missing.get(table);
+        if (recheckAt != null && System.nanoTime() - recheckAt < 0) {
+            return null;
+        }
+        return loadTable(table);
+    }
+
+    /**
+     * 已載入的資料表
+     */
+    public Collection<TableMeta> getTables() {
+        return new ArrayList<>(tables.values());
+    }
+
+    /**
+     * 移除資料表的結構 (ex: 資料表結構變更)，下次使用時重新載入
+     */
+    public void invalidate(String table) {
+        tables.remove(table);
+        tables.remove(table.toLowerCase());
+        missing.remove(table);
+        missing.remove(table.toLowerCase());
+    }
+
+    public void clear() {
+        tables.clear();
+        missing.clear();
+    }
+
+    private TableMeta loadTable(String table) {
+        try (Connection conn = dataSource.getConnection()) {
+            Map<String, TableMeta> loaded = load(conn, table);
+            if (loaded.isEmpty() && !table.equals(table.toLowerCase())) {
+                // 未以引號建立的資料表名稱為小寫 (ex: Redshift)
+                loaded = load(conn, table.toLowerCase());
+            }
+            log.debug("Target schema cache load table: {}, found: {}", table, !loaded.isEmpty());
+            if (loaded.isEmpty()) {
+                missing.put(table, System.nanoTime() + missingTtlNanos);
+                return null;
+            }
+            TableMeta meta = loaded.values().iterator().next();
+            tables.put(table, meta);
+            missing.remove(table);
+            return meta;
+        } catch (SQLException e) {
+            log.warn("Target schema cache load table: {} failed: {}", table, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 查詢資料表結構，table 為 null 時查詢整個 schema
+     */
+    private Map<String, TableMeta> load(Connection conn, String table) throws SQLException {
+        Map<String, Map<String, TableMeta.Column>> columns = new LinkedHashMap<>();
+        query(conn, COLUMNS_SQL + (table == null ? "" : " AND table_name = ?") + " ORDER BY table_name, ordinal_position",
+                table, rs -> {
+                    String dataType = rs.getString(3);
+                    columns.computeIfAbsent(rs.getString(1), k -> new LinkedHashMap<>()).put(rs.getString(2),
+                            new TableMeta.Column(rs.getString(2), dataType, toSqlType(dataType)));
+                });
+        if (columns.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        Map<String, List<String>> pkNames = new HashMap<>();
+        query(conn, PK_SQL + (table == null ? "" : " AND t.table_name = ?") + " ORDER BY k.table_name, k.ordinal_position",
+                table, rs -> pkNames.computeIfAbsent(rs.getString(1), k -> new ArrayList<>()).add(rs.getString(2)));
+
+        Map<String, TreeMap<Integer, String>> sortKeys = new HashMap<>();
+        Map<String, String> distKeys = new HashMap<>();
+        if (dbType == DbType.REDSHIFT) {
+            query(conn, REDSHIFT_KEYS_SQL + (table == null ? "" : " AND c.relname = ?"), table, rs -> {
+                if (rs.getBoolean(3)) {
+                    distKeys.put(rs.getString(1), rs.getString(2));
+                }
+                int sortKey = rs.getInt(4);
+                if (sortKey != 0) {
+                    // interleaved sort key 為負數
+                    sortKeys.computeIfAbsent(rs.getString(1), k -> new TreeMap<>()).put(Math.abs(sortKey), rs.getString(2));
+                }
+            });
+        }
+
+        Map<String, TableMeta> result = new HashMap<>();
+        columns.forEach((name, tableColumns) -> result.put(name, new TableMeta(name, tableColumns,
+                pkNames.getOrDefault(name, new ArrayList<>()),
+                new ArrayList<>(sortKeys.getOrDefault(name, new TreeMap<>()).values()), distKeys.get(name))));
+        return result;
+    }
+
+    private void query(Connection conn, String sql, String table, RowHandler handler) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, schema);
+            if (table != null) {
+                ps.setString(2, table);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    handler.handle(rs);
+                }
+            }
+        }
+    }
+
+    /**
+     * information_schema 的 data_type (MySQL, PostgreSQL, Redshift) 轉為 java.sql.Types，無法對應時為 OTHER
+     */
+    static int toSqlType(String dataType) {
+        switch (dataType.toLowerCase()) {
+            case "bit":
+                return Types.BIT;
+            case "boolean":
+            case "bool":
+                return Types.BOOLEAN;
+            case "tinyint":
+                return Types.TINYINT;
+            case "smallint":
+                return Types.SMALLINT;
+            case "mediumint":
+            case "int":
+            case "integer":
+                return Types.INTEGER;
+            case "bigint":
+                return Types.BIGINT;
+            case "decimal":
+            case "numeric":
+                return Types.DECIMAL;
+            case "float":
+            case "real":
+                return Types.REAL;
+            case "double":
+            case "double precision":
+                return Types.DOUBLE;
+            case "char":
+            case "character":
+                return Types.CHAR;
+            case "varchar":
+            case "character varying":
+                return Types.VARCHAR;
+            case "text":
+            case "tinytext":
+            case "mediumtext":
+            case "longtext":
+                return Types.LONGVARCHAR;
+            case "date":
+                return Types.DATE;
+            case "time":
+            case "time without time zone":
+                return Types.TIME;
+            case "datetime":
+            case "timestamp":
+            case "timestamp without time zone":
+                return Types.TIMESTAMP;
+            case "binary":
+            case "varbinary":
+            case "bytea":
+                return Types.VARBINARY;
+            case "blob":
+            case "tinyblob":
+            case "mediumblob":
+            case "longblob":
+                return Types.BLOB;
+            default:
+                return Types.OTHER;
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowHandler {
+        void handle(ResultSet rs) throws SQLException;
+    }
+}
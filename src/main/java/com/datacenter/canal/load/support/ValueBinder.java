@@ -0,0 +1,12 @@
+package com.datacenter.canal.load.support;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * 設置 preparedStatement 單一參數 (數值不為 null)
+ */
+@FunctionalInterface
+public interface ValueBinder {
+    void bind(PreparedStatement ps, int index, Object value) throws SQLException;
+}
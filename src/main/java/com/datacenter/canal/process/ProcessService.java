@@ -1,16 +1,42 @@
 package com.datacenter.canal.process;
 
+import com.alibaba.otter.canal.protocol.Message;
+import com.datacenter.canal.compact.CompactService;
 import com.datacenter.canal.extract.ExtractService;
 import com.datacenter.canal.load.LoadService;
+import com.datacenter.canal.load.support.LoadProgress;
+import com.datacenter.canal.process.support.BatchSizeController;
+import com.datacenter.canal.process.support.DeadLetterSpool;
+import com.datacenter.canal.process.support.EtlBatch;
+import com.datacenter.canal.process.support.PipelineMetrics;
+import com.datacenter.canal.process.support.RetryPolicy;
+import com.datacenter.canal.select.support.EtlColumn;
 import com.datacenter.canal.select.support.EtlMessage;
+import com.datacenter.canal.select.support.EtlMessageUtil;
+import com.datacenter.canal.select.support.MessageFilter;
 import com.datacenter.canal.transform.TransformService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * ETL pipeline，分為轉換 (convert) 與載入 (extract -> transform -> load) 兩個階段，
+ * 各階段以固定大小的 Queue 串接，Queue 滿時會阻塞上游 (backpressure)
+ */
 @Slf4j
 @Service
 public class ProcessService {
@@ -21,25 +47,260 @@ public class ProcessService {
     @Autowired
     TransformService transformService;
 
+    @Autowired
+    CompactService compactService;
+
     @Autowired
     LoadService loadService;
 
-    public void queue(List<EtlMessage> messages) {
-        // TODO 目前直接執行 ETL，預定改為 Queue 管理
-        log.debug("do etl process");
-        messages = extractService.extract(messages);
+    @Autowired
+    MessageFilter messageFilter;
+
+    @Autowired
+    BatchSizeController batchSizeController;
+
+    @Autowired
+    PipelineMetrics metrics;
+
+    @Value("${canal.process.queue-size:4}")
+    int queueSize;
+
+    @Value("${canal.retry.max-attempts:5}")
+    int retryMaxAttempts; // 暫時性錯誤的最多執行次數 (含第一次)
+
+    @Value("${canal.retry.initial-backoff-ms:500}")
+    long retryInitialBackoffMillis;
+
+    @Value("${canal.retry.max-backoff-ms:30000}")
+    long retryMaxBackoffMillis;
+
+    @Value("${canal.dead-letter.enabled:true}")
+    boolean deadLetterEnabled; // 非暫時性錯誤的 batch 寫入 dead letter 後繼續處理，false 時 rollback 重新抓取
+
+    @Value("${canal.dead-letter.file:dead-letter/canal.dlq}")
+    String deadLetterFile;
+
+    private BlockingQueue<EtlBatch> convertQueue;
+    private BlockingQueue<EtlBatch> loadQueue;
+    private final List<Thread> workers = new ArrayList<>();
+
+    // 任一 batch 失敗後，同一世代中排在後面的 batch 皆不處理，直到 canal rollback 後進入下一世代
+    private volatile long epoch;
+    private final AtomicLong failedEpoch = new AtomicLong(-1);
+
+    private RetryPolicy retryPolicy;
+    private DeadLetterSpool deadLetterSpool; // 未啟用時為 null
+
+    @PostConstruct
+    private void init() throws IOException {
+        log.trace("Init ProcessService: queueSize: {}, retryMaxAttempts: {}, deadLetter: {}", queueSize, retryMaxAttempts,
+                deadLetterEnabled ? deadLetterFile : "disabled");
+        this.retryPolicy = new RetryPolicy(retryMaxAttempts, retryInitialBackoffMillis, retryMaxBackoffMillis);
+        if (deadLetterEnabled) {
+            this.deadLetterSpool = new DeadLetterSpool(Paths.get(deadLetterFile));
+        }
+
+        this.convertQueue = new ArrayBlockingQueue<>(queueSize);
+        this.loadQueue = new ArrayBlockingQueue<>(queueSize);
+        metrics.gauge("canal.queue.convert.size", convertQueue, BlockingQueue::size);
+        metrics.gauge("canal.queue.load.size", loadQueue, BlockingQueue::size);
+
+        startWorker("etl-convert", convertQueue, this::convert);
+        startWorker("etl-load", loadQueue, this::load);
+    }
+
+    @PreDestroy
+    private void destroy() throws IOException {
+        workers.forEach(Thread::interrupt);
+        if (deadLetterSpool != null) {
+            deadLetterSpool.close();
+        }
+    }
+
+    /**
+     * 將 batch 放入 pipeline，Queue 已滿時阻塞直到有空間
+     */
+    public EtlBatch queue(long batchId, Message message) throws InterruptedException {
+        EtlBatch batch = new EtlBatch(batchId, epoch, message);
+        convertQueue.put(batch);
+        return batch;
+    }
+
+    /**
+     * canal rollback 或重新連線後呼叫，之前放入但尚未處理的 batch 皆不再處理 (server 會重新傳送)，
+     * 之後放入的 batch 屬於新的世代，會正常處理
+     */
+    public void nextEpoch() {
+        failedEpoch.accumulateAndGet(epoch, Math::max);
+        epoch++;
+        log.info("pipeline enter epoch: {}", epoch);
+    }
+
+    /**
+     * 記錄階段耗時，回傳下一階段的開始時間
+     */
+    private long recordStage(String stage, long start) {
+        long end = System.nanoTime();
+        metrics.recordStage(stage, end - start);
+        return end;
+    }
+
+    /**
+     * 轉換階段，將 canal Message 轉為 EtlMessage，同時套用 canal.filter
+     */
+    private void convert(EtlBatch batch) throws InterruptedException {
+        long start = System.nanoTime();
+        batch.setMessages(EtlMessageUtil.convert(batch.getMessage(), messageFilter));
+        metrics.recordConvert(System.nanoTime() - start);
+        batch.setMessage(null);
+        loadQueue.put(batch);
+    }
 
-        if(!messages.isEmpty()) {
-            messages = transformService.transform(messages);
+    /**
+     * 載入階段，依序執行各 batch 的 ETL
+     */
+    private void load(EtlBatch batch) throws Exception {
+        List<EtlMessage> messages = batch.getMessages();
+
+        // 假如非 ddl、dml 則無法轉換，且不需處理
+        if (messages != null && !messages.isEmpty()) {
+            EtlMessage firstMsg = messages.get(0);
+            EtlMessage lastMsg = messages.get(messages.size() - 1);
+
+            log.info("elt start for batch: {}, range {}:{} - {}:{}", batch.getBatchId(), firstMsg.getLogfileName(),
+                    firstMsg.getLogfileOffset(), lastMsg.getLogfileName(), lastMsg.getLogfileOffset());
+            int rows = messages.stream().mapToInt(m -> m.getData() == null ? 0 : m.getData().size()).sum();
+            long start = System.currentTimeMillis();
+            processWithRetry(batch.getBatchId(), messages);
+            long end = System.currentTimeMillis();
+            log.info("elt end for batch: {}, rows: {}, cost: {}ms", batch.getBatchId(), rows, end - start);
+
+            // 回報載入耗時及同步延遲，以調整後續的批次大小
+            long lag = lastMsg.getEs() == null ? 0 : end - lastMsg.getEs();
+            batchSizeController.record(batch.getEntryCount(), rows, end - start, lag);
+            metrics.recordBinlogLag(lag);
         }
-        
-        if(!messages.isEmpty()) {
+
+        batch.complete();
+    }
+
+    /**
+     * 執行 ETL，extract -> transform -> compact 只執行一次，暫時性錯誤時依重試策略只重試 load，
+     * 平行載入時已提交的分區不會重複套用；無法載入的 batch 以轉換前的資料 (已提交的分區除外)
+     * 寫入 dead letter 後視為完成，重試次數用盡或未啟用 dead letter 時拋出錯誤，由 CanalClient rollback 後重新抓取
+     */
+    private void processWithRetry(long batchId, List<EtlMessage> messages) throws Exception {
+        log.debug("do etl process");
+        List<EtlMessage> extracted = null;
+        List<EtlMessage> transformed = null;
+        List<EtlMessage> compacted = null;
+        LoadProgress progress = new LoadProgress();
+        for (int attempt = 1; ; attempt++) {
             try {
-                loadService.load(messages);
-            } catch (SQLException e) {
-                log.error("do load process failed: {}", e.getMessage());
+                long start = System.nanoTime();
+                if (extracted == null) {
+                    extracted = extractService.extract(messages);
+                    start = recordStage("extract", start);
+                }
+                if (transformed == null) {
+                    transformed = transformService.transform(extracted);
+                    start = recordStage("transform", start);
+                }
+                if (compacted == null) {
+                    compacted = compactService.compact(transformed);
+                    start = recordStage("compact", start);
+                }
+                if (!compacted.isEmpty()) {
+                    loadService.load(compacted, progress);
+                    recordStage("load", start);
+                }
+                return;
+            } catch (SQLException | RuntimeException e) {
+                if (retryPolicy.shouldRetry(e, attempt)) {
+                    long backoff = retryPolicy.backoffMillis(attempt);
+                    log.warn("etl failed for batch: {}, attempt: {}, retry after {}ms: {}", batchId, attempt, backoff, e.getMessage());
+                    metrics.recordRetry();
+                    Thread.sleep(backoff);
+                } else if (deadLetterSpool != null && !RetryPolicy.isTransient(e)) {
+                    if (progress.hasCommitted()) {
+                        log.error("etl failed for batch: {}, committed partitions: {}, write the rest to dead letter",
+                                batchId, progress.getCommittedCount(), e);
+                        deadLetterSpool.append(batchId, uncommitted(extracted, transformed, progress), e);
+                    } else {
+                        log.error("etl failed for batch: {}, write to dead letter", batchId, e);
+                        deadLetterSpool.append(batchId, messages, e);
+                    }
+                    metrics.recordDeadLetter();
+                    return;
+                } else {
+                    throw e;
+                }
             }
         }
-        
+    }
+
+    /**
+     * 尚未提交分區的轉換前資料，transform 不增減 EtlMessage 及資料列，轉換前後依位置對應
+     */
+    private List<EtlMessage> uncommitted(List<EtlMessage> extracted, List<EtlMessage> transformed, LoadProgress progress) {
+        List<EtlMessage> result = new ArrayList<>();
+        for (int i = 0; i < extracted.size(); i++) {
+            EtlMessage source = extracted.get(i);
+            List<Map<String, EtlColumn>> old = source.getOld();
+            List<Map<String, EtlColumn>> rows = new ArrayList<>();
+            List<Map<String, EtlColumn>> oldRows = old == null ? null : new ArrayList<>();
+            for (int j = 0; j < source.getData().size(); j++) {
+                if (!loadService.isCommitted(progress, transformed.get(i), j)) {
+                    rows.add(source.getData().get(j));
+                    if (oldRows != null && j < old.size()) {
+                        oldRows.add(old.get(j));
+                    }
+                }
+            }
+            if (!rows.isEmpty()) {
+                result.add(source.copy(rows, oldRows));
+            }
+        }
+        return result;
+    }
+
+    private void startWorker(String name, BlockingQueue<EtlBatch> queue, StageHandler handler) {
+        Thread worker = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                EtlBatch batch;
+                try {
+                    batch = queue.take();
+                } catch (InterruptedException e) {
+                    break;
+                }
+
+                // 同一世代已有 batch 失敗，後續的 batch 將於 rollback 後重新抓取
+                if (batch.getEpoch() <= failedEpoch.get()) {
+                    log.debug("{} skip batch: {}, epoch: {}", name, batch.getBatchId(), batch.getEpoch());
+                    batch.fail(new CancellationException("skipped after failure in epoch " + batch.getEpoch()));
+                    continue;
+                }
+
+                try {
+                    handler.handle(batch);
+                } catch (InterruptedException e) {
+                    batch.fail(e);
+                    break;
+                } catch (Throwable e) {
+                    log.error("{} failed for batch: {}", name, batch.getBatchId(), e);
+                    failedEpoch.accumulateAndGet(batch.getEpoch(), Math::max);
+                    batch.fail(e);
+                }
+            }
+            log.debug("{} worker stopped", name);
+        }, name);
+        worker.setDaemon(true);
+        worker.start();
+        workers.add(worker);
+    }
+
+    @FunctionalInterface
+    private interface StageHandler {
+        void handle(EtlBatch batch) throws Exception;
     }
 }
@@ -0,0 +1,218 @@
+package com.datacenter.canal.process.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * 依實際載入耗時、吞吐量及同步延遲，動態調整 canal 抓取數量及各 SQL 的批次筆數 (canal.batch.adaptive，預設關閉)
+ * <p>
+ * 每個 batch 載入完成後回報一次，調整後需經過數個 batch 才會再次調整：
+ * <ul>
+ * <li>單一 batch 的載入耗時超過目標延遲時，所有批次大小減半</li>
+ * <li>延遲超過目標且抓取已滿 (仍有積壓) 時，所有批次大小加倍</li>
+ * <li>加倍後吞吐量未提升時，退回原本大小並暫停加倍</li>
+ * </ul>
+ * 啟用時批次大小皆取 2 的次方，使 SQL 模板及 statement 快取只需保留少數幾種筆數；
+ * 未啟用時固定使用設定的大小，不做任何調整
+ */
+@Slf4j
+@Component
+public class BatchSizeController {
+
+    private static final double EWMA_ALPHA = 0.3;
+    private static final double THROUGHPUT_TOLERANCE = 0.9;
+
+    @Value("${canal.batch.adaptive:false}")
+    boolean adaptive; // false 時固定使用設定的大小
+
+    @Value("${canal.batch.target-lag-ms:1000}")
+    long targetLagMillis; // 目標同步延遲 (binlog 執行時間至載入完成)
+
+    @Value("${canal.batch.cooldown:3}")
+    int cooldown; // 調整後至少經過的 batch 數
+
+    @Value("${canal.batch.fetch-size:1000}")
+    int fetchSize;
+    @Value("${canal.batch.fetch-min:128}")
+    int fetchMin;
+    @Value("${canal.batch.fetch-max:8192}")
+    int fetchMax;
+
+    @Value("${canal.batch.insert-size:200}")
+    int insertSize;
+    @Value("${canal.batch.insert-min:16}")
+    int insertMin;
+    @Value("${canal.batch.insert-max:1024}")
+    int insertMax;
+
+    @Value("${canal.batch.update-size:500}")
+    int updateSize;
+    @Value("${canal.batch.update-min:64}")
+    int updateMin;
+    @Value("${canal.batch.update-max:4096}")
+    int updateMax;
+
+    @Value("${canal.batch.delete-size:1000}")
+    int deleteSize;
+    @Value("${canal.batch.delete-min:64}")
+    int deleteMin;
+    @Value("${canal.batch.delete-max:4096}")
+    int deleteMax;
+
+    private Knob fetch;
+    private Knob insert;
+    private Knob update;
+    private Knob delete;
+
+    // 以下僅由 load 執行緒存取
+    private int cooldownLeft;
+    private int lastChange; // 1: 加倍, -1: 減半, 0: 未調整
+    private double throughput; // 目前大小下的吞吐量 (rows/s)，指數移動平均
+    private double throughputBeforeChange;
+
+    @PostConstruct
+    private void init() {
+        this.fetch = new Knob("fetch", fetchSize, fetchMin, fetchMax);
+        this.insert = new Knob("insert", insertSize, insertMin, insertMax);
+        this.update = new Knob("update", updateSize, updateMin, updateMax);
+        this.delete = new Knob("delete", deleteSize, deleteMin, deleteMax);
+        log.info("BatchSizeController adaptive: {}, targetLag: {}ms, {}", adaptive, targetLagMillis, this);
+    }
+
+    /**
+     * canal 每次抓取的 entry 數量
+     */
+    public int getFetchSize() {
+        return fetch.size;
+    }
+
+    /**
+     * 合併 INSERT (及暫存表 INSERT) 的筆數
+     */
+    public int getInsertSize() {
+        return insert.size;
+    }
+
+    /**
+     * 批次 UPDATE 的筆數
+     */
+    public int getUpdateSize() {
+        return update.size;
+    }
+
+    /**
+     * 批次 DELETE 的筆數
+     */
+    public int getDeleteSize() {
+        return delete.size;
+    }
+
+    /**
+     * 回報單一 batch 的載入結果
+     *
+     * @param entryCount  抓取的 entry 數量
+     * @param rows        載入的資料筆數
+     * @param applyMillis 載入耗時
+     * @param lagMillis   最後一筆資料的同步延遲
+     */
+    public void record(int entryCount, int rows, long applyMillis, long lagMillis) {
+        if (!adaptive || rows == 0) {
+            return;
+        }
+
+        double sample = rows * 1000.0 / Math.max(applyMillis, 1);
+        throughput = throughput == 0 ? sample : EWMA_ALPHA * sample + (1 - EWMA_ALPHA) * throughput;
+
+        if (cooldownLeft > 0) {
+            cooldownLeft--;
+            return;
+        }
+
+        if (applyMillis > targetLagMillis) {
+            // 單一 batch 即超過目標延遲，批次過大
+            resize(-1, "apply " + applyMillis + "ms exceeds target lag");
+        } else if (lastChange > 0 && throughput < throughputBeforeChange * THROUGHPUT_TOLERANCE) {
+            // 加倍後吞吐量未提升，退回原本大小，並延長等待時間
+            resize(-1, "throughput dropped after growing");
+            cooldownLeft = cooldown * 4;
+            lastChange = 0;
+        } else if (lagMillis > targetLagMillis && entryCount >= fetch.size) {
+            // 仍有積壓，加大批次以提升吞吐量
+            resize(1, "lag " + lagMillis + "ms exceeds target lag");
+        } else {
+            lastChange = 0;
+        }
+    }
+
+    private void resize(int direction, String reason) {
+        boolean changed = false;
+        for (Knob knob : new Knob[]{fetch, insert, update, delete}) {
+            changed |= direction > 0 ? knob.grow() : knob.shrink();
+        }
+
+        if (changed) {
+            log.info("Resize batch ({}): {}", reason, this);
+            throughputBeforeChange = throughput;
+            throughput = 0;
+            lastChange = direction;
+            cooldownLeft = cooldown;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "fetch: " + fetch.size + ", insert: " + insert.size + ", update: " + update.size + ", delete: " + delete.size;
+    }
+
+    /**
+     * 單一批次大小，介於上下限之間
+     */
+    private class Knob {
+        private final String name;
+        private final int min;
+        private final int max;
+        private volatile int size;
+
+        Knob(String name, int initial, int min, int max) {
+            if (min < 1 || min > max) {
+                throw new IllegalArgumentException("canal.batch." + name + " bounds are invalid: " + min + "-" + max);
+            }
+            this.name = name;
+            this.min = min;
+            this.max = max;
+            this.size = adaptive ? clamp(quantize(initial)) : initial;
+        }
+
+        boolean grow() {
+            return set(clamp(size * 2));
+        }
+
+        boolean shrink() {
+            return set(clamp(size / 2));
+        }
+
+        private boolean set(int newSize) {
+            if (newSize == size) {
+                return false;
+            }
+            log.debug("Resize {} batch: {} -> {}", name, size, newSize);
+            size = newSize;
+            return true;
+        }
+
+        private int clamp(int value) {
+            return Math.max(min, Math.min(max, value));
+        }
+    }
+
+    /**
+     * 取最接近的 2 的次方
+     */
+    private static int quantize(int value) {
+        int high = Integer.highestOneBit(Math.max(value, 1));
+        return value - high < high * 2 - value ? high : high * 2;
+    }
+}
@@ -0,0 +1,78 @@
+package com.datacenter.canal.process.support;
+
+import com.datacenter.canal.select.support.EtlMessage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 無法載入的 batch (dead letter) 寫入本機檔案，只會附加不會修改，讓後續 batch 可繼續處理
+ * <p>
+ * 每筆紀錄格式: [int 長度][long batchId][long 寫入時間][UTF 錯誤訊息][int 資料長度][序列化的 List&lt;EtlMessage&gt;]，
+ * 長度不含自身的 4 bytes，寫入後即 fsync
+ */
+@Slf4j
+public class DeadLetterSpool implements Closeable {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final Path file;
+    private final FileChannel channel;
+
+    public DeadLetterSpool(Path file) throws IOException {
+        this.file = file.toAbsolutePath();
+        Files.createDirectories(this.file.getParent());
+        this.channel = FileChannel.open(this.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * 寫入一個無法載入的 batch
+     */
+    public synchronized void append(long batchId, List<EtlMessage> messages, Throwable cause) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(data)) {
+            out.writeObject(new ArrayList<>(messages));
+        }
+
+        String error = String.valueOf(cause);
+        if (error.length() > MAX_ERROR_LENGTH) {
+            error = error.substring(0, MAX_ERROR_LENGTH);
+        }
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream(data.size() + 64);
+        try (DataOutputStream out = new DataOutputStream(record)) {
+            out.writeInt(0); // 長度，稍後回填
+            out.writeLong(batchId);
+            out.writeLong(System.currentTimeMillis());
+            out.writeUTF(error);
+            out.writeInt(data.size());
+            data.writeTo(out);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(record.toByteArray());
+        buffer.putInt(0, buffer.remaining() - 4);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+
+        log.warn("Write dead letter batch: {}, messages: {}, file: {}", batchId, messages.size(), file);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
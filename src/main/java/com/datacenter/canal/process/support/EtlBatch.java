@@ -0,0 +1,82 @@
+package com.datacenter.canal.process.support;
+
+import com.alibaba.otter.canal.protocol.Message;
+import com.datacenter.canal.select.support.EtlMessage;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 單一 canal batch 於 pipeline 中的處理狀態
+ */
+@Getter
+public class EtlBatch {
+    private final long batchId;
+    private final long epoch; // 抓取時的 rollback 世代，rollback 前抓取的 batch 不再處理
+    private final long createTime;
+    private final int entryCount; // 抓取的 entry 數量
+
+    @Setter
+    private Message message; // 原始資料，轉換完成後即釋放
+    @Setter
+    private List<EtlMessage> messages; // 轉換後的資料
+
+    private volatile long finishTime;
+    private volatile Throwable cause;
+    private volatile boolean acked; // 已向 canal server ack
+    private final CountDownLatch latch = new CountDownLatch(1);
+
+    public EtlBatch(long batchId, Message message) {
+        this(batchId, 0, message);
+    }
+
+    public EtlBatch(long batchId, long epoch, Message message) {
+        this.batchId = batchId;
+        this.epoch = epoch;
+        this.message = message;
+        this.entryCount = message.isRaw() ? message.getRawEntries().size() : message.getEntries().size();
+        this.createTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 處理完成
+     */
+    public void complete() {
+        this.finishTime = System.currentTimeMillis();
+        this.messages = null;
+        latch.countDown();
+    }
+
+    /**
+     * 處理失敗
+     */
+    public void fail(Throwable cause) {
+        this.cause = cause;
+        complete();
+    }
+
+    /**
+     * 已向 canal server ack，rollback 後不會重新傳送
+     */
+    public void markAcked() {
+        this.acked = true;
+    }
+
+    public boolean isDone() {
+        return latch.getCount() == 0;
+    }
+
+    public boolean isFailed() {
+        return cause != null;
+    }
+
+    /**
+     * 等待處理完成
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return latch.await(timeout, unit);
+    }
+}
@@ -0,0 +1,143 @@
+package com.datacenter.canal.process.support;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * pipeline 各階段的 Micrometer 指標，經由 Actuator 以 Prometheus 格式輸出 (/actuator/prometheus)
+ * <p>
+ * Meter 於建立時註冊並保留參照，記錄時不需再查詢 MeterRegistry
+ */
+@Component
+public class PipelineMetrics {
+
+    private final MeterRegistry registry;
+
+    private final Timer fetchTimer;
+    private final Timer longPollTimer;
+    private final DistributionSummary fetchEntries;
+    private final Timer convertTimer;
+    private final Map<String, Timer> stageTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> rowCounters = new ConcurrentHashMap<>();
+    private final Timer executeTimer;
+    private final Timer executeBatchTimer;
+    private final Timer copyTimer;
+    private final Timer commitTimer;
+    private final Counter retryCounter;
+    private final Counter deadLetterCounter;
+    private final Counter rollbackCounter;
+    private final AtomicLong binlogLag = new AtomicLong();
+
+    @Autowired
+    public PipelineMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.fetchTimer = fetchTimer("batch");
+        this.longPollTimer = fetchTimer("long-poll");
+        this.fetchEntries = DistributionSummary.builder("canal.fetch.entries")
+                .description("entries per fetched batch").register(registry);
+        this.convertTimer = Timer.builder("canal.convert.time")
+                .description("time to convert canal entries to EtlMessage").register(registry);
+        this.executeTimer = jdbcTimer("execute");
+        this.executeBatchTimer = jdbcTimer("executeBatch");
+        this.copyTimer = jdbcTimer("copy");
+        this.commitTimer = jdbcTimer("commit");
+        this.retryCounter = Counter.builder("canal.load.retries")
+                .description("retried batch loads").register(registry);
+        this.deadLetterCounter = Counter.builder("canal.load.dead.letters")
+                .description("batches written to the dead letter file").register(registry);
+        this.rollbackCounter = Counter.builder("canal.fetch.rollbacks")
+                .description("ack window rollbacks").register(registry);
+        Gauge.builder("canal.binlog.lag", binlogLag, AtomicLong::get).baseUnit("milliseconds")
+                .description("now minus binlog execute time of the last loaded event").register(registry);
+    }
+
+    private Timer fetchTimer(String mode) {
+        return Timer.builder("canal.fetch.latency").tag("mode", mode)
+                .description("canal getWithoutAck latency").register(registry);
+    }
+
+    private Timer jdbcTimer(String operation) {
+        return Timer.builder("canal.jdbc.time").tag("operation", operation)
+                .description("JDBC statement and commit latency").register(registry);
+    }
+
+    /**
+     * 註冊以物件狀態計算的 gauge (ex: Queue 大小)
+     */
+    public <T> void gauge(String name, T obj, ToDoubleFunction<T> function) {
+        Gauge.builder(name, obj, function).register(registry);
+    }
+
+    /**
+     * 記錄抓取耗時及筆數，閒置時 long-poll 的耗時包含等待時間，以 mode=long-poll 分開記錄
+     */
+    public void recordFetch(long nanos, int entries, boolean longPoll) {
+        (longPoll ? longPollTimer : fetchTimer).record(nanos, TimeUnit.NANOSECONDS);
+        fetchEntries.record(entries);
+    }
+
+    public void recordConvert(long nanos) {
+        convertTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 記錄各階段耗時 (extract, transform, compact, load)
+     */
+    public void recordStage(String stage, long nanos) {
+        stageTimers.computeIfAbsent(stage, s -> Timer.builder("canal.stage.time").tag("stage", s)
+                .description("time spent in each pipeline stage").register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 記錄各資料表、各操作載入的筆數
+     */
+    public void recordRows(String table, String operation, long rows) {
+        rowCounters.computeIfAbsent(table + "." + operation, k -> Counter.builder("canal.load.rows")
+                .tag("table", table).tag("operation", operation)
+                .description("rows loaded per table and operation").register(registry)).increment(rows);
+    }
+
+    public void recordExecute(long nanos) {
+        executeTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordExecuteBatch(long nanos) {
+        executeBatchTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordCopy(long nanos) {
+        copyTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordCommit(long nanos) {
+        commitTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordRetry() {
+        retryCounter.increment();
+    }
+
+    public void recordDeadLetter() {
+        deadLetterCounter.increment();
+    }
+
+    public void recordRollback() {
+        rollbackCounter.increment();
+    }
+
+    public void recordBinlogLag(long lagMillis) {
+        binlogLag.set(lagMillis);
+    }
+}
@@ -0,0 +1,102 @@
+package com.datacenter.canal.process.support;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 載入失敗時的重試策略，只重試暫時性錯誤 (ex: 連線中斷、序列化衝突、鎖等待逾時)，
+ * 重試間隔以指數倍增並加上隨機抖動，避免多個 worker 同時重試
+ */
+public class RetryPolicy {
+
+    // 暫時性錯誤的 SQLState
+    private static final Set<String> TRANSIENT_SQL_STATES = new HashSet<>(Arrays.asList(
+            "40001", // serialization failure (PostgreSQL/Redshift), deadlock (MySQL)
+            "40P01", // deadlock detected (PostgreSQL)
+            "55P03", // lock not available (PostgreSQL)
+            "57P01", // admin shutdown (PostgreSQL)
+            "57014", // query canceled, ex: statement/lock timeout (PostgreSQL)
+            "53300"  // too many connections (PostgreSQL)
+    ));
+
+    // 暫時性錯誤的 MySQL error code
+    private static final Set<Integer> TRANSIENT_MYSQL_ERRORS = new HashSet<>(Arrays.asList(
+            1205, // lock wait timeout
+            1213, // deadlock
+            1040  // too many connections
+    ));
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    /**
+     * @param maxAttempts          包含第一次執行的最多執行次數
+     * @param initialBackoffMillis 第一次重試前的等待時間
+     * @param maxBackoffMillis     等待時間上限
+     */
+    public RetryPolicy(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be greater than 0");
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * 第 attempt 次執行失敗後是否重試 (attempt 由 1 開始)
+     */
+    public boolean shouldRetry(Throwable e, int attempt) {
+        return attempt < maxAttempts && isTransient(e);
+    }
+
+    /**
+     * 第 attempt 次執行失敗後的等待時間，為指數倍增值的 50% ~ 100% (equal jitter)
+     */
+    public long backoffMillis(int attempt) {
+        long backoff = initialBackoffMillis << Math.min(attempt - 1, 30);
+        backoff = Math.min(backoff <= 0 ? maxBackoffMillis : backoff, maxBackoffMillis);
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    /**
+     * 檢查錯誤 (含 cause) 是否為暫時性錯誤
+     */
+    public static boolean isTransient(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLTransientException || cause instanceof SQLRecoverableException
+                    || cause instanceof IOException) {
+                return true;
+            }
+
+            if (cause instanceof SQLException) {
+                SQLException sqlException = (SQLException) cause;
+                String sqlState = sqlException.getSQLState();
+                // 08: connection exception
+                if (sqlState != null && (sqlState.startsWith("08") || TRANSIENT_SQL_STATES.contains(sqlState))) {
+                    return true;
+                }
+                if (TRANSIENT_MYSQL_ERRORS.contains(sqlException.getErrorCode())) {
+                    return true;
+                }
+                // Redshift 的序列化衝突 (error 1023) 為 XX000，需比對訊息
+                String message = sqlException.getMessage();
+                if (message != null && message.contains("Serializable isolation violation")) {
+                    return true;
+                }
+            }
+
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+}
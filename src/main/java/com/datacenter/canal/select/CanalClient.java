@@ -1,28 +1,38 @@
 package com.datacenter.canal.select;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.util.List;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 
 import com.alibaba.otter.canal.protocol.Message;
 import com.datacenter.canal.process.ProcessService;
-import com.datacenter.canal.select.support.EtlMessage;
-import com.datacenter.canal.select.support.EtlMessageUtil;
+import com.datacenter.canal.process.support.BatchSizeController;
+import com.datacenter.canal.process.support.EtlBatch;
+import com.datacenter.canal.process.support.PipelineMetrics;
+import com.datacenter.canal.select.support.AckWindow;
+import com.datacenter.canal.select.support.MessageFilter;
+import com.datacenter.canal.select.support.MessageSpool;
+import com.datacenter.canal.select.support.OverflowBuffer;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+
 import com.alibaba.otter.canal.client.CanalConnector;
 import com.alibaba.otter.canal.client.CanalConnectors;
 
 @Slf4j
 @Component
+// benchmark 等不連線 canal server 時關閉，重播模式時由 ReplayClient 取代
+@ConditionalOnExpression("${canal.client.enabled:true} and !${canal.replay.enabled:false}")
 public class CanalClient implements InitializingBean {
 
-    private final static int BATCH_SIZE = 1000;
-
     @Value("${canal.hostname}")
     String hostname;
 
@@ -41,15 +51,131 @@ public class CanalClient implements InitializingBean {
     @Value("${canal.subscribe}")
     String subscribe;
 
+    @Value("${canal.fetch.idle-min-ms:100}")
+    long idleMinMillis; // 閒置時 long-poll 的初始等待時間
+
+    @Value("${canal.fetch.idle-max-ms:2000}")
+    long idleMaxMillis; // 持續閒置時，等待時間倍增的上限
+
+    @Value("${canal.fetch.idle-size:1}")
+    int idleSize; // 閒置時抓取的數量，server 收到此數量的 entry 即返回 (server 為 MEMSIZE 模式時單位為 memunit)
+
+    @Value("${canal.fetch.window:8}")
+    int window; // 已抓取但尚未 ack 的 batch 數量上限
+
+    @Value("${canal.fetch.rollback-delay-ms:5000}")
+    long rollbackDelayMillis; // 處理失敗 rollback 後，重新抓取前的等待時間
+
+    @Value("${canal.spool.enabled:false}")
+    boolean spoolEnabled; // 是否將抓取的 Message 寫入 segment 檔，供 ReplayClient 重播
+
+    @Value("${canal.spool.dir:spool}")
+    String spoolDir;
+
+    @Value("${canal.spool.segment-mb:64}")
+    int spoolSegmentMb;
+
+    @Value("${canal.spool.force:false}")
+    boolean spoolForce; // 每筆寫入後 fsync
+
+    @Value("${canal.overflow.enabled:false}")
+    boolean overflowEnabled; // 目標庫變慢時，超過記憶體上限的 batch 寫入磁碟並 ack，讓 canal server 不因積壓而停滯
+
+    @Value("${canal.overflow.dir:overflow}")
+    String overflowDir;
+
+    @Value("${canal.overflow.memory-mb:256}")
+    long overflowMemoryMb; // 記憶體中 batch 預估大小的上限
+
+    @Value("${canal.overflow.segment-mb:64}")
+    long overflowSegmentMb;
+
     @Autowired
     ProcessService processService;
 
+    @Autowired
+    MessageFilter messageFilter;
+
+    @Autowired
+    BatchSizeController batchSizeController;
+
+    @Autowired
+    PipelineMetrics metrics;
+
+    private MessageSpool messageSpool; // 未啟用時為 null
+    private OverflowBuffer overflowBuffer; // 未啟用時為 null
+
     @Override
-    public void afterPropertiesSet() throws Exception {
+    public void afterPropertiesSet() throws IOException {
+        // only-listed 時只訂閱 canal.filter 設定的資料表
+        subscribe = messageFilter.subscribe(subscribe);
+
+        if (spoolEnabled) {
+            this.messageSpool = new MessageSpool(Paths.get(spoolDir), spoolSegmentMb << 20, spoolForce);
+        }
+        if (overflowEnabled) {
+            // 先處理上次留在磁碟上的 batch
+            this.overflowBuffer = new OverflowBuffer(Paths.get(overflowDir), overflowMemoryMb << 20,
+                    overflowSegmentMb << 20, window, rollbackDelayMillis, processService);
+            this.overflowBuffer.start();
+        }
+
+        // 於獨立線程抓取資料，轉換與載入交由 ProcessService 的 pipeline 處理
+        Thread fetcher = new Thread(this::run, "canal-fetch");
+        fetcher.start();
+    }
+
+    @PreDestroy
+    private void destroy() throws IOException {
+        if (messageSpool != null) {
+            messageSpool.close();
+        }
+        if (overflowBuffer != null) {
+            overflowBuffer.close();
+        }
+    }
+
+    /**
+     * 連線中斷或抓取失敗時，等待後重新連線，未 ack 的 batch 由 server 重新傳送
+     */
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            fetch();
+            try {
+                rollbackPipeline();
+            } catch (IOException e) {
+                log.error("Overflow buffer rollback error", e);
+            }
+
+            try {
+                Thread.sleep(rollbackDelayMillis);
+            } catch (InterruptedException e) {
+                break;
+            }
+            log.info("CanalConnector reconnect");
+        }
+        log.info("CanalConnector fetch thread stopped");
+    }
+
+    /**
+     * rollback 後，之前放入 pipeline 的 batch 不再處理，由 server 重新傳送
+     */
+    private void rollbackPipeline() throws IOException {
+        if (overflowBuffer != null) {
+            overflowBuffer.rollback();
+        } else {
+            processService.nextEpoch();
+        }
+    }
+
+    private void fetch() {
         // 創建連接
         InetSocketAddress socketAddress = new InetSocketAddress(hostname, port);
         CanalConnector connector = CanalConnectors.newSingleConnector(socketAddress, destination, username, password);
 
+        // 已抓取但尚未 ack 的 batch，依 batch id 順序排列
+        AckWindow ackWindow = new AckWindow(connector, window);
+
         try {
             // 打開連接
             connector.connect();
@@ -62,46 +188,78 @@ public class CanalClient implements InitializingBean {
             // 回滾到未進行ack的地方，下次fetch的時候，可以從最後一個沒有ack的地方開始拿
             connector.rollback();
 
+            // 閒置時的 long-poll 等待時間，0 表示有數據，直接抓取不等待
+            long idleMillis = 0;
+
             while (true) {
-                // 獲取指定數量的數據
-                Message message = connector.getWithoutAck(BATCH_SIZE);
+                // 確認已處理完成的 batch，有 batch 失敗時 rollback，從最後 ack 的位置重新抓取
+                if (!ackWindow.ack()) {
+                    ackWindow.rollback();
+                    rollbackPipeline();
+                    metrics.recordRollback();
+                    idleMillis = 0;
+                    Thread.sleep(rollbackDelayMillis);
+                    continue;
+                }
+
+                // 視窗已滿時，等待最舊的 batch 完成後再抓取；使用 overflow buffer 時由其限制記憶體用量，不需等待
+                if (overflowBuffer == null && ackWindow.isFull()) {
+                    ackWindow.awaitHead(1, TimeUnit.SECONDS);
+                    continue;
+                }
+
+                Message message;
+                long fetchStart = System.nanoTime();
+                if (idleMillis == 0) {
+                    // 獲取指定數量的數據，數量依載入狀況動態調整，有多少拿多少不等待
+                    message = connector.getWithoutAck(batchSizeController.getFetchSize());
+                } else {
+                    // 閒置時以 long-poll 等待，server 有數據即返回；
+                    // server 需湊滿指定數量才會提早返回，因此閒置時只取少量以立即喚醒
+                    message = connector.getWithoutAck(idleSize, idleMillis, TimeUnit.MILLISECONDS);
+                }
                 // 獲取批量ID
                 long batchId = message.getId();
                 // 獲取批量的數量
                 int size = message.getEntries().size();
+                // long-poll 的耗時包含等待時間，與一般抓取分開記錄
+                metrics.recordFetch(System.nanoTime() - fetchStart, size, idleMillis != 0);
 
                 // 如果沒有數據
                 if (batchId == -1 || size == 0) {
-                    try {
-                        // 線程休眠2秒
-                        Thread.sleep(2000);
-                    } catch (InterruptedException e) {
-                        log.error("CanalConnector thread sleep error", e);
+                    if (batchId != -1) {
+                        // 空的 batch 無需處理，但仍需依序 ack
+                        EtlBatch batch = new EtlBatch(batchId, message);
+                        batch.complete();
+                        ackWindow.add(batch);
                     }
+
+                    // 持續閒置時，等待時間倍增至上限，減少空輪詢
+                    idleMillis = idleMillis == 0 ? idleMinMillis : Math.min(idleMillis * 2, idleMaxMillis);
                 } else {
-                    // 如果有數據,則轉換資料格式
-                    List<EtlMessage> messages = EtlMessageUtil.convert(message);
-
-                    // 假如非 ddl、dml 則無法轉換，且不需處理
-                    if (messages != null && !messages.isEmpty()) {
-                        EtlMessage firstMsg = messages.get(0);
-                        EtlMessage lastMsg = messages.get(messages.size() - 1);
-
-                        log.info("elt start for batch: {}, range {}:{} - {}:{}", batchId, firstMsg.getLogfileName(),
-                                firstMsg.getLogfileOffset(), lastMsg.getLogfileName(), lastMsg.getLogfileOffset());
-                        processService.queue(messages);
-                        log.info("elt end for batch: {}", batchId);
+                    // 有數據時立即恢復完整抓取
+                    idleMillis = 0;
+
+                    if (messageSpool != null) {
+                        messageSpool.append(batchId, message);
                     }
-                }
 
-                // 進行 batch id 的確認。確認之後，小於等於此 batchId 的 Message 都會被確認。
-                connector.ack(batchId);
+                    // 如果有數據，則交由 pipeline 處理，pipeline 已滿時會在此阻塞
+                    ackWindow.add(overflowBuffer != null ? overflowBuffer.offer(batchId, message)
+                            : processService.queue(batchId, message));
+                }
             }
 
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (Exception e) {
             log.error("CanalConnector connect error", e);
         } finally {
-            connector.disconnect();
+            try {
+                connector.disconnect();
+            } catch (Exception e) {
+                log.warn("CanalConnector disconnect error: {}", e.getMessage());
+            }
         }
     }
 }
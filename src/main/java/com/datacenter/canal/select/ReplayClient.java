@@ -0,0 +1,113 @@
+package com.datacenter.canal.select;
+
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.datacenter.canal.load.support.Checkpoint;
+import com.datacenter.canal.process.ProcessService;
+import com.datacenter.canal.process.support.EtlBatch;
+import com.datacenter.canal.select.support.MessageSpoolReader;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.StringUtils;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 重播模式：不連線 canal server，讀取 CanalClient 寫入的 segment 檔 (canal.spool.*)，
+ * 依序交由 ProcessService 處理，pipeline 已滿時阻塞，速度取決於目標庫
+ * <p>
+ * 可指定 binlog 位置範圍 (ex: mysql-bin.000123:4567)，用於目標端修正後重新處理一段時間的資料，
+ * 或離線重現正式環境的負載。重新處理已套用的資料時，需關閉或清除 checkpoint (canal.checkpoint.store)，
+ * 否則已記錄的位置會被略過
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(value = "canal.replay.enabled", havingValue = "true")
+public class ReplayClient implements InitializingBean {
+
+    @Value("${canal.replay.dir:${canal.spool.dir:spool}}")
+    String replayDir;
+
+    @Value("${canal.replay.from:}")
+    String from; // 起始 binlog 位置 (含)，空白表示從頭開始
+
+    @Value("${canal.replay.to:}")
+    String to; // 結束 binlog 位置 (含)，空白表示到結尾
+
+    @Value("${canal.fetch.window:8}")
+    int window; // 處理中的 batch 數量上限
+
+    @Autowired
+    ProcessService processService;
+
+    @Override
+    public void afterPropertiesSet() {
+        Thread replayer = new Thread(this::run, "canal-replay");
+        replayer.start();
+    }
+
+    private void run() {
+        Checkpoint fromPosition = StringUtils.isEmpty(from) ? null : Checkpoint.parse(from);
+        Checkpoint toPosition = StringUtils.isEmpty(to) ? null : Checkpoint.parse(to);
+        log.info("Replay spool: {}, from: {}, to: {}", replayDir, fromPosition, toPosition);
+
+        Deque<EtlBatch> batches = new ArrayDeque<>();
+        Deque<String> positions = new ArrayDeque<>(); // 各 batch 第一個 entry 的位置，失敗時用於續播
+        long start = System.currentTimeMillis();
+        long batchCount = 0;
+        long entryCount = 0;
+        try {
+            MessageSpoolReader reader = new MessageSpoolReader(Paths.get(replayDir), fromPosition, toPosition);
+            MessageSpoolReader.Record record;
+            while ((record = reader.next()) != null) {
+                if (batches.size() >= window && !awaitHead(batches, positions)) {
+                    return;
+                }
+
+                entryCount += record.getMessage().getEntries().size();
+                batchCount++;
+                CanalEntry.Header header = record.getMessage().getEntries().get(0).getHeader();
+                positions.addLast(header.getLogfileName() + ":" + header.getLogfileOffset());
+                batches.addLast(processService.queue(record.getBatchId(), record.getMessage()));
+            }
+
+            while (!batches.isEmpty()) {
+                if (!awaitHead(batches, positions)) {
+                    return;
+                }
+            }
+            log.info("Replay finished, batches: {}, entries: {}, elapsed: {}ms", batchCount, entryCount,
+                    System.currentTimeMillis() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Replay spool error", e);
+        }
+    }
+
+    /**
+     * 等待最舊的 batch 完成，失敗時停止重播 (無 server 可 rollback)，記錄可續播的位置
+     */
+    private boolean awaitHead(Deque<EtlBatch> batches, Deque<String> positions) throws InterruptedException {
+        EtlBatch batch = batches.peekFirst();
+        while (!batch.await(1, TimeUnit.SECONDS)) {
+            log.debug("Replay waiting for batch: {}", batch.getBatchId());
+        }
+        if (batch.isFailed()) {
+            log.error("Replay stopped, batch: {} failed, resume with canal.replay.from={}",
+                    batch.getBatchId(), positions.peekFirst(), batch.getCause());
+            // 之後已放入的 batch 不再處理
+            processService.nextEpoch();
+            return false;
+        }
+        batches.pollFirst();
+        positions.pollFirst();
+        return true;
+    }
+}
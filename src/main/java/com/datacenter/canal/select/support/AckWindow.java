@@ -0,0 +1,86 @@
+package com.datacenter.canal.select.support;
+
+import com.alibaba.otter.canal.client.CanalConnector;
+import com.datacenter.canal.process.support.EtlBatch;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 已抓取但尚未 ack 的 batch 視窗，限制同時處理中的 batch 數量
+ * <p>
+ * canal server 只接受依 batch id 順序 ack，因此 batch 可依任意順序完成，
+ * 但只會 ack 從最舊的 batch 開始連續已完成的部分；任一 batch 失敗時，
+ * 需 rollback 整個視窗，由 server 從最後 ack 的位置重新傳送 (at-least-once)
+ */
+@Slf4j
+public class AckWindow {
+
+    private final CanalConnector connector;
+    private final int capacity;
+    private final Deque<EtlBatch> batches = new ArrayDeque<>(); // 依 batch id 順序排列
+
+    public AckWindow(CanalConnector connector, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("ack window capacity must be greater than 0");
+        }
+        this.connector = connector;
+        this.capacity = capacity;
+    }
+
+    public void add(EtlBatch batch) {
+        batches.addLast(batch);
+    }
+
+    public int size() {
+        return batches.size();
+    }
+
+    public boolean isFull() {
+        return batches.size() >= capacity;
+    }
+
+    /**
+     * 視窗已滿時，等待最舊的 batch 完成
+     */
+    public void awaitHead(long timeout, TimeUnit unit) throws InterruptedException {
+        EtlBatch head = batches.peekFirst();
+        if (head != null) {
+            head.await(timeout, unit);
+        }
+    }
+
+    /**
+     * 依 batch id 順序 ack 已完成的 batch，遇到尚未完成的 batch 即停止
+     *
+     * @return 遇到失敗的 batch 時回傳 false，需呼叫 {@link #rollback()}
+     */
+    public boolean ack() {
+        while (!batches.isEmpty() && batches.peekFirst().isDone()) {
+            EtlBatch batch = batches.peekFirst();
+
+            if (batch.isFailed()) {
+                log.error("etl failed for batch: {}, in-flight batches: {}", batch.getBatchId(), batches.size(), batch.getCause());
+                return false;
+            }
+
+            // 進行 batch id 的確認。確認之後，小於等於此 batchId 的 Message 都會被確認。
+            connector.ack(batch.getBatchId());
+            batch.markAcked();
+            batches.pollFirst();
+        }
+        return true;
+    }
+
+    /**
+     * 放棄視窗中所有尚未 ack 的 batch，下次抓取時由 server 從最後 ack 的位置重新傳送
+     */
+    public void rollback() {
+        log.warn("Rollback {} unacked batches, from batch: {}", batches.size(),
+                batches.isEmpty() ? -1 : batches.peekFirst().getBatchId());
+        connector.rollback();
+        batches.clear();
+    }
+}
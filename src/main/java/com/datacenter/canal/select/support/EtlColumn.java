@@ -1,18 +1,104 @@
 package com.datacenter.canal.select.support;
 
+import com.alibaba.otter.canal.connector.core.util.JdbcTypeUtil;
 import lombok.*;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Objects;
+
 /**
  * modified from canal-connect
+ * <p>
+ * 由 binlog 轉換時只保留原始字串，第一次讀取 value 時才依欄位型別轉換 (延遲解碼)
  */
 @Getter
 @Setter
 @Builder
 @ToString
-public class EtlColumn {
+public class EtlColumn implements Serializable {
+
+    private static final long serialVersionUID = -3862187046153295471L;
+
     private String name;
     private Object value;
     private boolean key;
     private int sqlType;
     private String mysqlType;
+
+    // 尚未解碼時的原始字串及所屬資料表 (型別轉換錯誤訊息用)，序列化前會先解碼
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient String table;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient String rawValue;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient boolean pending;
+
+    /**
+     * 建立延遲解碼的欄位
+     */
+    static EtlColumn lazy(String table, String name, String rawValue, boolean key, int sqlType, String mysqlType) {
+        EtlColumn column = builder().name(name).key(key).sqlType(sqlType).mysqlType(mysqlType).build();
+        column.table = table;
+        column.rawValue = rawValue;
+        column.pending = true;
+        return column;
+    }
+
+    public Object getValue() {
+        if (pending) {
+            value = JdbcTypeUtil.typeConvert(table, name, rawValue, sqlType, mysqlType);
+            pending = false;
+            table = null;
+            rawValue = null;
+        }
+        return value;
+    }
+
+    public void setValue(Object value) {
+        this.value = value;
+        this.pending = false;
+        this.table = null;
+        this.rawValue = null;
+    }
+
+    /**
+     * 複製欄位，尚未解碼時一併複製原始字串；轉換或改名時修改複本，不影響來源資料列
+     */
+    public EtlColumn copy() {
+        EtlColumn column = builder().name(name).value(value).key(key).sqlType(sqlType).mysqlType(mysqlType).build();
+        column.table = table;
+        column.rawValue = rawValue;
+        column.pending = pending;
+        return column;
+    }
+
+    /**
+     * 比對兩欄位的數值是否相同，皆尚未解碼且型別相同時直接比對原始字串
+     */
+    public boolean sameValue(EtlColumn other) {
+        if (this == other) {
+            return true;
+        }
+        if (other == null) {
+            return false;
+        }
+        if (pending && other.pending && sqlType == other.sqlType && Objects.equals(mysqlType, other.mysqlType)
+                && Objects.equals(rawValue, other.rawValue)) {
+            return true;
+        }
+        return Objects.deepEquals(getValue(), other.getValue()); // byte[] 等陣列需比對內容
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        getValue();
+        out.defaultWriteObject();
+    }
 }
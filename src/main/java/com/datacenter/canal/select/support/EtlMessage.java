@@ -34,4 +34,24 @@ public class EtlMessage implements Serializable {
     private List<Map<String, EtlColumn>> old;
     private String logfileName;
     private Long logfileOffset;
+
+    /**
+     * 複製 binlog 資訊，資料列改為傳入的 data 及 old
+     */
+    public EtlMessage copy(List<Map<String, EtlColumn>> data, List<Map<String, EtlColumn>> old) {
+        EtlMessage message = new EtlMessage();
+        message.setDatabase(database);
+        message.setTable(table);
+        message.setPkNames(pkNames);
+        message.setIsDdl(isDdl);
+        message.setType(type);
+        message.setEs(es);
+        message.setTs(ts);
+        message.setSql(sql);
+        message.setData(data);
+        message.setOld(old);
+        message.setLogfileName(logfileName);
+        message.setLogfileOffset(logfileOffset);
+        return message;
+    }
 }
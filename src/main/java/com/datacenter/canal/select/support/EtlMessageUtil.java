@@ -1,6 +1,5 @@
 package com.datacenter.canal.select.support;
 
-import com.alibaba.otter.canal.connector.core.util.JdbcTypeUtil;
 import com.alibaba.otter.canal.protocol.CanalEntry;
 import com.alibaba.otter.canal.protocol.Message;
 
@@ -8,10 +7,18 @@ import java.util.*;
 
 /**
  * modified from canal-connect
+ * <p>
+ * 資料列為 {@link LazyRow}，欄位數值延遲到讀取時才解碼；
+ * 指定 {@link MessageFilter} 時，排除的資料表不解析 RowChange，條件不成立的資料列及排除的欄位不會建立；
+ * update 依修改前後的資料判斷條件，修改後才符合條件時改為 INSERT，修改後不再符合條件時改為 DELETE
  */
 public class EtlMessageUtil {
 
     public static List<EtlMessage> convert(Message message) {
+        return convert(message, null);
+    }
+
+    public static List<EtlMessage> convert(Message message, MessageFilter messageFilter) {
         if (message == null) {
             return null;
         }
@@ -23,6 +30,12 @@ public class EtlMessageUtil {
                 continue;
             }
 
+            TableFilter filter = messageFilter == null ? TableFilter.NONE
+                    : messageFilter.forTable(entry.getHeader().getSchemaName(), entry.getHeader().getTableName());
+            if (filter.isSkip()) {
+                continue;
+            }
+
             CanalEntry.RowChange rowChange;
             try {
                 rowChange = CanalEntry.RowChange.parseFrom(entry.getStoreValue());
@@ -43,100 +56,100 @@ public class EtlMessageUtil {
             msg.setSql(rowChange.getSql());
             msg.setLogfileName(entry.getHeader().getLogfileName());
             msg.setLogfileOffset(entry.getHeader().getLogfileOffset());
-            messages.add(msg);
-
-            List<Map<String, EtlColumn>> data = new ArrayList<>();
-            List<Map<String, EtlColumn>> old = new ArrayList<>();
-
-            if (!rowChange.getIsDdl()) {
-                Set<String> updateSet = new HashSet<>();
-                msg.setPkNames(new ArrayList<>());
-                int i = 0;
-                for (CanalEntry.RowData rowData : rowChange.getRowDatasList()) {
-                    if (eventType != CanalEntry.EventType.INSERT && eventType != CanalEntry.EventType.UPDATE
-                            && eventType != CanalEntry.EventType.DELETE) {
-                        continue;
-                    }
 
-                    Map<String, EtlColumn> row = new LinkedHashMap<>();
-                    List<CanalEntry.Column> columns;
+            if (rowChange.getIsDdl()) {
+                messages.add(msg);
+                continue;
+            }
+
+            msg.setPkNames(new ArrayList<>());
+            msg.setData(new ArrayList<>());
+            msg.setOld(new ArrayList<>());
+
+            // update 因條件移入或移出時改為 INSERT 或 DELETE，類型不同的連續資料列分為不同的 EtlMessage 以維持順序
+            List<EtlMessage> segments = new ArrayList<>(1);
+            segments.add(msg);
+            EtlMessage current = msg;
+
+            LazyRow.Layout layout = null;
+            TableFilter.Plan plan = null;
+            int i = 0;
+            for (CanalEntry.RowData rowData : rowChange.getRowDatasList()) {
+                if (eventType != CanalEntry.EventType.INSERT && eventType != CanalEntry.EventType.UPDATE
+                        && eventType != CanalEntry.EventType.DELETE) {
+                    continue;
+                }
 
-                    if (eventType == CanalEntry.EventType.DELETE) {
-                        columns = rowData.getBeforeColumnsList();
-                    } else {
-                        columns = rowData.getAfterColumnsList();
-                    }
+                List<CanalEntry.Column> columns;
+
+                if (eventType == CanalEntry.EventType.DELETE) {
+                    columns = rowData.getBeforeColumnsList();
+                } else {
+                    columns = rowData.getAfterColumnsList();
+                }
 
+                if (i == 0) {
                     for (CanalEntry.Column column : columns) {
-                        if (i == 0) {
-                            if (column.getIsKey()) {
-                                msg.getPkNames().add(column.getName());
-                            }
-                        }
-                        if (column.getIsNull()) {
-                            row.put(column.getName(), covertToEtlColumn(column));
-                        } else {
-                            row.put(column.getName(), covertToEtlColumn(msg.getTable(), column));
-                        }
-                        // 获取update为true的字段
-                        if (column.getUpdated()) {
-                            updateSet.add(column.getName());
+                        if (column.getIsKey()) {
+                            msg.getPkNames().add(column.getName());
                         }
                     }
+                }
 
-                    data.add(row);
-
-                    if (eventType == CanalEntry.EventType.UPDATE) {
-                        Map<String, EtlColumn> rowOld = new LinkedHashMap<>();
-                        for (CanalEntry.Column column : rowData.getBeforeColumnsList()) {
-                            if (updateSet.contains(column.getName())) {
-                                if (column.getIsNull()) {
-                                    rowOld.put(column.getName(), covertToEtlColumn(column));
-                                } else {
-                                    rowOld.put(column.getName(), covertToEtlColumn(msg.getTable(), column));
-                                }
-                            }
-                        }
-
-                        // 回填為修改的欄位於 old
-                        for (EtlColumn column : row.values()) {
-                            rowOld.putIfAbsent(column.getName(), column);
+                String type = msg.getType();
+                LazyRow row;
+                if (filter.isNone()) {
+                    // 欄位數值於讀取時才轉換
+                    row = LazyRow.of(msg.getTable(), columns, layout);
+                } else {
+                    if (plan == null || !plan.matches(columns)) {
+                        plan = filter.plan(msg.getTable(), columns);
+                    }
+                    boolean accepted = plan.accept(columns);
+                    if (eventType == CanalEntry.EventType.UPDATE
+                            && accepted != plan.acceptBefore(columns, rowData.getBeforeColumnsList())) {
+                        // 修改後才符合條件 (移入) 時目標庫沒有此資料，改為 INSERT；
+                        // 修改後不再符合條件 (移出) 時改為以修改前資料 DELETE
+                        type = accepted ? "INSERT" : "DELETE";
+                        if (!accepted) {
+                            columns = rowData.getBeforeColumnsList();
                         }
-
-                        // update操作将记录修改前的值
-                        old.add(rowOld);
+                        accepted = true;
+                    }
+                    if (!accepted) {
+                        i++;
+                        continue;
                     }
+                    row = plan.getProjection() == null || !plan.getProjection().matches(columns)
+                            ? LazyRow.of(msg.getTable(), columns, layout)
+                            : LazyRow.of(msg.getTable(), columns, plan.getProjection());
+                }
+                layout = row.getLayout();
+
+                if (!type.equals(current.getType())) {
+                    current = msg.copy(new ArrayList<>(), new ArrayList<>());
+                    current.setType(type);
+                    segments.add(current);
+                }
+                current.getData().add(row);
 
-                    i++;
+                if ("UPDATE".equals(type)) {
+                    // update操作将记录修改前的值，未修改的欄位與修改後共用
+                    current.getOld().add(LazyRow.before(row, rowData.getBeforeColumnsList()));
                 }
 
-                msg.setData(data);
-                msg.setOld(old);
+                i++;
+            }
+
+            for (EtlMessage segment : segments) {
+                // 資料列全部被過濾時不需載入
+                if (!segment.getData().isEmpty() || (segments.size() == 1
+                        && (filter.isNone() || rowChange.getRowDatasCount() == 0))) {
+                    messages.add(segment);
+                }
             }
         }
 
         return messages;
     }
-
-    private static EtlColumn covertToEtlColumn(CanalEntry.Column entryColumn) {
-        return EtlColumn.builder()
-                .name(entryColumn.getName())
-                .key(entryColumn.getIsKey())
-                .mysqlType(entryColumn.getMysqlType())
-                .sqlType(entryColumn.getSqlType())
-                .build();
-    }
-
-    private static EtlColumn covertToEtlColumn(String table, CanalEntry.Column entryColumn) {
-        Object value = JdbcTypeUtil.typeConvert(table,
-                entryColumn.getName(),
-                entryColumn.getValue(),
-                entryColumn.getSqlType(),
-                entryColumn.getMysqlType());
-
-        EtlColumn column = covertToEtlColumn(entryColumn);
-        column.setValue(value);
-
-        return column;
-    }
 }
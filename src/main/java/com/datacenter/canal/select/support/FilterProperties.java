@@ -0,0 +1,60 @@
+package com.datacenter.canal.select.support;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 轉換 binlog 時即套用的欄位及資料列過濾 (canal.filter)，被排除的欄位及資料列不會解碼或建立，ex:
+ * <pre>
+ * canal:
+ *   filter:
+ *     only-listed: true
+ *     tables:
+ *       - table: shop.order
+ *         include: [id, user_id, amount, status]
+ *         where:
+ *           - { column: status, in: [PAID, SHIPPED] }
+ *           - { column: amount, min: 100 }
+ *       - table: shop.*
+ *         exclude: [remark]
+ * </pre>
+ * 一個資料表只套用第一個符合的設定，where 的條件皆須成立
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("canal.filter")
+public class FilterProperties {
+
+    private boolean onlyListed; // 只處理有設定的資料表，canal.subscribe 同時縮小為設定的資料表
+    private List<Table> tables = new ArrayList<>();
+
+    @Getter
+    @Setter
+    public static class Table {
+        private String table; // 資料庫.資料表，可使用 * 萬用字元
+        private List<String> include = new ArrayList<>(); // 保留的欄位，空白表示全部
+        private List<String> exclude = new ArrayList<>(); // 排除的欄位，主鍵欄位不會被排除
+        private List<Condition> where = new ArrayList<>();
+    }
+
+    /**
+     * 資料列條件，delete 以修改前資料判斷，insert 以修改後資料判斷，update 兩者皆判斷
+     * (修改後才成立時改為 insert，修改後不再成立時改為 delete)；
+     * 數值欄位以數值比較，其他欄位以字串比較 (日期時間格式可直接比較)，欄位為 null 時不成立
+     */
+    @Getter
+    @Setter
+    public static class Condition {
+        private String column;
+        private String eq;
+        private List<String> in;
+        private String min; // 含
+        private String max; // 含
+    }
+}
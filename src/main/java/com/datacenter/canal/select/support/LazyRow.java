@@ -0,0 +1,302 @@
+package com.datacenter.canal.select.support;
+
+import com.alibaba.otter.canal.protocol.CanalEntry;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.function.UnaryOperator;
+
+/**
+ * 以 canal RowData 的欄位清單為來源的唯讀資料列 (欄位名稱 -> EtlColumn)，依欄位順序迭代
+ * <p>
+ * EtlColumn 於第一次讀取該欄位時才建立，數值再延遲到讀取 value 時才解碼，
+ * 寬表只修改少數欄位時，未被讀取的欄位不需轉換；可替換既有欄位，不可新增或移除欄位，
+ * 需移除或改名時以 {@link #project(Projection)} 建立新的檢視。序列化時轉為 LinkedHashMap
+ * <p>
+ * 轉換時即排除的欄位以 {@link #of(String, List, Projection)} 建立，只保留對應位置的欄位，其餘欄位不會建立
+ */
+public class LazyRow extends AbstractMap<String, EtlColumn> implements Serializable {
+
+    private static final long serialVersionUID = 4125386015874352912L;
+
+    private final String table;
+    private final Layout layout;
+    private final List<CanalEntry.Column> columns;
+    private final EtlColumn[] values;
+
+    // update 的修改前資料: 有修改的欄位取 before，其餘與修改後資料共用同一個 EtlColumn
+    private final LazyRow after;
+
+    // 移除或改名後的檢視: 欄位取自來源資料列的 source[idx]；
+    // 無來源資料列時為 RowData 欄位清單的位置 (null 表示位置相同)
+    private final LazyRow parent;
+    private final int[] source;
+
+    private LazyRow(String table, Layout layout, List<CanalEntry.Column> columns, LazyRow after) {
+        this(table, layout, columns, after, null, null);
+    }
+
+    private LazyRow(String table, Layout layout, List<CanalEntry.Column> columns, LazyRow after, LazyRow parent,
+                    int[] source) {
+        this.table = table;
+        this.layout = layout;
+        this.columns = columns;
+        this.after = after;
+        this.parent = parent;
+        this.source = source;
+        this.values = new EtlColumn[layout.names.length];
+    }
+
+    /**
+     * 建立資料列，layout 與欄位清單相同時沿用，否則建立新的 layout
+     */
+    static LazyRow of(String table, List<CanalEntry.Column> columns, Layout layout) {
+        return new LazyRow(table, layout != null && layout.matches(columns) ? layout : new Layout(columns), columns, null);
+    }
+
+    /**
+     * 建立只包含部分欄位的資料列，projection 須與欄位清單相符 ({@link Projection#matches(List)})
+     */
+    static LazyRow of(String table, List<CanalEntry.Column> columns, Projection projection) {
+        return new LazyRow(table, projection.target, columns, null, null, projection.index);
+    }
+
+    /**
+     * 建立 update 修改前的資料列，欄位與修改後資料相同
+     */
+    static LazyRow before(LazyRow after, List<CanalEntry.Column> beforeColumns) {
+        return new LazyRow(after.table, after.layout, beforeColumns, after, null, after.source);
+    }
+
+    Layout getLayout() {
+        return layout;
+    }
+
+    /**
+     * 依欄位名稱建立移除或改名的對應，mapper 回傳 null 表示移除該欄位；
+     * 同一個 binlog 事件的資料列 layout 相同，可共用同一個對應
+     */
+    public Projection projection(UnaryOperator<String> mapper) {
+        return Projection.of(table, layout, mapper);
+    }
+
+    /**
+     * 建立移除或改名後的檢視，欄位仍延遲建立及解碼；改名的欄位為複本，不修改來源資料列
+     */
+    public LazyRow project(Projection projection) {
+        if (!projection.appliesTo(this)) {
+            throw new IllegalArgumentException("projection does not match the columns of " + table);
+        }
+        return new LazyRow(table, projection.target, null, null, this, projection.index);
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+        return layout.indexOf(name) >= 0;
+    }
+
+    @Override
+    public EtlColumn get(Object name) {
+        int idx = layout.indexOf(name);
+        return idx < 0 ? null : column(idx);
+    }
+
+    @Override
+    public EtlColumn put(String name, EtlColumn column) {
+        int idx = layout.indexOf(name);
+        if (idx < 0) {
+            throw new UnsupportedOperationException("column " + name + " does not exist in " + table);
+        }
+        EtlColumn previous = column(idx);
+        values[idx] = column;
+        return previous;
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return layout.keySet;
+    }
+
+    @Override
+    public Set<Entry<String, EtlColumn>> entrySet() {
+        return new AbstractSet<Entry<String, EtlColumn>>() {
+            @Override
+            public Iterator<Entry<String, EtlColumn>> iterator() {
+                return new Iterator<Entry<String, EtlColumn>>() {
+                    private int idx;
+
+                    @Override
+                    public boolean hasNext() {
+                        return idx < values.length;
+                    }
+
+                    @Override
+                    public Entry<String, EtlColumn> next() {
+                        if (idx >= values.length) {
+                            throw new NoSuchElementException();
+                        }
+                        int current = idx++;
+                        return new SimpleImmutableEntry<>(layout.names[current], column(current));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return values.length;
+            }
+        };
+    }
+
+    private EtlColumn column(int idx) {
+        EtlColumn column = values[idx];
+        if (column == null) {
+            if (parent != null) {
+                column = parent.column(source[idx]);
+                if (!layout.names[idx].equals(column.getName())) {
+                    column = column.copy();
+                    column.setName(layout.names[idx]);
+                }
+            } else {
+                int pos = source == null ? idx : source[idx];
+                column = after == null ? toEtlColumn(columns.get(pos)) : beforeColumn(idx, pos);
+            }
+            values[idx] = column;
+        }
+        return column;
+    }
+
+    /**
+     * 修改前資料: 只有修改的欄位取 before 的數值
+     */
+    private EtlColumn beforeColumn(int idx, int pos) {
+        if (after.columns.get(pos).getUpdated()) {
+            String name = layout.names[idx];
+            // 一般 (full row image) 前後欄位順序相同
+            if (pos < columns.size() && name.equals(columns.get(pos).getName())) {
+                return toEtlColumn(columns.get(pos));
+            }
+            for (CanalEntry.Column column : columns) {
+                if (name.equals(column.getName())) {
+                    return toEtlColumn(column);
+                }
+            }
+        }
+        return after.column(idx);
+    }
+
+    private EtlColumn toEtlColumn(CanalEntry.Column column) {
+        if (column.getIsNull()) {
+            return EtlColumn.builder()
+                    .name(column.getName())
+                    .key(column.getIsKey())
+                    .mysqlType(column.getMysqlType())
+                    .sqlType(column.getSqlType())
+                    .build();
+        }
+        return EtlColumn.lazy(table, column.getName(), column.getValue(), column.getIsKey(), column.getSqlType(),
+                column.getMysqlType());
+    }
+
+    private Object writeReplace() {
+        return new LinkedHashMap<>(this);
+    }
+
+    /**
+     * 欄位的移除或改名，由來源 layout 的欄位位置對應至新的 layout
+     */
+    public static class Projection {
+        private final Layout source;
+        private final Layout target;
+        private final int[] index;
+
+        private Projection(Layout source, Layout target, int[] index) {
+            this.source = source;
+            this.target = target;
+            this.index = index;
+        }
+
+        static Projection of(String table, Layout source, UnaryOperator<String> mapper) {
+            List<String> names = new ArrayList<>(source.names.length);
+            int[] index = new int[source.names.length];
+            for (int i = 0; i < source.names.length; i++) {
+                String name = mapper.apply(source.names[i]);
+                if (name != null) {
+                    index[names.size()] = i;
+                    names.add(name);
+                }
+            }
+            Layout target = new Layout(names);
+            if (target.keySet.size() != names.size()) {
+                throw new IllegalArgumentException("duplicate column names after projection of " + table + ": " + names);
+            }
+            return new Projection(source, target, Arrays.copyOf(index, names.size()));
+        }
+
+        public boolean appliesTo(LazyRow row) {
+            return row.layout == source;
+        }
+
+        /**
+         * 是否可套用於 RowData 的欄位清單
+         */
+        boolean matches(List<CanalEntry.Column> columns) {
+            return source.matches(columns);
+        }
+
+        /**
+         * 是否保留全部欄位且名稱不變
+         */
+        boolean isIdentity() {
+            return index.length == source.names.length && target.keySet.equals(source.keySet);
+        }
+    }
+
+    /**
+     * 欄位名稱及位置，同一個 binlog 事件中的資料列共用
+     */
+    static class Layout {
+        private final String[] names;
+        private final Map<String, Integer> index;
+        private final Set<String> keySet;
+
+        Layout(List<CanalEntry.Column> columns) {
+            this(columns.stream().map(CanalEntry.Column::getName).toArray(String[]::new));
+        }
+
+        Layout(Collection<String> names) {
+            this(names.toArray(new String[0]));
+        }
+
+        private Layout(String[] names) {
+            this.names = names;
+            this.index = new HashMap<>(names.length * 2);
+            for (int i = 0; i < names.length; i++) {
+                index.put(names[i], i);
+            }
+            this.keySet = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(names)));
+        }
+
+        boolean matches(List<CanalEntry.Column> columns) {
+            if (columns.size() != names.length) {
+                return false;
+            }
+            for (int i = 0; i < names.length; i++) {
+                if (!names[i].equals(columns.get(i).getName())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int indexOf(Object name) {
+            Integer idx = index.get(name);
+            return idx == null ? -1 : idx;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.datacenter.canal.select.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.StringUtils;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * 依 canal.filter 取得各資料表的 {@link TableFilter}，每個資料表只在第一次出現時比對設定
+ */
+@Slf4j
+@Component
+public class MessageFilter implements InitializingBean {
+
+    @Autowired
+    FilterProperties filterProperties;
+
+    private final List<Pattern> tablePatterns = new ArrayList<>();
+    private final Map<String, TableFilter> filters = new ConcurrentHashMap<>();
+
+    @Override
+    public void afterPropertiesSet() {
+        for (FilterProperties.Table table : filterProperties.getTables()) {
+            // 編譯一次以提早發現設定錯誤
+            TableFilter.compile(table);
+            tablePatterns.add(tablePattern(table.getTable()));
+        }
+    }
+
+    public TableFilter forTable(String database, String table) {
+        return filters.computeIfAbsent(database + "." + table, this::compile);
+    }
+
+    private TableFilter compile(String table) {
+        List<FilterProperties.Table> tables = filterProperties.getTables();
+        for (int i = 0; i < tables.size(); i++) {
+            if (tablePatterns.get(i).matcher(table).matches()) {
+                return TableFilter.compile(tables.get(i));
+            }
+        }
+        return filterProperties.isOnlyListed() ? TableFilter.SKIP : TableFilter.NONE;
+    }
+
+    /**
+     * only-listed 時將 canal.subscribe 縮小為設定的資料表，server 端即不傳送其他資料表；
+     * 未使用萬用字元且不在原本 subscribe 範圍內的資料表會被忽略
+     */
+    public String subscribe(String subscribe) {
+        if (!filterProperties.isOnlyListed() || filterProperties.getTables().isEmpty()) {
+            return subscribe;
+        }
+        List<Pattern> subscribed = new ArrayList<>();
+        if (!StringUtils.isEmpty(subscribe)) {
+            for (String regex : subscribe.split(",")) {
+                subscribed.add(Pattern.compile(regex.trim(), Pattern.CASE_INSENSITIVE));
+            }
+        }
+
+        List<String> narrowed = new ArrayList<>();
+        for (FilterProperties.Table table : filterProperties.getTables()) {
+            String name = table.getTable();
+            if (!name.contains("*") && !subscribed.isEmpty()
+                    && subscribed.stream().noneMatch(pattern -> pattern.matcher(name).matches())) {
+                log.warn("canal.filter table {} is not subscribed by {}, ignored", name, subscribe);
+                continue;
+            }
+            narrowed.add(canalRegex(name));
+        }
+        if (narrowed.isEmpty()) {
+            return subscribe;
+        }
+        String result = String.join(",", narrowed);
+        log.info("canal.subscribe narrowed by canal.filter: {} -> {}", subscribe, result);
+        return result;
+    }
+
+    /**
+     * 資料表名稱的萬用字元 (*) 轉為 regex
+     */
+    public static Pattern tablePattern(String table) {
+        String[] parts = table.split("\\*", -1);
+        StringBuilder regex = new StringBuilder(Pattern.quote(parts[0]));
+        for (int i = 1; i < parts.length; i++) {
+            regex.append(".*").append(Pattern.quote(parts[i]));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * 轉為 canal filter 的 regex (perl5 語法，不支援 \Q \E)
+     */
+    private static String canalRegex(String table) {
+        String[] parts = table.split("\\*", -1);
+        StringBuilder regex = new StringBuilder(parts[0].replaceAll("(\\W)", "\\\\$1"));
+        for (int i = 1; i < parts.length; i++) {
+            regex.append(".*").append(parts[i].replaceAll("(\\W)", "\\\\$1"));
+        }
+        return regex.toString();
+    }
+}
@@ -0,0 +1,185 @@
+package com.datacenter.canal.select.support;
+
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.alibaba.otter.canal.protocol.Message;
+import com.datacenter.canal.load.support.Checkpoint;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 將抓取的 canal Message (原始 protobuf entry 及 batch id) 附加寫入 memory-mapped 的 segment 檔，供之後重播
+ * <p>
+ * segment 檔 (segment-NNNNNNNNNN.seg) 預先配置固定大小，每筆紀錄格式:
+ * [int 長度][long batchId][int entry 數]{[int entry 長度][Entry bytes]}*，長度不含自身的 4 bytes，
+ * 長度最後才寫入，長度為 0 表示資料結束 (程序中斷時未寫完的紀錄會被忽略)
+ * <p>
+ * 每個 segment 有對應的索引檔 (.idx)，每筆紀錄一個項目:
+ * [int 紀錄位置][long batchId][UTF 第一個 entry 的 binlog 檔名][long 位置][UTF 最後一個 entry 的 binlog 檔名][long 位置]
+ * <p>
+ * rollback 後 server 重新傳送的 entry，binlog 位置不大於已寫入的位置時略過，不會重複寫入
+ */
+@Slf4j
+public class MessageSpool implements Closeable {
+
+    static final String PREFIX = "segment-";
+    static final String SEGMENT_SUFFIX = ".seg";
+    static final String INDEX_SUFFIX = ".idx";
+    static final int RECORD_HEADER = 4 + 8 + 4;
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final boolean force;
+
+    private long nextSegment;
+    private MappedByteBuffer segment;
+    private FileChannel index;
+    private Checkpoint lastPosition; // 已寫入的最後一個 entry 位置
+
+    /**
+     * @param segmentBytes 單一 segment 檔大小，紀錄超過時該 segment 以紀錄大小配置
+     * @param force        每筆紀錄寫入後是否 fsync
+     */
+    public MessageSpool(Path dir, int segmentBytes, boolean force) throws IOException {
+        this.dir = dir.toAbsolutePath();
+        this.segmentBytes = segmentBytes;
+        this.force = force;
+        Files.createDirectories(this.dir);
+
+        // 重新啟動時一律從新的 segment 開始寫，不修改既有檔案
+        List<Path> segments = MessageSpoolReader.segments(this.dir);
+        if (!segments.isEmpty()) {
+            Path last = segments.get(segments.size() - 1);
+            this.nextSegment = MessageSpoolReader.segmentNumber(last) + 1;
+            List<MessageSpoolReader.IndexEntry> entries = MessageSpoolReader.readIndex(last);
+            if (!entries.isEmpty()) {
+                this.lastPosition = entries.get(entries.size() - 1).getLastPosition();
+            }
+        }
+        log.info("MessageSpool dir: {}, segment: {}MB, next segment: {}, last position: {}", this.dir,
+                segmentBytes >> 20, nextSegment, lastPosition);
+    }
+
+    /**
+     * 寫入一個 batch，已寫入過的 entry 會略過
+     */
+    public synchronized void append(long batchId, Message message) throws IOException {
+        List<byte[]> entries = new ArrayList<>(message.getEntries().size());
+        Checkpoint first = null;
+        Checkpoint last = null;
+        int length = RECORD_HEADER - 4;
+        for (CanalEntry.Entry entry : message.getEntries()) {
+            Checkpoint position = position(entry);
+            if (lastPosition != null && position != null && position.compareTo(lastPosition) <= 0) {
+                continue;
+            }
+            if (position != null) {
+                first = first == null ? position : first;
+                last = position;
+            }
+            byte[] bytes = entry.toByteArray();
+            entries.add(bytes);
+            length += 4 + bytes.length;
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        // 保留結尾 4 bytes 作為結束標記
+        if (segment == null || segment.remaining() < 4 + length + 4) {
+            roll(4 + length + 4);
+        }
+
+        int recordPosition = segment.position();
+        segment.position(recordPosition + 4);
+        segment.putLong(batchId);
+        segment.putInt(entries.size());
+        for (byte[] bytes : entries) {
+            segment.putInt(bytes.length);
+            segment.put(bytes);
+        }
+        segment.putInt(recordPosition, length);
+        if (force) {
+            segment.force();
+        }
+
+        writeIndex(recordPosition, batchId, first, last);
+        if (last != null) {
+            lastPosition = last;
+        }
+    }
+
+    private void writeIndex(int recordPosition, long batchId, Checkpoint first, Checkpoint last) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(recordPosition);
+            out.writeLong(batchId);
+            out.writeUTF(first == null ? "" : first.getLogfileName());
+            out.writeLong(first == null ? -1 : first.getLogfileOffset());
+            out.writeUTF(last == null ? "" : last.getLogfileName());
+            out.writeLong(last == null ? -1 : last.getLogfileOffset());
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        while (buffer.hasRemaining()) {
+            index.write(buffer);
+        }
+        if (force) {
+            index.force(false);
+        }
+    }
+
+    /**
+     * 切換至新的 segment
+     */
+    private void roll(int minBytes) throws IOException {
+        closeSegment();
+
+        Path segmentFile = dir.resolve(String.format("%s%010d%s", PREFIX, nextSegment, SEGMENT_SUFFIX));
+        Path indexFile = dir.resolve(String.format("%s%010d%s", PREFIX, nextSegment, INDEX_SUFFIX));
+        try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // 關閉 channel 後 mapping 仍有效
+            this.segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentBytes, minBytes));
+        }
+        this.index = FileChannel.open(indexFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        nextSegment++;
+        log.info("MessageSpool roll to segment: {}", segmentFile.getFileName());
+    }
+
+    private void closeSegment() throws IOException {
+        if (segment != null) {
+            segment.force();
+            segment = null;
+        }
+        if (index != null) {
+            index.force(false);
+            index.close();
+            index = null;
+        }
+    }
+
+    static Checkpoint position(CanalEntry.Entry entry) {
+        CanalEntry.Header header = entry.getHeader();
+        if (header == null || header.getLogfileName().isEmpty()) {
+            return null;
+        }
+        return new Checkpoint(header.getLogfileName(), header.getLogfileOffset());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeSegment();
+    }
+}
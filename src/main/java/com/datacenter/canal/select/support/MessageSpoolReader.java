@@ -0,0 +1,204 @@
+package com.datacenter.canal.select.support;
+
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.alibaba.otter.canal.protocol.Message;
+import com.datacenter.canal.load.support.Checkpoint;
+import com.google.protobuf.InvalidProtocolBufferException;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 依序讀取 {@link MessageSpool} 寫入的 segment 檔，可指定 binlog 位置範圍
+ * <p>
+ * 以索引檔找到第一筆包含起始位置的紀錄，範圍外的 entry 會被略過；
+ * 索引缺少結尾的項目時 (程序中斷)，仍會讀取 segment 中已完整寫入的紀錄
+ */
+@Slf4j
+public class MessageSpoolReader {
+
+    private static final int RECORD_BODY_MIN = MessageSpool.RECORD_HEADER - 4;
+
+    private final List<Path> segments;
+    private final Checkpoint from; // null 表示從頭開始
+    private final Checkpoint to; // null 表示讀到結尾
+
+    private int segmentIdx;
+    private MappedByteBuffer buffer;
+    private boolean finished;
+
+    public MessageSpoolReader(Path dir, Checkpoint from, Checkpoint to) throws IOException {
+        this.segments = segments(dir.toAbsolutePath());
+        this.from = from;
+        this.to = to;
+        seek();
+    }
+
+    /**
+     * 讀取下一個 batch，沒有資料時回傳 null
+     */
+    public Record next() throws IOException {
+        while (!finished) {
+            if (buffer == null) {
+                if (segmentIdx >= segments.size()) {
+                    finished = true;
+                    break;
+                }
+                buffer = map(segments.get(segmentIdx), 0);
+            }
+
+            int length = buffer.remaining() >= 4 ? buffer.getInt() : 0;
+            if (length < RECORD_BODY_MIN || length > buffer.remaining()) {
+                // segment 結束
+                buffer = null;
+                segmentIdx++;
+                continue;
+            }
+
+            long batchId = buffer.getLong();
+            int count = buffer.getInt();
+            List<CanalEntry.Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                CanalEntry.Entry entry = parse(bytes);
+                Checkpoint position = MessageSpool.position(entry);
+                if (position != null && from != null && position.compareTo(from) < 0) {
+                    continue;
+                }
+                if (position != null && to != null && position.compareTo(to) > 0) {
+                    finished = true;
+                    break;
+                }
+                entries.add(entry);
+            }
+
+            if (!entries.isEmpty()) {
+                return new Record(batchId, new Message(batchId, entries));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 以索引找到第一筆最後位置不小於起始位置的紀錄
+     */
+    private void seek() throws IOException {
+        if (from == null || segments.isEmpty()) {
+            return;
+        }
+
+        for (int i = 0; i < segments.size(); i++) {
+            for (IndexEntry entry : readIndex(segments.get(i))) {
+                if (entry.getLastPosition() != null && entry.getLastPosition().compareTo(from) >= 0) {
+                    segmentIdx = i;
+                    buffer = map(segments.get(i), entry.getPosition());
+                    log.info("MessageSpoolReader seek {} to segment: {}, position: {}", from,
+                            segments.get(i).getFileName(), entry.getPosition());
+                    return;
+                }
+            }
+        }
+
+        // 索引中沒有符合的紀錄，可能在最後一個 segment 未寫入索引的部分
+        Path last = segments.get(segments.size() - 1);
+        List<IndexEntry> entries = readIndex(last);
+        segmentIdx = segments.size() - 1;
+        buffer = map(last, entries.isEmpty() ? 0 : entries.get(entries.size() - 1).getPosition());
+    }
+
+    private static CanalEntry.Entry parse(byte[] bytes) throws IOException {
+        try {
+            return CanalEntry.Entry.parseFrom(bytes);
+        } catch (InvalidProtocolBufferException e) {
+            throw new IOException("spool entry is corrupted", e);
+        }
+    }
+
+    private static MappedByteBuffer map(Path segment, int position) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.position(position);
+            return buffer;
+        }
+    }
+
+    /**
+     * 依編號排序的 segment 檔
+     */
+    static List<Path> segments(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(MessageSpool.PREFIX) && name.endsWith(MessageSpool.SEGMENT_SUFFIX);
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    static long segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(MessageSpool.PREFIX.length(), name.length() - MessageSpool.SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * 讀取 segment 的索引，結尾不完整的項目會被忽略
+     */
+    static List<IndexEntry> readIndex(Path segment) throws IOException {
+        String name = segment.getFileName().toString();
+        Path indexFile = segment.resolveSibling(
+                name.substring(0, name.length() - MessageSpool.SEGMENT_SUFFIX.length()) + MessageSpool.INDEX_SUFFIX);
+        List<IndexEntry> entries = new ArrayList<>();
+        if (!Files.exists(indexFile)) {
+            return entries;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            while (true) {
+                int position = in.readInt();
+                long batchId = in.readLong();
+                Checkpoint first = checkpoint(in.readUTF(), in.readLong());
+                Checkpoint last = checkpoint(in.readUTF(), in.readLong());
+                entries.add(new IndexEntry(position, batchId, first, last));
+            }
+        } catch (EOFException e) {
+            return entries;
+        }
+    }
+
+    private static Checkpoint checkpoint(String logfileName, long logfileOffset) {
+        return logfileName.isEmpty() ? null : new Checkpoint(logfileName, logfileOffset);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Record {
+        private final long batchId;
+        private final Message message;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    static class IndexEntry {
+        private final int position;
+        private final long batchId;
+        private final Checkpoint firstPosition;
+        private final Checkpoint lastPosition;
+    }
+}
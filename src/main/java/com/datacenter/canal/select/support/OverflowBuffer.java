@@ -0,0 +1,463 @@
+package com.datacenter.canal.select.support;
+
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.alibaba.otter.canal.protocol.Message;
+import com.datacenter.canal.process.ProcessService;
+import com.datacenter.canal.process.support.EtlBatch;
+import com.google.protobuf.InvalidProtocolBufferException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * CanalClient 與 ProcessService 之間的 FIFO 緩衝，目標庫變慢時仍可全速從 canal server 抓取
+ * <p>
+ * 記憶體中 batch 的預估大小超過上限後，之後的 batch 依序寫入磁碟 (overflow-NNNNNNNNNN.dat)，
+ * 直到磁碟上的 batch 全部處理完畢。寫入磁碟並 fsync 的 batch 即可 ack (仍依 batch id 順序)，
+ * 由背景線程依序讀回並交由 ProcessService 處理；留在記憶體的 batch 則於處理完成後才 ack
+ * <p>
+ * 處理失敗時於本機重試 (已 ack 的 batch 無法由 server 重新傳送)；重新連線 rollback 時，
+ * 捨棄尾端尚未 ack 的 batch，由 server 重新傳送。已處理的位置記錄於 overflow.cursor，
+ * 重新啟動時先處理磁碟上剩餘的 batch
+ * <p>
+ * 磁碟紀錄格式: [int 長度][long batchId][int entry 數]{[int entry 長度][Entry bytes]}*，長度不含自身的 4 bytes
+ */
+@Slf4j
+public class OverflowBuffer implements Closeable {
+
+    private static final String PREFIX = "overflow-";
+    private static final String SUFFIX = ".dat";
+    private static final String CURSOR_FILE = "overflow.cursor";
+
+    // 以序列化的 RowChange 大小估計轉換後 EtlMessage 資料列的記憶體用量 (UTF-16 字串、物件標頭及 Map)
+    private static final int ROW_EXPANSION = 4;
+    private static final int ENTRY_OVERHEAD = 512;
+
+    private final Path dir;
+    private final long memoryBudget;
+    private final long segmentBytes;
+    private final int window;
+    private final long retryDelayMillis;
+    private final ProcessService processService;
+
+    private final Deque<Item> queued = new ArrayDeque<>(); // 尚未交給 ProcessService
+    private final Deque<Item> inFlight = new ArrayDeque<>(); // 處理中，依序完成後移除
+    private final Object feedLock = new Object(); // 交給 ProcessService 與 rollback 互斥
+    private long memoryBytes;
+    private int diskItems;
+
+    private long writeSegment = -1;
+    private FileChannel writer;
+    private Thread drainer;
+
+    /**
+     * @param memoryBudget 記憶體中 batch 預估大小的上限
+     * @param segmentBytes 單一磁碟檔案超過此大小後換新檔
+     * @param window       同時交給 ProcessService 處理的 batch 數量上限
+     */
+    public OverflowBuffer(Path dir, long memoryBudget, long segmentBytes, int window, long retryDelayMillis,
+                          ProcessService processService) throws IOException {
+        this.dir = dir.toAbsolutePath();
+        this.memoryBudget = memoryBudget;
+        this.segmentBytes = segmentBytes;
+        this.window = window;
+        this.retryDelayMillis = retryDelayMillis;
+        this.processService = processService;
+        Files.createDirectories(this.dir);
+        recover();
+        log.info("OverflowBuffer dir: {}, memory budget: {}MB, recovered batches: {}", this.dir, memoryBudget >> 20,
+                diskItems);
+    }
+
+    public void start() {
+        drainer = new Thread(this::drain, "canal-overflow");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * 放入 batch，回傳交給 AckWindow 的 batch，完成時即可 ack
+     */
+    public synchronized EtlBatch offer(long batchId, Message message) throws IOException {
+        EtlBatch handle = new EtlBatch(batchId, message);
+        handle.setMessage(null);
+        Item item = new Item(batchId, handle, estimateBytes(message));
+
+        // 磁碟上仍有資料時，之後的 batch 也需寫入磁碟以維持順序
+        if (diskItems > 0 || memoryBytes + item.bytes > memoryBudget) {
+            spill(item, message);
+            diskItems++;
+            handle.complete();
+        } else {
+            item.message = message;
+            memoryBytes += item.bytes;
+        }
+
+        queued.addLast(item);
+        notifyAll();
+        return handle;
+    }
+
+    /**
+     * 重新連線時呼叫，捨棄尾端尚未 ack 的 batch (server 會重新傳送)，處理中的 batch 不再處理
+     */
+    public void rollback() throws IOException {
+        synchronized (feedLock) {
+            synchronized (this) {
+                Item firstDropped = null;
+                int dropped = 0;
+                for (Deque<Item> items : Arrays.asList(queued, inFlight)) {
+                    while (!items.isEmpty() && !items.peekLast().isAcked()) {
+                        Item item = items.pollLast();
+                        if (item.isSpilled()) {
+                            diskItems--;
+                            firstDropped = item;
+                        } else {
+                            memoryBytes -= item.bytes;
+                        }
+                        dropped++;
+                    }
+                    if (!items.isEmpty()) {
+                        break;
+                    }
+                }
+
+                if (firstDropped != null) {
+                    truncate(firstDropped.segment, firstDropped.offset);
+                }
+                log.warn("OverflowBuffer rollback, dropped unacked batches: {}, remaining: {}", dropped,
+                        queued.size() + inFlight.size());
+            }
+            processService.nextEpoch();
+        }
+    }
+
+    /**
+     * 背景線程，依序交給 ProcessService 並等待完成
+     */
+    private void drain() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                feed();
+                awaitHead();
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                log.error("OverflowBuffer drain error", e);
+                try {
+                    Thread.sleep(retryDelayMillis);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+            }
+        }
+        log.info("OverflowBuffer drain thread stopped");
+    }
+
+    private void feed() throws IOException, InterruptedException {
+        while (true) {
+            synchronized (feedLock) {
+                Item item;
+                synchronized (this) {
+                    if (queued.isEmpty() || inFlight.size() >= window) {
+                        return;
+                    }
+                    item = queued.pollFirst();
+                    inFlight.addLast(item);
+                }
+                try {
+                    // pipeline 已滿時阻塞
+                    Message message = item.message != null ? item.message : read(item);
+                    item.processing = processService.queue(item.batchId, message);
+                } catch (IOException | InterruptedException e) {
+                    synchronized (this) {
+                        inFlight.pollLast();
+                        queued.addFirst(item);
+                    }
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void awaitHead() throws InterruptedException, IOException {
+        Item head;
+        synchronized (this) {
+            head = inFlight.peekFirst();
+            if (head == null) {
+                if (queued.isEmpty()) {
+                    wait(1000);
+                }
+                return;
+            }
+        }
+
+        // 逾時後回到 feed，補足處理中的 batch
+        EtlBatch processing = head.processing;
+        if (!processing.await(100, TimeUnit.MILLISECONDS)) {
+            return;
+        }
+
+        if (processing.isFailed()) {
+            synchronized (feedLock) {
+                synchronized (this) {
+                    if (inFlight.peekFirst() != head) {
+                        return; // 已被 rollback 捨棄
+                    }
+                    log.warn("OverflowBuffer batch: {} failed, retry after {}ms", head.batchId, retryDelayMillis,
+                            processing.getCause());
+                    // 失敗的 batch 及之後已交出的 batch 重新處理
+                    while (!inFlight.isEmpty()) {
+                        queued.addFirst(inFlight.pollLast());
+                    }
+                }
+                processService.nextEpoch();
+            }
+            Thread.sleep(retryDelayMillis);
+            return;
+        }
+
+        synchronized (this) {
+            if (inFlight.peekFirst() != head) {
+                return;
+            }
+            inFlight.pollFirst();
+            if (head.isSpilled()) {
+                diskItems--;
+                saveCursor(head.segment, head.offset + head.length);
+            } else {
+                memoryBytes -= head.bytes;
+                head.message = null;
+                head.handle.complete();
+            }
+        }
+    }
+
+    private void spill(Item item, Message message) throws IOException {
+        if (writer == null || writer.size() >= segmentBytes) {
+            roll(writeSegment + 1);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.min(item.bytes / ROW_EXPANSION, Integer.MAX_VALUE - 8));
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0); // 長度，稍後回填
+            out.writeLong(item.batchId);
+            out.writeInt(message.getEntries().size());
+            for (CanalEntry.Entry entry : message.getEntries()) {
+                byte[] entryBytes = entry.toByteArray();
+                out.writeInt(entryBytes.length);
+                out.write(entryBytes);
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        buffer.putInt(0, buffer.remaining() - 4);
+        item.segment = writeSegment;
+        item.offset = writer.size();
+        item.length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            writer.write(buffer);
+        }
+        writer.force(false);
+    }
+
+    private Message read(Item item) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(item.length);
+        try (FileChannel channel = FileChannel.open(segmentFile(item.segment), StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, item.offset + buffer.position()) < 0) {
+                    throw new IOException("unexpected end of overflow file: " + segmentFile(item.segment));
+                }
+            }
+        }
+        buffer.flip();
+        buffer.getInt();
+        long batchId = buffer.getLong();
+        int count = buffer.getInt();
+        List<CanalEntry.Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] entryBytes = new byte[buffer.getInt()];
+            buffer.get(entryBytes);
+            try {
+                entries.add(CanalEntry.Entry.parseFrom(entryBytes));
+            } catch (InvalidProtocolBufferException e) {
+                throw new IOException("overflow entry is corrupted, batch: " + batchId, e);
+            }
+        }
+        return new Message(batchId, entries);
+    }
+
+    private void roll(long segment) throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+        writeSegment = segment;
+        writer = FileChannel.open(segmentFile(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * 捨棄指定位置之後的資料
+     */
+    private void truncate(long segment, long offset) throws IOException {
+        for (long i = writeSegment; i > segment; i--) {
+            Files.deleteIfExists(segmentFile(i));
+        }
+        roll(segment);
+        writer.truncate(offset);
+        writer.force(true);
+    }
+
+    /**
+     * 記錄已處理的位置，並刪除已處理完的檔案
+     */
+    private void saveCursor(long segment, long offset) throws IOException {
+        Path file = dir.resolve(CURSOR_FILE);
+        Path tmpFile = dir.resolve(CURSOR_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap((segment + " " + offset).getBytes(StandardCharsets.UTF_8)));
+            channel.force(true);
+        }
+        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        for (Path path : segments()) {
+            if (segmentNumber(path) < segment) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * 重新啟動時，從上次處理的位置讀取磁碟上剩餘的 batch，截斷未寫完的紀錄
+     */
+    private void recover() throws IOException {
+        long cursorSegment = -1;
+        long cursorOffset = 0;
+        Path cursorFile = dir.resolve(CURSOR_FILE);
+        if (Files.exists(cursorFile)) {
+            String[] tokens = new String(Files.readAllBytes(cursorFile), StandardCharsets.UTF_8).trim().split(" ");
+            cursorSegment = Long.parseLong(tokens[0]);
+            cursorOffset = Long.parseLong(tokens[1]);
+        }
+
+        for (Path path : segments()) {
+            long segment = segmentNumber(path);
+            if (segment < cursorSegment) {
+                Files.delete(path);
+                continue;
+            }
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long offset = segment == cursorSegment ? cursorOffset : 0;
+                ByteBuffer header = ByteBuffer.allocate(12);
+                while (offset < channel.size()) {
+                    header.clear();
+                    channel.read(header, offset);
+                    int length = header.getInt(0);
+                    if (header.position() < 12 || length < 12 || offset + 4 + length > channel.size()) {
+                        log.warn("OverflowBuffer truncate incomplete record, file: {}, offset: {}", path, offset);
+                        channel.truncate(offset);
+                        break;
+                    }
+                    Item item = new Item(header.getLong(4), null, 0);
+                    item.segment = segment;
+                    item.offset = offset;
+                    item.length = 4 + length;
+                    queued.addLast(item);
+                    diskItems++;
+                    offset += 4 + length;
+                }
+            }
+            writeSegment = Math.max(writeSegment, segment);
+        }
+
+        // 重新啟動後寫入新的檔案，不附加於既有檔案
+        writeSegment = Math.max(writeSegment, cursorSegment);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private Path segmentFile(long segment) {
+        return dir.resolve(String.format("%s%010d%s", PREFIX, segment, SUFFIX));
+    }
+
+    private static long segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * 預估 batch 轉換為 EtlMessage 後的記憶體用量
+     */
+    static long estimateBytes(Message message) {
+        long bytes = 0;
+        for (CanalEntry.Entry entry : message.getEntries()) {
+            bytes += ENTRY_OVERHEAD + (long) entry.getStoreValue().size() * ROW_EXPANSION;
+        }
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (drainer != null) {
+            drainer.interrupt();
+        }
+        synchronized (this) {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        }
+    }
+
+    private static class Item {
+        private final long batchId;
+        private final EtlBatch handle; // 交給 AckWindow 的 batch，重新啟動時復原的資料為 null (已 ack)
+        private final long bytes;
+        private Message message; // 寫入磁碟的 batch 為 null
+        private long segment = -1;
+        private long offset;
+        private int length;
+        private volatile EtlBatch processing; // ProcessService 中的 batch
+
+        Item(long batchId, EtlBatch handle, long bytes) {
+            this.batchId = batchId;
+            this.handle = handle;
+            this.bytes = bytes;
+        }
+
+        boolean isSpilled() {
+            return segment >= 0;
+        }
+
+        boolean isAcked() {
+            return handle == null || handle.isAcked();
+        }
+    }
+}
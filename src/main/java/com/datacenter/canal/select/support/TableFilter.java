@@ -0,0 +1,266 @@
+package com.datacenter.canal.select.support;
+
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.util.*;
+
+/**
+ * 單一資料表編譯後的過濾設定，於轉換 binlog 時套用：
+ * 條件以 RowData 的原始字串判斷，不成立的資料列不會建立；排除的欄位不會建立 EtlColumn
+ * <p>
+ * 欄位位置依 binlog 事件的欄位清單解析為 {@link Plan}，同一資料表的事件欄位相同時沿用
+ */
+@Slf4j
+public class TableFilter {
+
+    // 未設定過濾的資料表
+    public static final TableFilter NONE = new TableFilter(null, Collections.emptySet(), Collections.emptySet(),
+            new FilterProperties.Condition[0]);
+    // only-listed 時未設定的資料表，整個 entry 略過
+    public static final TableFilter SKIP = new TableFilter(null, Collections.emptySet(), Collections.emptySet(),
+            new FilterProperties.Condition[0]);
+
+    private final String table;
+    private final Set<String> include;
+    private final Set<String> exclude;
+    private final FilterProperties.Condition[] conditions;
+
+    private volatile Plan plan;
+
+    private TableFilter(String table, Set<String> include, Set<String> exclude,
+                        FilterProperties.Condition[] conditions) {
+        this.table = table;
+        this.include = include;
+        this.exclude = exclude;
+        this.conditions = conditions;
+    }
+
+    /**
+     * 編譯並檢查設定，設定錯誤時於啟動時拋出錯誤
+     */
+    static TableFilter compile(FilterProperties.Table config) {
+        if (config.getTable() == null) {
+            throw new IllegalArgumentException("canal.filter table requires table");
+        }
+        for (FilterProperties.Condition condition : config.getWhere()) {
+            if (condition.getColumn() == null || (condition.getEq() == null && condition.getIn() == null
+                    && condition.getMin() == null && condition.getMax() == null)) {
+                throw new IllegalArgumentException("canal.filter condition on " + config.getTable()
+                        + " requires column and one of eq, in, min, max");
+            }
+        }
+        return new TableFilter(config.getTable(), new HashSet<>(config.getInclude()),
+                new HashSet<>(config.getExclude()), config.getWhere().toArray(new FilterProperties.Condition[0]));
+    }
+
+    public boolean isSkip() {
+        return this == SKIP;
+    }
+
+    public boolean isNone() {
+        return this == NONE;
+    }
+
+    /**
+     * 取得欄位清單對應的 Plan，與上次的欄位相同時沿用
+     */
+    Plan plan(String tableName, List<CanalEntry.Column> columns) {
+        Plan current = plan;
+        if (current == null || !current.layout.matches(columns)) {
+            current = new Plan(tableName, columns);
+            plan = current;
+        }
+        return current;
+    }
+
+    /**
+     * 依欄位清單解析的欄位位置
+     */
+    class Plan {
+        private final LazyRow.Layout layout;
+        private final LazyRow.Projection projection; // 保留全部欄位時為 null
+        private final Bound[] bounds;
+
+        private Plan(String tableName, List<CanalEntry.Column> columns) {
+            this.layout = new LazyRow.Layout(columns);
+
+            Set<String> keys = new HashSet<>();
+            for (CanalEntry.Column column : columns) {
+                if (column.getIsKey()) {
+                    keys.add(column.getName());
+                }
+            }
+            LazyRow.Projection selected = LazyRow.Projection.of(tableName, layout, name ->
+                    keys.contains(name) || ((include.isEmpty() || include.contains(name)) && !exclude.contains(name))
+                            ? name : null);
+            this.projection = selected.isIdentity() ? null : selected;
+
+            this.bounds = new Bound[conditions.length];
+            for (int i = 0; i < conditions.length; i++) {
+                int position = layout.indexOf(conditions[i].getColumn());
+                if (position < 0) {
+                    log.warn("canal.filter {}: column {} not found in {}, no row will match", table,
+                            conditions[i].getColumn(), tableName);
+                    bounds[i] = new Bound(conditions[i], position, false);
+                } else {
+                    bounds[i] = new Bound(conditions[i], position, isNumeric(columns.get(position).getSqlType()));
+                }
+            }
+        }
+
+        boolean matches(List<CanalEntry.Column> columns) {
+            return layout.matches(columns);
+        }
+
+        LazyRow.Projection getProjection() {
+            return projection;
+        }
+
+        /**
+         * 資料列是否符合所有條件
+         */
+        boolean accept(List<CanalEntry.Column> columns) {
+            for (Bound bound : bounds) {
+                if (!bound.test(columns)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * update 修改前的資料列是否符合所有條件，條件欄位未修改或不在修改前資料中 (minimal row image) 時取修改後的數值
+         */
+        boolean acceptBefore(List<CanalEntry.Column> after, List<CanalEntry.Column> before) {
+            for (Bound bound : bounds) {
+                if (!bound.testBefore(after, before)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static boolean isNumeric(int sqlType) {
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+            case Types.FLOAT:
+            case Types.REAL:
+            case Types.DOUBLE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 已解析欄位位置及比較方式的條件，數值欄位的比較值預先轉為 BigDecimal
+     */
+    private static class Bound {
+        private final String name;
+        private final int position;
+        private final boolean numeric;
+        private final Comparable<Object> eq;
+        private final Set<Object> in;
+        private final Comparable<Object> min;
+        private final Comparable<Object> max;
+
+        private Bound(FilterProperties.Condition condition, int position, boolean numeric) {
+            if (numeric && !isNumber(condition)) {
+                log.warn("canal.filter condition on numeric column {} is not a number, compare as string",
+                        condition.getColumn());
+                numeric = false;
+            }
+            this.name = condition.getColumn();
+            this.position = position;
+            this.numeric = numeric;
+            this.eq = value(condition.getEq(), numeric);
+            this.min = value(condition.getMin(), numeric);
+            this.max = value(condition.getMax(), numeric);
+            if (condition.getIn() == null) {
+                this.in = null;
+            } else {
+                this.in = new HashSet<>();
+                for (String value : condition.getIn()) {
+                    in.add(value(value, numeric));
+                }
+            }
+        }
+
+        private static boolean isNumber(FilterProperties.Condition condition) {
+            List<String> values = new ArrayList<>(Arrays.asList(condition.getEq(), condition.getMin(), condition.getMax()));
+            if (condition.getIn() != null) {
+                values.addAll(condition.getIn());
+            }
+            try {
+                for (String value : values) {
+                    if (value != null) {
+                        new BigDecimal(value);
+                    }
+                }
+                return true;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Comparable<Object> value(String value, boolean numeric) {
+            if (value == null) {
+                return null;
+            }
+            return (Comparable<Object>) (Comparable<?>) (numeric ? new BigDecimal(value).stripTrailingZeros() : value);
+        }
+
+        boolean test(List<CanalEntry.Column> columns) {
+            return position >= 0 && test(columns.get(position));
+        }
+
+        boolean testBefore(List<CanalEntry.Column> after, List<CanalEntry.Column> before) {
+            if (position < 0) {
+                return false;
+            }
+            CanalEntry.Column column = after.get(position);
+            if (column.getUpdated()) {
+                // 一般 (full row image) 前後欄位順序相同
+                if (position < before.size() && name.equals(before.get(position).getName())) {
+                    column = before.get(position);
+                } else {
+                    for (CanalEntry.Column beforeColumn : before) {
+                        if (name.equals(beforeColumn.getName())) {
+                            column = beforeColumn;
+                            break;
+                        }
+                    }
+                }
+            }
+            return test(column);
+        }
+
+        private boolean test(CanalEntry.Column column) {
+            if (column.getIsNull()) {
+                return false;
+            }
+            Comparable<Object> value;
+            try {
+                value = value(column.getValue(), numeric);
+            } catch (NumberFormatException e) {
+                // 數值欄位的原始字串無法轉換 (ex: 空字串)，視為條件不成立
+                log.warn("canal.filter column {} value '{}' is not a number, row not matched", name, column.getValue());
+                return false;
+            }
+            return (eq == null || eq.compareTo(value) == 0)
+                    && (in == null || in.contains(value))
+                    && (min == null || min.compareTo(value) <= 0)
+                    && (max == null || max.compareTo(value) >= 0);
+        }
+    }
+}
@@ -1,45 +1,72 @@
 package com.datacenter.canal.transform;
 
-import com.datacenter.canal.select.support.EtlColumn;
 import com.datacenter.canal.select.support.EtlMessage;
+import com.datacenter.canal.select.support.MessageFilter;
+import com.datacenter.canal.transform.support.TablePlan;
+import com.datacenter.canal.transform.support.TransformProperties;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
+/**
+ * 依 canal.transform.rules 轉換欄位，規則於啟動時檢查並依資料表編譯為 {@link TablePlan}，
+ * 每個資料表只在第一次出現時比對規則，之後直接套用
+ */
 @Slf4j
 @Service
-public class TransformService {
+public class TransformService implements InitializingBean {
 
+    @Autowired
+    TransformProperties transformProperties;
+
+    private final List<Pattern> tablePatterns = new ArrayList<>();
+    private final Map<String, TablePlan> plans = new ConcurrentHashMap<>();
+
+    @Override
+    public void afterPropertiesSet() {
+        for (TransformProperties.Rule rule : transformProperties.getRules()) {
+            if (rule.getColumn() == null || rule.getType() == null) {
+                throw new IllegalArgumentException("canal.transform rule requires column and type");
+            }
+            tablePatterns.add(MessageFilter.tablePattern(rule.getTable()));
+        }
+        // 編譯一次以提早發現參數錯誤
+        TablePlan.compile(transformProperties.getRules());
+        log.info("Transform rules: {}", transformProperties.getRules().size());
+    }
+
+    /**
+     * 回傳轉換後的 EtlMessage，不修改傳入的 messages (重試及 dead letter 使用轉換前的資料)
+     */
     public List<EtlMessage> transform(List<EtlMessage> messages) {
         log.debug("do transform");
-        Set<String> columnMaskedSet = new HashSet<>();
-        columnMaskedSet.add("password");
-        messages.stream()
-//                .flatMap(message -> Stream.concat(message.getData().stream(), message.getOld().stream()))
-                .flatMap(message -> message.getData().stream())
-                .flatMap(map -> map.values().stream())
-                .map(column -> {
-                    if (columnMaskedSet.contains(column.getName())) {
-                        column.setValue(columnValMasked("*", column.getValue().toString().length()));
-                    }
-                    return column;
-                })
-                .collect(Collectors.toList());
-        return messages;
+        List<EtlMessage> result = new ArrayList<>(messages.size());
+        for (EtlMessage message : messages) {
+            if (Boolean.TRUE.equals(message.getIsDdl()) || message.getData() == null) {
+                result.add(message);
+                continue;
+            }
+            TablePlan plan = plans.computeIfAbsent(message.getDatabase() + "." + message.getTable(), this::compile);
+            result.add(plan.isEmpty() ? message : plan.apply(message));
+        }
+        return result;
     }
 
-    private static String columnValMasked(String str, int count){
-        StringBuilder stringBuilder = new StringBuilder();
-        for (int i = 0; i < count; i++) {
-            stringBuilder.append(str);
+    private TablePlan compile(String table) {
+        List<TransformProperties.Rule> rules = transformProperties.getRules();
+        List<TransformProperties.Rule> matched = new ArrayList<>();
+        for (int i = 0; i < rules.size(); i++) {
+            if (tablePatterns.get(i).matcher(table).matches()) {
+                matched.add(rules.get(i));
+            }
         }
-
-        return stringBuilder.toString();
+        return TablePlan.compile(matched);
     }
 }
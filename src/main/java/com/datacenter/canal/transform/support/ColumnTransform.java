@@ -0,0 +1,149 @@
+package com.datacenter.canal.transform.support;
+
+import com.datacenter.canal.select.support.EtlColumn;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.JDBCType;
+import java.sql.Types;
+import java.util.Arrays;
+
+/**
+ * 單一欄位數值的轉換，於啟動時由規則編譯，之後直接套用
+ */
+@FunctionalInterface
+public interface ColumnTransform {
+
+    void apply(EtlColumn column);
+
+    /**
+     * 編譯數值轉換規則 (mask, hash, truncate, constant, cast)，參數錯誤時於啟動時拋出錯誤
+     */
+    static ColumnTransform compile(TransformProperties.Rule rule) {
+        String param = rule.getParam();
+        switch (rule.getType()) {
+            case MASK:
+                return mask(param == null ? 0 : Integer.parseInt(param));
+            case HASH:
+                return hash(param == null ? "" : param);
+            case TRUNCATE:
+                return truncate(Integer.parseInt(requireParam(rule)));
+            case CONSTANT:
+                return column -> column.setValue(param);
+            case CAST:
+                return cast(requireParam(rule));
+            default:
+                throw new IllegalArgumentException("not a value transform: " + rule.getType());
+        }
+    }
+
+    static String requireParam(TransformProperties.Rule rule) {
+        if (rule.getParam() == null || rule.getParam().isEmpty()) {
+            throw new IllegalArgumentException("canal.transform rule " + rule.getType() + " on " + rule.getTable()
+                    + "." + rule.getColumn() + " requires param");
+        }
+        return rule.getParam();
+    }
+
+    /**
+     * 以 * 取代，保留結尾 visible 個字元
+     */
+    static ColumnTransform mask(int visible) {
+        return column -> {
+            Object value = column.getValue();
+            if (value == null) {
+                return;
+            }
+            String str = value.toString();
+            int masked = Math.max(str.length() - visible, 0);
+            char[] chars = new char[str.length()];
+            Arrays.fill(chars, 0, masked, '*');
+            str.getChars(masked, str.length(), chars, masked);
+            column.setValue(new String(chars));
+        };
+    }
+
+    /**
+     * 加上 salt 後的 SHA-256 (hex)
+     */
+    static ColumnTransform hash(String salt) {
+        ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        byte[] saltBytes = salt.getBytes(StandardCharsets.UTF_8);
+        char[] hex = "0123456789abcdef".toCharArray();
+        return column -> {
+            Object value = column.getValue();
+            if (value == null) {
+                return;
+            }
+            MessageDigest digest = digests.get();
+            digest.update(saltBytes);
+            byte[] hashed = digest.digest(value instanceof byte[] ? (byte[]) value
+                    : value.toString().getBytes(StandardCharsets.UTF_8));
+            char[] chars = new char[hashed.length * 2];
+            for (int i = 0; i < hashed.length; i++) {
+                chars[i * 2] = hex[(hashed[i] >> 4) & 0xf];
+                chars[i * 2 + 1] = hex[hashed[i] & 0xf];
+            }
+            column.setValue(new String(chars));
+        };
+    }
+
+    /**
+     * 字串超過長度時截斷，其他型別不變
+     */
+    static ColumnTransform truncate(int length) {
+        return column -> {
+            Object value = column.getValue();
+            if (value instanceof String && ((String) value).length() > length) {
+                column.setValue(((String) value).substring(0, length));
+            }
+        };
+    }
+
+    /**
+     * 轉換為指定的 JDBC 型別 (ex: varchar, bigint, decimal)，同時修改 sqlType
+     */
+    static ColumnTransform cast(String type) {
+        int sqlType = JDBCType.valueOf(type.toUpperCase()).getVendorTypeNumber();
+        switch (sqlType) {
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+                return cast(sqlType, Object::toString);
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return cast(sqlType, value -> new BigDecimal(value.toString()).intValueExact());
+            case Types.BIGINT:
+                return cast(sqlType, value -> new BigDecimal(value.toString()).longValueExact());
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return cast(sqlType, value -> new BigDecimal(value.toString()));
+            case Types.FLOAT:
+            case Types.REAL:
+            case Types.DOUBLE:
+                return cast(sqlType, value -> Double.valueOf(value.toString()));
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return cast(sqlType, value -> "1".equals(value.toString()) || Boolean.parseBoolean(value.toString()));
+            default:
+                throw new IllegalArgumentException("unsupported cast type: " + type);
+        }
+    }
+
+    static ColumnTransform cast(int sqlType, java.util.function.Function<Object, Object> converter) {
+        return column -> {
+            Object value = column.getValue();
+            column.setSqlType(sqlType);
+            column.setValue(value == null ? null : converter.apply(value));
+        };
+    }
+}
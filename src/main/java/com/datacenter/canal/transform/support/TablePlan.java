@@ -0,0 +1,172 @@
+package com.datacenter.canal.transform.support;
+
+import com.datacenter.canal.select.support.EtlColumn;
+import com.datacenter.canal.select.support.EtlMessage;
+import com.datacenter.canal.select.support.LazyRow;
+
+import java.util.*;
+
+/**
+ * 單一資料表編譯後的轉換計畫：數值轉換依欄位名稱陣列逐一套用 (同一欄位依設定順序)，
+ * drop / rename 則以 {@link LazyRow.Projection} 依欄位位置建立新的資料列檢視
+ * <p>
+ * 不修改來源 EtlMessage (重試及 dead letter 需要轉換前的資料)，轉換的欄位為複本；
+ * 主鍵欄位不會被移除 (load 需要)，改名時 pkNames 一併修改
+ */
+public class TablePlan {
+
+    public static final TablePlan EMPTY = new TablePlan(new String[0], new ColumnTransform[0][],
+            Collections.emptyMap(), Collections.emptySet());
+
+    private final String[] names;
+    private final ColumnTransform[][] transforms;
+    private final Map<String, String> renames;
+    private final Set<String> drops;
+
+    // 同一個 binlog 事件的資料列共用 layout，沿用最近一次的對應
+    private volatile LazyRow.Projection projection;
+
+    private TablePlan(String[] names, ColumnTransform[][] transforms, Map<String, String> renames, Set<String> drops) {
+        this.names = names;
+        this.transforms = transforms;
+        this.renames = renames;
+        this.drops = drops;
+    }
+
+    /**
+     * 由符合此資料表的規則 (依設定順序) 編譯，無規則時回傳 {@link #EMPTY}
+     */
+    public static TablePlan compile(List<TransformProperties.Rule> rules) {
+        if (rules.isEmpty()) {
+            return EMPTY;
+        }
+        Map<String, List<ColumnTransform>> transforms = new LinkedHashMap<>();
+        Map<String, String> renames = new HashMap<>();
+        Set<String> drops = new HashSet<>();
+        for (TransformProperties.Rule rule : rules) {
+            switch (rule.getType()) {
+                case DROP:
+                    drops.add(rule.getColumn());
+                    break;
+                case RENAME:
+                    renames.put(rule.getColumn(), ColumnTransform.requireParam(rule));
+                    break;
+                default:
+                    transforms.computeIfAbsent(rule.getColumn(), k -> new ArrayList<>()).add(ColumnTransform.compile(rule));
+            }
+        }
+        String[] names = transforms.keySet().toArray(new String[0]);
+        ColumnTransform[][] chains = new ColumnTransform[names.length][];
+        for (int t = 0; t < names.length; t++) {
+            chains[t] = transforms.get(names[t]).toArray(new ColumnTransform[0]);
+        }
+        return new TablePlan(names, chains, renames, drops);
+    }
+
+    public boolean isEmpty() {
+        return this == EMPTY;
+    }
+
+    /**
+     * 建立轉換後的 EtlMessage，資料列為來源資料列的檢視，轉換的欄位以複本取代；
+     * old 與 data 共用的欄位 (未修改) 只轉換一次
+     */
+    public EtlMessage apply(EtlMessage message) {
+        List<String> pkNames = message.getPkNames();
+        Set<String> pkSet = pkNames == null ? Collections.emptySet() : new HashSet<>(pkNames);
+        String[] targets = new String[names.length];
+        for (int t = 0; t < names.length; t++) {
+            targets[t] = map(names[t], pkSet);
+        }
+
+        List<Map<String, EtlColumn>> data = message.getData();
+        List<Map<String, EtlColumn>> old = message.getOld();
+        int oldSize = old == null ? 0 : old.size();
+        List<Map<String, EtlColumn>> newData = new ArrayList<>(data.size());
+        List<Map<String, EtlColumn>> newOld = old == null ? null : new ArrayList<>(oldSize);
+
+        for (int i = 0; i < data.size(); i++) {
+            Map<String, EtlColumn> row = data.get(i);
+            Map<String, EtlColumn> oldRow = i < oldSize ? old.get(i) : null;
+            Map<String, EtlColumn> newRow = reshape(row, pkSet);
+            Map<String, EtlColumn> newOldRow = oldRow == null ? null : reshape(oldRow, pkSet);
+            for (int t = 0; t < names.length; t++) {
+                if (targets[t] == null) {
+                    continue;
+                }
+                EtlColumn column = row.get(names[t]);
+                EtlColumn transformed = null;
+                if (column != null) {
+                    transformed = transform(t, column);
+                    newRow.put(targets[t], transformed);
+                }
+                if (newOldRow != null) {
+                    EtlColumn oldColumn = oldRow.get(names[t]);
+                    if (oldColumn != null) {
+                        newOldRow.put(targets[t], oldColumn == column ? transformed : transform(t, oldColumn));
+                    }
+                }
+            }
+            newData.add(newRow);
+            if (newOldRow != null) {
+                newOld.add(newOldRow);
+            }
+        }
+
+        EtlMessage transformed = message.copy(newData, newOld);
+        if (pkNames != null && !renames.isEmpty()) {
+            List<String> renamed = new ArrayList<>(pkNames.size());
+            for (String pkName : pkNames) {
+                renamed.add(renames.getOrDefault(pkName, pkName));
+            }
+            transformed.setPkNames(renamed);
+        }
+        return transformed;
+    }
+
+    private EtlColumn transform(int t, EtlColumn column) {
+        EtlColumn copy = column.copy();
+        for (ColumnTransform transform : transforms[t]) {
+            transform.apply(copy);
+        }
+        return copy;
+    }
+
+    /**
+     * 資料列的檢視，移除或改名的欄位依 drop / rename 對應，未設定時保留全部欄位
+     */
+    private Map<String, EtlColumn> reshape(Map<String, EtlColumn> row, Set<String> pkSet) {
+        if (row instanceof LazyRow) {
+            LazyRow lazyRow = (LazyRow) row;
+            LazyRow.Projection current = projection;
+            if (current == null || !current.appliesTo(lazyRow)) {
+                current = lazyRow.projection(name -> map(name, pkSet));
+                projection = current;
+            }
+            return lazyRow.project(current);
+        }
+        Map<String, EtlColumn> reshaped = new LinkedHashMap<>();
+        for (Map.Entry<String, EtlColumn> entry : row.entrySet()) {
+            String name = map(entry.getKey(), pkSet);
+            if (name != null) {
+                EtlColumn column = entry.getValue();
+                if (!name.equals(column.getName())) {
+                    column = column.copy();
+                    column.setName(name);
+                }
+                reshaped.put(name, column);
+            }
+        }
+        return reshaped;
+    }
+
+    /**
+     * 新的欄位名稱，null 表示移除
+     */
+    private String map(String name, Set<String> pkSet) {
+        if (drops.contains(name) && !pkSet.contains(name)) {
+            return null;
+        }
+        return renames.getOrDefault(name, name);
+    }
+}
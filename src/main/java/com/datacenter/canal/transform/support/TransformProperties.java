@@ -0,0 +1,51 @@
+package com.datacenter.canal.transform.support;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 欄位轉換規則 (canal.transform.rules)，依設定順序套用，ex:
+ * <pre>
+ * canal:
+ *   transform:
+ *     rules:
+ *       - { table: "*", column: password, type: mask }
+ *       - { table: "shop.user", column: email, type: hash }
+ *       - { table: "shop.*", column: remark, type: truncate, param: 255 }
+ *       - { table: "shop.order", column: amt, type: rename, param: amount }
+ * </pre>
+ * 未設定時預設遮罩所有資料表的 password 欄位
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("canal.transform")
+public class TransformProperties {
+
+    private List<Rule> rules = new ArrayList<>();
+
+    public TransformProperties() {
+        Rule password = new Rule();
+        password.setColumn("password");
+        password.setType(RuleType.MASK);
+        rules.add(password);
+    }
+
+    @Getter
+    @Setter
+    public static class Rule {
+        private String table = "*"; // 資料庫.資料表，可使用 * 萬用字元
+        private String column;
+        private RuleType type;
+        private String param; // 依類型: mask 保留結尾字數、hash 的 salt、truncate 長度、rename 新名稱、constant 數值、cast 型別
+    }
+
+    public enum RuleType {
+        MASK, HASH, TRUNCATE, DROP, RENAME, CONSTANT, CAST
+    }
+}
@@ -0,0 +1,123 @@
+package com.datacenter.canal.compact;
+
+import com.datacenter.canal.select.support.EtlColumn;
+import com.datacenter.canal.select.support.EtlMessage;
+import com.datacenter.canal.select.support.EtlMessageFixtures;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static com.datacenter.canal.select.support.EtlMessageFixtures.row;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactServiceTest {
+
+    private final CompactService compactService = new CompactService();
+    private long offset;
+
+    CompactServiceTest() {
+        compactService.enabled = true;
+    }
+
+    @Test
+    void insertUpdateDeleteChainIsRemoved() {
+        List<EtlMessage> result = compactService.compact(Arrays.asList(
+                insert(1, "a"), update(1, "b", "a"), update(1, "c", "b"), delete(1, "c")));
+
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    void insertThenUpdateIsInsertOfFinalRow() {
+        List<EtlMessage> result = compactService.compact(Arrays.asList(insert(1, "a"), update(1, "b", "a")));
+
+        assertEquals(1, result.size());
+        assertEquals("INSERT", result.get(0).getType());
+        assertEquals("b", result.get(0).getData().get(0).get("name").getValue());
+        assertTrue(result.get(0).getOld().isEmpty());
+    }
+
+    @Test
+    void updatesKeepEarliestOldAndLatestData() {
+        List<EtlMessage> result = compactService.compact(Arrays.asList(update(1, "b", "a"), update(1, "c", "b")));
+
+        assertEquals(1, result.size());
+        EtlMessage message = result.get(0);
+        assertEquals("UPDATE", message.getType());
+        assertEquals("c", message.getData().get(0).get("name").getValue());
+        assertEquals("a", message.getOld().get(0).get("name").getValue());
+    }
+
+    @Test
+    void updateThenDeleteIsDelete() {
+        List<EtlMessage> result = compactService.compact(Arrays.asList(update(1, "b", "a"), delete(1, "b")));
+
+        assertEquals(1, result.size());
+        assertEquals("DELETE", result.get(0).getType());
+        assertTrue(result.get(0).getOld().isEmpty());
+    }
+
+    @Test
+    void deleteThenInsertIsUpdate() {
+        List<EtlMessage> result = compactService.compact(Arrays.asList(delete(1, "a"), insert(1, "b")));
+
+        assertEquals(1, result.size());
+        EtlMessage message = result.get(0);
+        assertEquals("UPDATE", message.getType());
+        assertEquals("b", message.getData().get(0).get("name").getValue());
+        assertEquals("a", message.getOld().get(0).get("name").getValue());
+    }
+
+    @Test
+    void netMessageTakesLatestPosition() {
+        List<EtlMessage> result = compactService.compact(Arrays.asList(insert(1, "a"), insert(2, "b"), update(1, "c", "a")));
+
+        assertEquals(1, result.size());
+        assertEquals(2, result.get(0).getData().size());
+        assertEquals(offset, (long) result.get(0).getLogfileOffset());
+    }
+
+    @Test
+    void tableWithKeyChangingUpdateIsNotCompacted() {
+        EtlMessage insert = insert(1, "a");
+        EtlMessage keyChange = message("UPDATE", row(2, "a"), row(1, "a"));
+        EtlMessage delete = delete(2, "a");
+        EtlMessage other = insert(3, "x");
+        other.setTable("order");
+
+        List<EtlMessage> result = compactService.compact(Arrays.asList(insert, keyChange, delete, other));
+
+        assertEquals(4, result.size());
+        assertSame(insert, result.get(0));
+        assertSame(keyChange, result.get(1));
+        assertSame(delete, result.get(2));
+        assertEquals("order", result.get(3).getTable());
+    }
+
+    @Test
+    void disabledReturnsInput() {
+        compactService.enabled = false;
+        List<EtlMessage> messages = Arrays.asList(insert(1, "a"), delete(1, "a"));
+
+        assertSame(messages, compactService.compact(messages));
+    }
+
+    private EtlMessage insert(long id, String name) {
+        return message("INSERT", row(id, name), null);
+    }
+
+    private EtlMessage update(long id, String name, String oldName) {
+        return message("UPDATE", row(id, name), row(id, oldName));
+    }
+
+    private EtlMessage delete(long id, String name) {
+        return message("DELETE", row(id, name), null);
+    }
+
+    private EtlMessage message(String type, Map<String, EtlColumn> data, Map<String, EtlColumn> old) {
+        EtlMessage message = EtlMessageFixtures.message("user", type, data, old);
+        message.setLogfileName("mysql-bin.000001");
+        message.setLogfileOffset(++offset);
+        return message;
+    }
+}
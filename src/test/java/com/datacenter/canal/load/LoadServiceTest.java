@@ -0,0 +1,102 @@
+package com.datacenter.canal.load;
+
+import com.datacenter.canal.load.support.JdbcFakes;
+import com.datacenter.canal.process.support.BatchSizeController;
+import com.datacenter.canal.process.support.PipelineMetrics;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.datacenter.canal.select.support.EtlMessageFixtures.message;
+import static com.datacenter.canal.select.support.EtlMessageFixtures.row;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadServiceTest {
+
+    private final List<String> sqlList = new ArrayList<>();
+    private final List<Object> parameters = new ArrayList<>();
+
+    @Test
+    void upsertUpdateStaysUpdateOnUnknownTarget() throws Exception {
+        LoadService loadService = loadService(JdbcFakes.recordingDataSource(sqlList, parameters));
+
+        loadService.load(Collections.singletonList(message("user", "UPDATE", row(1, "b"), row(1, "a"))));
+
+        assertEquals(Collections.singletonList("UPDATE user SET name=? WHERE id=? "), sqlList);
+        assertEquals(Arrays.asList("b", 1L), parameters);
+    }
+
+    @Test
+    void upsertInsertIsPlainInsertOnUnknownTarget() throws Exception {
+        LoadService loadService = loadService(JdbcFakes.recordingDataSource(sqlList, parameters));
+
+        loadService.load(Collections.singletonList(message("user", "INSERT", row(1, "a"), null)));
+
+        assertEquals(Collections.singletonList("INSERT INTO user (id,name) VALUES (?,?)"), sqlList);
+    }
+
+    @Test
+    void upsertUpdateIsUpsertOnMysql() throws Exception {
+        LoadService loadService = loadService(mysqlDataSource());
+
+        loadService.load(Collections.singletonList(message("user", "UPDATE", row(1, "b"), row(1, "a"))));
+
+        assertEquals(Collections.singletonList(
+                "INSERT INTO `user` (`id`,`name`) VALUES (?,?) ON DUPLICATE KEY UPDATE `name`=VALUES(`name`)"), sqlList);
+        assertEquals(Arrays.asList(1L, "b"), parameters);
+    }
+
+    private LoadService loadService(DataSource dataSource) throws Exception {
+        LoadService loadService = new LoadService();
+        loadService.dataSource = dataSource;
+        loadService.batchSizeController = new BatchSizeController() {
+            @Override
+            public int getInsertSize() {
+                return 100;
+            }
+
+            @Override
+            public int getUpdateSize() {
+                return 100;
+            }
+
+            @Override
+            public int getDeleteSize() {
+                return 100;
+            }
+        };
+        loadService.metrics = new PipelineMetrics(new SimpleMeterRegistry());
+        loadService.tableSuffix = "";
+        loadService.parallelism = 1;
+        loadService.partitionMode = "table";
+        loadService.loadMode = "statement";
+        loadService.upsert = true;
+        loadService.sqlCacheSize = 16;
+        loadService.statementCacheSize = 16;
+        loadService.checkpointStoreType = "none";
+        loadService.init();
+        return loadService;
+    }
+
+    /**
+     * 依 JDBC URL 判斷為 MySQL，連線為記錄 SQL 的 Connection，不實際建立連線池
+     */
+    private DataSource mysqlDataSource() {
+        Connection connection = JdbcFakes.recordingConnection(sqlList, parameters);
+        HikariDataSource dataSource = new HikariDataSource() {
+            @Override
+            public Connection getConnection() {
+                return connection;
+            }
+        };
+        dataSource.setJdbcUrl("jdbc:mysql://localhost:3306/shop");
+        return dataSource;
+    }
+}
@@ -0,0 +1,64 @@
+package com.datacenter.canal.load.support;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchExecutorTest {
+
+    private final List<String> sqlList = new ArrayList<>();
+    private final List<Object> parameters = new ArrayList<>();
+
+    @Test
+    void clearStatementsRemovesOnlyThatTable() throws Exception {
+        // 無法判斷資料庫類型 (UNKNOWN) 時 SQL 中的資料表名稱沒有引號
+        BatchExecutor batchExecutor = new BatchExecutor(JdbcFakes.recordingDataSource(sqlList, parameters), 16);
+        assertEquals("", batchExecutor.getBacktick());
+        String tSql = "UPDATE t SET name=? WHERE id=?";
+        String userSql = "UPDATE user SET name=? WHERE id=?";
+        String subquerySql = "DELETE FROM orders WHERE user_id IN (SELECT id FROM t)";
+        execute(batchExecutor, "t", tSql);
+        execute(batchExecutor, "user", userSql);
+        execute(batchExecutor, "orders", subquerySql);
+
+        batchExecutor.clearStatements("t");
+
+        assertEquals(2, batchExecutor.getStatementCount());
+        execute(batchExecutor, "t", tSql);
+        execute(batchExecutor, "user", userSql);
+        execute(batchExecutor, "orders", subquerySql);
+        assertEquals(Arrays.asList(tSql, userSql, subquerySql, tSql), sqlList);
+    }
+
+    @Test
+    void sameSqlOnOtherTableIsCachedSeparately() throws Exception {
+        BatchExecutor batchExecutor = new BatchExecutor(JdbcFakes.recordingDataSource(sqlList, parameters), 16);
+        String sql = "SELECT 1";
+        execute(batchExecutor, "a", sql);
+        execute(batchExecutor, "b", sql);
+
+        batchExecutor.clearStatements("a");
+        execute(batchExecutor, "b", sql);
+
+        assertEquals(1, batchExecutor.getStatementCount());
+        assertEquals(Arrays.asList(sql, sql), sqlList);
+    }
+
+    @Test
+    void uncachedStatementIsNotKept() throws Exception {
+        BatchExecutor batchExecutor = new BatchExecutor(JdbcFakes.recordingDataSource(sqlList, parameters), 16);
+        batchExecutor.execute("INSERT INTO stage VALUES (?)", params -> params.add(Types.BIGINT, 1L));
+
+        assertEquals(0, batchExecutor.getStatementCount());
+        assertEquals(Arrays.asList((Object) 1L), parameters);
+    }
+
+    private static void execute(BatchExecutor batchExecutor, String table, String sql) throws Exception {
+        batchExecutor.executeBatch(table, sql, Arrays.asList(1L), (id, params) -> params.add(Types.BIGINT, id));
+    }
+}
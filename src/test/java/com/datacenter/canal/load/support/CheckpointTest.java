@@ -0,0 +1,40 @@
+package com.datacenter.canal.load.support;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckpointTest {
+
+    @Test
+    void compareWithinFile() {
+        assertTrue(new Checkpoint("mysql-bin.000001", 100).compareTo(new Checkpoint("mysql-bin.000001", 200)) < 0);
+        assertEquals(0, new Checkpoint("mysql-bin.000001", 100).compareTo(new Checkpoint("mysql-bin.000001", 100)));
+    }
+
+    @Test
+    void compareAcrossFileRollover() {
+        // 新檔案的位置較小，仍較新
+        assertTrue(new Checkpoint("mysql-bin.000009", 9999).compareTo(new Checkpoint("mysql-bin.000010", 4)) < 0);
+        assertTrue(new Checkpoint("mysql-bin.000010", 4).compareTo(new Checkpoint("mysql-bin.000009", 9999)) > 0);
+    }
+
+    @Test
+    void compareBySequenceBeyondPaddingWidth() {
+        // 序號超過 6 位數後字串比較的順序錯誤
+        assertTrue(new Checkpoint("mysql-bin.999999", 500).compareTo(new Checkpoint("mysql-bin.1000000", 4)) < 0);
+    }
+
+    @Test
+    void maxAndParse() {
+        Checkpoint older = new Checkpoint("mysql-bin.000009", 9999);
+        Checkpoint newer = Checkpoint.parse("mysql-bin.000010:4");
+
+        assertEquals(new Checkpoint("mysql-bin.000010", 4), newer);
+        assertSame(newer, Checkpoint.max(older, newer));
+        assertSame(newer, Checkpoint.max(newer, older));
+        assertSame(older, Checkpoint.max(null, older));
+        assertEquals("mysql-bin.000010:4", newer.toString());
+        assertThrows(IllegalArgumentException.class, () -> Checkpoint.parse("mysql-bin.000010"));
+    }
+}
@@ -0,0 +1,81 @@
+package com.datacenter.canal.load.support;
+
+import org.junit.jupiter.api.Test;
+import org.postgresql.copy.CopyIn;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CopyWriterTest {
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    @Test
+    void nullIsUnquotedAndEmptyStringIsQuoted() throws SQLException {
+        CopyWriter writer = writer();
+        writer.write(null).write("").write(1).endRow();
+
+        assertEquals(",\"\",1\n", finish(writer));
+    }
+
+    @Test
+    void quoteIsDoubled() throws SQLException {
+        CopyWriter writer = writer();
+        writer.write("say \"hi\"").endRow();
+
+        assertEquals("\"say \"\"hi\"\"\"\n", finish(writer));
+    }
+
+    @Test
+    void newlineAndBackslashStayInsideQuotes() throws SQLException {
+        CopyWriter writer = writer();
+        writer.write("a\nb\r\nc").write("C:\\tmp\\").write("\\.").endRow();
+
+        assertEquals("\"a\nb\r\nc\",\"C:\\tmp\\\",\"\\.\"\n", finish(writer));
+    }
+
+    @Test
+    void otherTypes() throws SQLException {
+        CopyWriter writer = writer();
+        writer.write(true).write(new BigDecimal("1E+3")).write(new byte[]{0x0a, (byte) 0xff}).write("中文😀").endRow();
+
+        assertEquals("t,1000,\\x0aff,\"中文😀\"\n", finish(writer));
+    }
+
+    @Test
+    void multiByteValueAcrossBufferBoundary() throws SQLException {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 40000; i++) {
+            value.append('中');
+        }
+        CopyWriter writer = writer();
+        writer.write(value.toString()).endRow();
+        writer.write("x").endRow();
+
+        assertEquals("\"" + value + "\"\n\"x\"\n", finish(writer));
+    }
+
+    private CopyWriter writer() {
+        CopyIn copyIn = (CopyIn) Proxy.newProxyInstance(CopyIn.class.getClassLoader(), new Class<?>[]{CopyIn.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("writeToCopy")) {
+                        out.write((byte[]) args[0], (Integer) args[1], (Integer) args[2]);
+                    }
+                    Class<?> returnType = method.getReturnType();
+                    return returnType.isPrimitive() && returnType != void.class
+                            ? Array.get(Array.newInstance(returnType, 1), 0) : null;
+                });
+        return new CopyWriter(copyIn);
+    }
+
+    private String finish(CopyWriter writer) throws SQLException {
+        writer.finish();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
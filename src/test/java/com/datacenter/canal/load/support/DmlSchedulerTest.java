@@ -0,0 +1,73 @@
+package com.datacenter.canal.load.support;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static com.datacenter.canal.select.support.EtlMessageFixtures.message;
+import static com.datacenter.canal.select.support.EtlMessageFixtures.row;
+import static org.junit.jupiter.api.Assertions.*;
+
+class DmlSchedulerTest {
+
+    @Test
+    void independentDmlOrderedByType() {
+        SingleDml delete = dml("user", "DELETE", 3, null);
+        SingleDml update = dml("user", "UPDATE", 2, 2L);
+        SingleDml insert = dml("user", "INSERT", 1, null);
+
+        SortedMap<Integer, List<SingleDml>> levels = DmlScheduler.schedule(Arrays.asList(delete, update, insert));
+
+        assertEquals(Arrays.asList(1, 2, 3), new ArrayList<>(levels.keySet()));
+        assertEquals(Collections.singletonList(insert), levels.get(1));
+        assertEquals(Collections.singletonList(update), levels.get(2));
+        assertEquals(Collections.singletonList(delete), levels.get(3));
+    }
+
+    @Test
+    void sameKeyKeepsBinlogOrder() {
+        SingleDml insert = dml("user", "INSERT", 1, null);
+        SingleDml update = dml("user", "UPDATE", 1, 1L);
+        SingleDml delete = dml("user", "DELETE", 1, null);
+        SingleDml other = dml("user", "INSERT", 2, null);
+
+        SortedMap<Integer, List<SingleDml>> levels = DmlScheduler.schedule(Arrays.asList(insert, update, delete, other));
+
+        assertEquals(Arrays.asList(1, 12, 23), new ArrayList<>(levels.keySet()));
+        assertEquals(Arrays.asList(insert, other), levels.get(1));
+        assertEquals(Collections.singletonList(update), levels.get(12));
+        assertEquals(Collections.singletonList(delete), levels.get(23));
+    }
+
+    @Test
+    void keyChangingUpdateDependsOnBothKeys() {
+        // 刪除 id=2 後將 id=1 改為 2，再新增 id=1
+        SingleDml delete = dml("user", "DELETE", 2, null);
+        SingleDml update = dml("user", "UPDATE", 2, 1L);
+        SingleDml insert = dml("user", "INSERT", 1, null);
+
+        SortedMap<Integer, List<SingleDml>> levels = DmlScheduler.schedule(Arrays.asList(delete, update, insert));
+
+        assertTrue(update.isKeyChanged());
+        assertEquals(3, delete.getPriority());
+        assertEquals(12, update.getPriority());
+        assertEquals(21, insert.getPriority());
+        assertEquals(Arrays.asList(3, 12, 21), new ArrayList<>(levels.keySet()));
+    }
+
+    @Test
+    void sameKeyOnOtherTableIsIndependent() {
+        SingleDml insert = dml("user", "INSERT", 1, null);
+        SingleDml delete = dml("order", "DELETE", 1, null);
+
+        DmlScheduler.schedule(Arrays.asList(insert, delete));
+
+        assertEquals(1, insert.getPriority());
+        assertEquals(3, delete.getPriority());
+    }
+
+    private static SingleDml dml(String table, String type, long id, Long oldId) {
+        // 修改前的 name 不同，視為有變動
+        return new SingleDml(message(table, type, row(id, type), oldId == null ? null : row(oldId, "before")), 0);
+    }
+}
@@ -0,0 +1,60 @@
+package com.datacenter.canal.load.support;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Array;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.List;
+
+/**
+ * 以 java.lang.reflect.Proxy 建立的 JDBC 物件，未處理的方法回傳 null (基本型別為預設值)
+ */
+public final class JdbcFakes {
+
+    private JdbcFakes() {
+    }
+
+    /**
+     * 記錄建立 statement 的 SQL 及綁定參數 (setNull 記錄為 null) 的 DataSource
+     */
+    public static DataSource recordingDataSource(List<String> sqlList, List<Object> parameters) {
+        Connection connection = recordingConnection(sqlList, parameters);
+        return proxy(DataSource.class, (method, args) -> method.equals("getConnection") ? connection : null);
+    }
+
+    /**
+     * 記錄建立 statement 的 SQL 及綁定參數 (setNull 記錄為 null) 的 Connection
+     */
+    public static Connection recordingConnection(List<String> sqlList, List<Object> parameters) {
+        PreparedStatement statement = proxy(PreparedStatement.class, (method, args) -> {
+            if (method.startsWith("set")) {
+                parameters.add(method.equals("setNull") ? null : args[1]);
+            }
+            return null;
+        });
+        return proxy(Connection.class, (method, args) -> {
+            if (method.equals("prepareStatement")) {
+                sqlList.add((String) args[0]);
+                return statement;
+            }
+            return null;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> T proxy(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            Object result = handler.handle(method.getName(), args);
+            if (result == null && method.getReturnType().isPrimitive() && method.getReturnType() != void.class) {
+                return Array.get(Array.newInstance(method.getReturnType(), 1), 0);
+            }
+            return result;
+        });
+    }
+
+    @FunctionalInterface
+    public interface Handler {
+        Object handle(String method, Object[] args);
+    }
+}
@@ -0,0 +1,67 @@
+package com.datacenter.canal.load.support;
+
+import com.datacenter.canal.select.support.EtlColumn;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Types;
+import java.util.*;
+
+import static com.datacenter.canal.select.support.EtlMessageFixtures.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MergeLoaderTest {
+
+    private final List<String> sqlList = new ArrayList<>();
+    private final List<Object> parameters = new ArrayList<>();
+
+    @Test
+    void updateOnlyRowsAreUpdatedInPlace() throws Exception {
+        List<SingleDml> dmlList = Arrays.asList(
+                dml("INSERT", row(1, "a"), null),
+                dml("UPDATE", row(2, "b"), row(2, "x")),
+                dml("INSERT", row(3, "c"), null),
+                dml("UPDATE", row(3, "d"), row(3, "c")),
+                dml("DELETE", row(4, "e"), null));
+
+        merge(dmlList);
+
+        assertEquals(Arrays.asList(
+                "CREATE TEMP TABLE canal_stage_user AS SELECT *, CAST(NULL AS CHAR(1)) AS canal_op FROM user WHERE 1=0",
+                "INSERT INTO canal_stage_user (id,name,canal_op) VALUES (?,?,?),(?,?,?),(?,?,?),(?,?,?)",
+                "DELETE FROM user USING canal_stage_user WHERE user.id=canal_stage_user.id AND canal_stage_user.canal_op<>'U'",
+                "UPDATE user SET name=canal_stage_user.name FROM canal_stage_user WHERE user.id=canal_stage_user.id"
+                        + " AND canal_stage_user.canal_op='U'",
+                "INSERT INTO user (id,name) SELECT id,name FROM canal_stage_user WHERE canal_op='I'",
+                "DROP TABLE canal_stage_user"), sqlList);
+        assertEquals(Arrays.asList(1L, "a", "I", 2L, "b", "U", 3L, "d", "I", 4L, "e", "D"), parameters);
+    }
+
+    @Test
+    void updateSqlSkippedWithoutUpdateRows() throws Exception {
+        merge(Arrays.asList(dml("INSERT", row(1, "a"), null), dml("DELETE", row(2, "b"), null)));
+
+        assertTrue(sqlList.stream().noneMatch(sql -> sql.startsWith("UPDATE")));
+        assertEquals(Arrays.asList(1L, "a", "I", 2L, "b", "D"), parameters);
+    }
+
+    @Test
+    void stageColumnsTakenFromInsertedRows() throws Exception {
+        Map<String, EtlColumn> keyOnly = new LinkedHashMap<>();
+        keyOnly.put("id", column("id", 5L, true, Types.BIGINT));
+
+        merge(Arrays.asList(dml("DELETE", keyOnly, null), dml("INSERT", row(6, "f"), null)));
+
+        assertTrue(sqlList.contains("INSERT INTO user (id,name) SELECT id,name FROM canal_stage_user WHERE canal_op='I'"));
+        assertEquals(Arrays.asList(5L, null, "D", 6L, "f", "I"), parameters);
+    }
+
+    private void merge(List<SingleDml> dmlList) throws Exception {
+        MergeLoader mergeLoader = new MergeLoader(new SqlTemplateCache(16), new BinderPlanCache(), () -> 100);
+        BatchExecutor batchExecutor = new BatchExecutor(JdbcFakes.recordingDataSource(sqlList, parameters));
+        mergeLoader.merge("user", Collections.singletonList("id"), dmlList, batchExecutor);
+    }
+
+    private static SingleDml dml(String type, Map<String, EtlColumn> data, Map<String, EtlColumn> old) {
+        return new SingleDml(message("user", type, data, old), 0);
+    }
+}
@@ -0,0 +1,115 @@
+package com.datacenter.canal.load.support;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.*;
+
+import static com.datacenter.canal.load.support.JdbcFakes.proxy;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TargetSchemaCacheTest {
+
+    private final Set<String> existing = new HashSet<>(); // 目標庫中的資料表，欄位皆為 id bigint (PK)
+    private final List<String> sqlList = new ArrayList<>();
+
+    @Test
+    void missingTableIsReloadedAfterTtl() {
+        TargetSchemaCache cache = new TargetSchemaCache(dataSource(), DbType.POSTGRESQL, 0);
+        cache.loadAll();
+        assertNull(cache.get("order"));
+
+        existing.add("order");
+        TableMeta meta = cache.get("order");
+
+        assertNotNull(meta);
+        assertEquals(Types.BIGINT, meta.getColumn("id").getSqlType());
+        assertEquals(Collections.singletonList("id"), meta.getPkNames());
+    }
+
+    @Test
+    void missingTableIsCachedWithinTtl() {
+        TargetSchemaCache cache = new TargetSchemaCache(dataSource(), DbType.POSTGRESQL, 60000);
+        cache.loadAll();
+        assertNull(cache.get("order"));
+        int queries = sqlList.size();
+
+        existing.add("order");
+
+        assertNull(cache.get("order"));
+        assertEquals(queries, sqlList.size());
+
+        cache.invalidate("order");
+        assertNotNull(cache.get("order"));
+    }
+
+    @Test
+    void redshiftKeysQueriedBySchemaName() {
+        existing.add("order");
+        TargetSchemaCache cache = new TargetSchemaCache(dataSource(), DbType.REDSHIFT, 0);
+        cache.loadAll();
+
+        assertNotNull(cache.get("order"));
+        assertTrue(sqlList.stream().noneMatch(sql -> sql.contains("pg_table_def")));
+        assertTrue(sqlList.stream().anyMatch(sql -> sql.contains("n.nspname = ?")));
+    }
+
+    private DataSource dataSource() {
+        Connection connection = proxy(Connection.class, (method, args) -> {
+            switch (method) {
+                case "getSchema":
+                    return "public";
+                case "prepareStatement":
+                    sqlList.add((String) args[0]);
+                    return statement((String) args[0]);
+                default:
+                    return null;
+            }
+        });
+        return proxy(DataSource.class, (method, args) -> method.equals("getConnection") ? connection : null);
+    }
+
+    private PreparedStatement statement(String sql) {
+        Map<Integer, String> parameters = new HashMap<>();
+        return proxy(PreparedStatement.class, (method, args) -> {
+            if (method.equals("setString")) {
+                parameters.put((Integer) args[0], (String) args[1]);
+            } else if (method.equals("executeQuery")) {
+                String table = parameters.get(2);
+                List<Object[]> rows = new ArrayList<>();
+                for (String name : existing) {
+                    if (table != null && !table.equals(name)) {
+                        continue;
+                    }
+                    if (sql.contains("information_schema.columns")) {
+                        rows.add(new Object[]{name, "id", "bigint"});
+                    } else if (sql.contains("PRIMARY KEY")) {
+                        rows.add(new Object[]{name, "id"});
+                    }
+                }
+                return resultSet(rows);
+            }
+            return null;
+        });
+    }
+
+    private static ResultSet resultSet(List<Object[]> rows) {
+        Iterator<Object[]> iterator = rows.iterator();
+        Object[][] current = new Object[1][];
+        return proxy(ResultSet.class, (method, args) -> {
+            switch (method) {
+                case "next":
+                    current[0] = iterator.hasNext() ? iterator.next() : null;
+                    return current[0] != null;
+                case "getString":
+                    return current[0][(Integer) args[0] - 1];
+                default:
+                    return null;
+            }
+        });
+    }
+}
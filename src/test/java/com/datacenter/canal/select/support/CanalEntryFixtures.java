@@ -0,0 +1,31 @@
+package com.datacenter.canal.select.support;
+
+import com.alibaba.otter.canal.protocol.CanalEntry;
+
+/**
+ * 測試用的 canal binlog 事件，資料庫為 shop，位置為 mysql-bin.000001:4
+ */
+public final class CanalEntryFixtures {
+
+    private CanalEntryFixtures() {
+    }
+
+    public static CanalEntry.Entry entry(String table, CanalEntry.RowChange rowChange) {
+        return CanalEntry.Entry.newBuilder()
+                .setEntryType(CanalEntry.EntryType.ROWDATA)
+                .setHeader(CanalEntry.Header.newBuilder().setSchemaName("shop").setTableName(table)
+                        .setLogfileName("mysql-bin.000001").setLogfileOffset(4).setExecuteTime(0))
+                .setStoreValue(rowChange.toByteString())
+                .build();
+    }
+
+    public static CanalEntry.Column column(String name, String value, boolean key, int sqlType, String mysqlType) {
+        return column(name, value, key, false, sqlType, mysqlType);
+    }
+
+    public static CanalEntry.Column column(String name, String value, boolean key, boolean updated, int sqlType,
+                                           String mysqlType) {
+        return CanalEntry.Column.newBuilder().setName(name).setValue(value).setIsKey(key).setUpdated(updated)
+                .setSqlType(sqlType).setMysqlType(mysqlType).setIsNull(false).build();
+    }
+}
@@ -0,0 +1,42 @@
+package com.datacenter.canal.select.support;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 測試用的 EtlMessage，資料表為 shop.{table}，欄位為 id bigint (PK) 及 name varchar
+ */
+public final class EtlMessageFixtures {
+
+    private EtlMessageFixtures() {
+    }
+
+    /**
+     * 單筆資料的 EtlMessage，old 為 null 時 (insert, delete) 為空的清單
+     */
+    public static EtlMessage message(String table, String type, Map<String, EtlColumn> data, Map<String, EtlColumn> old) {
+        EtlMessage message = new EtlMessage();
+        message.setDatabase("shop");
+        message.setTable(table);
+        message.setPkNames(Collections.singletonList("id"));
+        message.setIsDdl(false);
+        message.setType(type);
+        message.setData(new ArrayList<>(Collections.singletonList(data)));
+        message.setOld(old == null ? new ArrayList<>() : new ArrayList<>(Collections.singletonList(old)));
+        return message;
+    }
+
+    public static Map<String, EtlColumn> row(long id, String name) {
+        Map<String, EtlColumn> row = new LinkedHashMap<>();
+        row.put("id", column("id", id, true, Types.BIGINT));
+        row.put("name", column("name", name, false, Types.VARCHAR));
+        return row;
+    }
+
+    public static EtlColumn column(String name, Object value, boolean key, int sqlType) {
+        return EtlColumn.builder().name(name).value(value).key(key).sqlType(sqlType).build();
+    }
+}
@@ -0,0 +1,166 @@
+package com.datacenter.canal.select.support;
+
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.alibaba.otter.canal.protocol.Message;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.datacenter.canal.select.support.CanalEntryFixtures.column;
+import static com.datacenter.canal.select.support.CanalEntryFixtures.entry;
+import static org.junit.jupiter.api.Assertions.*;
+
+class EtlMessageUtilTest {
+
+    @Test
+    void updateStayingInFilterIsUpdate() {
+        List<EtlMessage> messages = convert(update("1", "PAID", "SHIPPED"));
+
+        assertEquals(1, messages.size());
+        assertEquals("UPDATE", messages.get(0).getType());
+        assertEquals("SHIPPED", messages.get(0).getData().get(0).get("status").getValue());
+        assertEquals("PAID", messages.get(0).getOld().get(0).get("status").getValue());
+    }
+
+    @Test
+    void updateMovingOutOfFilterIsDelete() {
+        List<EtlMessage> messages = convert(update("1", "PAID", "CANCELLED"));
+
+        assertEquals(1, messages.size());
+        EtlMessage message = messages.get(0);
+        assertEquals("DELETE", message.getType());
+        assertEquals(Collections.singletonList("id"), message.getPkNames());
+        assertEquals("1", String.valueOf(message.getData().get(0).get("id").getValue()));
+        assertEquals("PAID", message.getData().get(0).get("status").getValue());
+        assertTrue(message.getOld().isEmpty());
+    }
+
+    @Test
+    void updateMovingIntoFilterIsInsert() {
+        List<EtlMessage> messages = convert(update("1", "NEW", "PAID"));
+
+        assertEquals(1, messages.size());
+        EtlMessage message = messages.get(0);
+        assertEquals("INSERT", message.getType());
+        assertEquals("PAID", message.getData().get(0).get("status").getValue());
+        assertFalse(message.getData().get(0).containsKey("remark"));
+        assertTrue(message.getOld().isEmpty());
+    }
+
+    @Test
+    void updateOutsideFilterIsDropped() {
+        assertTrue(convert(update("1", "NEW", "CANCELLED")).isEmpty());
+    }
+
+    @Test
+    void mixedRowsKeepOrder() {
+        CanalEntry.RowChange rowChange = CanalEntry.RowChange.newBuilder()
+                .setEventType(CanalEntry.EventType.UPDATE)
+                .setIsDdl(false)
+                .addRowDatas(rowData("1", "PAID", "SHIPPED"))
+                .addRowDatas(rowData("2", "PAID", "CANCELLED"))
+                .addRowDatas(rowData("3", "NEW", "PAID"))
+                .addRowDatas(rowData("4", "NEW", "PAID"))
+                .build();
+
+        List<EtlMessage> messages = convert(entry("order", rowChange));
+
+        assertEquals(3, messages.size());
+        assertEquals("UPDATE", messages.get(0).getType());
+        assertEquals("DELETE", messages.get(1).getType());
+        assertEquals("INSERT", messages.get(2).getType());
+        assertEquals(2, messages.get(2).getData().size());
+        assertEquals(4L, (long) messages.get(2).getLogfileOffset());
+    }
+
+    @Test
+    void minimalBeforeImageUsesAfterValueOfUnchangedColumns() {
+        CanalEntry.RowData rowData = CanalEntry.RowData.newBuilder()
+                .addBeforeColumns(column("id", "1", true, false, Types.INTEGER, "int(11)"))
+                .addAfterColumns(column("id", "1", true, false, Types.INTEGER, "int(11)"))
+                .addAfterColumns(column("status", "PAID", false, false, Types.VARCHAR, "varchar(16)"))
+                .addAfterColumns(column("remark", "b", false, true, Types.VARCHAR, "varchar(64)"))
+                .build();
+        CanalEntry.RowChange rowChange = CanalEntry.RowChange.newBuilder()
+                .setEventType(CanalEntry.EventType.UPDATE)
+                .setIsDdl(false)
+                .addRowDatas(rowData)
+                .build();
+
+        List<EtlMessage> messages = convert(entry("order", rowChange));
+
+        assertEquals(1, messages.size());
+        assertEquals("UPDATE", messages.get(0).getType());
+    }
+
+    @Test
+    void nonNumericValueOfNumericColumnDoesNotMatch() {
+        FilterProperties.Condition condition = new FilterProperties.Condition();
+        condition.setColumn("amount");
+        condition.setMin("100");
+        FilterProperties.Table table = new FilterProperties.Table();
+        table.setTable("shop.order");
+        table.setWhere(Collections.singletonList(condition));
+
+        CanalEntry.RowChange rowChange = CanalEntry.RowChange.newBuilder()
+                .setEventType(CanalEntry.EventType.INSERT)
+                .setIsDdl(false)
+                .addRowDatas(CanalEntry.RowData.newBuilder()
+                        .addAfterColumns(column("id", "1", true, true, Types.INTEGER, "int(11)"))
+                        .addAfterColumns(column("amount", "", false, true, Types.DECIMAL, "decimal(10,2)")))
+                .addRowDatas(CanalEntry.RowData.newBuilder()
+                        .addAfterColumns(column("id", "2", true, true, Types.INTEGER, "int(11)"))
+                        .addAfterColumns(column("amount", "150.00", false, true, Types.DECIMAL, "decimal(10,2)")))
+                .build();
+
+        List<EtlMessage> messages = convert(entry("order", rowChange), table);
+
+        assertEquals(1, messages.size());
+        assertEquals(1, messages.get(0).getData().size());
+        assertEquals("2", String.valueOf(messages.get(0).getData().get(0).get("id").getValue()));
+    }
+
+    private static List<EtlMessage> convert(CanalEntry.Entry entry) {
+        FilterProperties.Condition condition = new FilterProperties.Condition();
+        condition.setColumn("status");
+        condition.setIn(Arrays.asList("PAID", "SHIPPED"));
+        FilterProperties.Table table = new FilterProperties.Table();
+        table.setTable("shop.order");
+        table.setExclude(Collections.singletonList("remark"));
+        table.setWhere(Collections.singletonList(condition));
+        return convert(entry, table);
+    }
+
+    private static List<EtlMessage> convert(CanalEntry.Entry entry, FilterProperties.Table table) {
+        FilterProperties properties = new FilterProperties();
+        properties.setTables(Collections.singletonList(table));
+
+        MessageFilter messageFilter = new MessageFilter();
+        messageFilter.filterProperties = properties;
+        messageFilter.afterPropertiesSet();
+        return EtlMessageUtil.convert(new Message(1, false, Collections.singletonList(entry)), messageFilter);
+    }
+
+    private static CanalEntry.Entry update(String id, String beforeStatus, String afterStatus) {
+        return entry("order", CanalEntry.RowChange.newBuilder()
+                .setEventType(CanalEntry.EventType.UPDATE)
+                .setIsDdl(false)
+                .addRowDatas(rowData(id, beforeStatus, afterStatus))
+                .build());
+    }
+
+    private static CanalEntry.RowData rowData(String id, String beforeStatus, String afterStatus) {
+        return CanalEntry.RowData.newBuilder()
+                .addBeforeColumns(column("id", id, true, false, Types.INTEGER, "int(11)"))
+                .addBeforeColumns(column("status", beforeStatus, false, false, Types.VARCHAR, "varchar(16)"))
+                .addBeforeColumns(column("remark", "a", false, false, Types.VARCHAR, "varchar(64)"))
+                .addAfterColumns(column("id", id, true, false, Types.INTEGER, "int(11)"))
+                .addAfterColumns(column("status", afterStatus, false, !beforeStatus.equals(afterStatus), Types.VARCHAR,
+                        "varchar(16)"))
+                .addAfterColumns(column("remark", "a", false, false, Types.VARCHAR, "varchar(64)"))
+                .build();
+    }
+}
@@ -0,0 +1,136 @@
+package com.datacenter.canal.select.support;
+
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.alibaba.otter.canal.protocol.Message;
+import com.datacenter.canal.process.ProcessService;
+import com.datacenter.canal.process.support.EtlBatch;
+import com.google.protobuf.ByteString;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OverflowBufferTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recoverSkipsProcessedBatchesAndTruncatesIncompleteRecord() throws Exception {
+        Path segment = dir.resolve("overflow-0000000000.dat");
+        long firstEnd;
+        try (OverflowBuffer buffer = open(new RecordingProcessService())) {
+            assertTrue(buffer.offer(1, message(1)).isDone());
+            firstEnd = Files.size(segment);
+            buffer.offer(2, message(2));
+            buffer.offer(3, message(3));
+        }
+        long completeSize = Files.size(segment);
+        appendIncompleteRecord(segment);
+        Files.write(dir.resolve("overflow.cursor"), ("0 " + firstEnd).getBytes(StandardCharsets.UTF_8));
+
+        RecordingProcessService processService = new RecordingProcessService();
+        try (OverflowBuffer buffer = open(processService)) {
+            assertEquals(completeSize, Files.size(segment));
+            buffer.start();
+            processService.await(2);
+        }
+
+        assertEquals(Arrays.asList(2L, 3L), processService.batchIds);
+    }
+
+    @Test
+    void recoverWithoutCursorReplaysAllCompleteRecords() throws Exception {
+        Path segment = dir.resolve("overflow-0000000000.dat");
+        try (OverflowBuffer buffer = open(new RecordingProcessService())) {
+            buffer.offer(1, message(1));
+            buffer.offer(2, message(2));
+        }
+        long completeSize = Files.size(segment);
+        appendIncompleteRecord(segment);
+
+        RecordingProcessService processService = new RecordingProcessService();
+        try (OverflowBuffer buffer = open(processService)) {
+            assertEquals(completeSize, Files.size(segment));
+            buffer.start();
+            processService.await(2);
+        }
+
+        assertEquals(Arrays.asList(1L, 2L), processService.batchIds);
+    }
+
+    @Test
+    void recoverAfterAllProcessedReplaysNothing() throws Exception {
+        Path segment = dir.resolve("overflow-0000000000.dat");
+        try (OverflowBuffer buffer = open(new RecordingProcessService())) {
+            buffer.offer(1, message(1));
+        }
+        Files.write(dir.resolve("overflow.cursor"), ("0 " + Files.size(segment)).getBytes(StandardCharsets.UTF_8));
+
+        RecordingProcessService processService = new RecordingProcessService();
+        try (OverflowBuffer buffer = open(processService)) {
+            buffer.start();
+            Thread.sleep(200);
+        }
+
+        assertTrue(processService.batchIds.isEmpty());
+    }
+
+    /**
+     * 記憶體上限為 0，所有 batch 皆寫入磁碟
+     */
+    private OverflowBuffer open(ProcessService processService) throws IOException {
+        return new OverflowBuffer(dir, 0, 1 << 20, 4, 10, processService);
+    }
+
+    /**
+     * 模擬寫入途中停止: 長度欄位已寫入，內容不完整
+     */
+    private static void appendIncompleteRecord(Path segment) throws IOException {
+        Files.write(segment, new byte[]{0, 0, 0, 100, 0, 0, 0, 0, 0, 0, 0, 4}, StandardOpenOption.APPEND);
+    }
+
+    private static Message message(long offset) {
+        CanalEntry.Entry entry = CanalEntry.Entry.newBuilder()
+                .setEntryType(CanalEntry.EntryType.ROWDATA)
+                .setHeader(CanalEntry.Header.newBuilder().setLogfileName("mysql-bin.000001").setLogfileOffset(offset)
+                        .setSchemaName("shop").setTableName("order"))
+                .setStoreValue(ByteString.copyFromUtf8("row-" + offset))
+                .build();
+        return new Message(offset, Collections.singletonList(entry));
+    }
+
+    /**
+     * 記錄交給 pipeline 的 batch，並立即完成
+     */
+    private static class RecordingProcessService extends ProcessService {
+        private final List<Long> batchIds = new CopyOnWriteArrayList<>();
+
+        @Override
+        public EtlBatch queue(long batchId, Message message) {
+            assertEquals(batchId, message.getId());
+            assertEquals(ByteString.copyFromUtf8("row-" + batchId), message.getEntries().get(0).getStoreValue());
+            batchIds.add(batchId);
+            EtlBatch batch = new EtlBatch(batchId, message);
+            batch.complete();
+            return batch;
+        }
+
+        void await(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (batchIds.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+    }
+}
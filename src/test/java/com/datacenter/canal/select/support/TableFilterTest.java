@@ -0,0 +1,183 @@
+package com.datacenter.canal.select.support;
+
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.alibaba.otter.canal.protocol.Message;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Types;
+import java.util.*;
+import java.util.function.Consumer;
+
+import static com.datacenter.canal.select.support.CanalEntryFixtures.column;
+import static com.datacenter.canal.select.support.CanalEntryFixtures.entry;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TableFilterTest {
+
+    @Test
+    void eqOnNumericColumnComparesAsNumber() {
+        TableFilter filter = compile(condition("amount", c -> c.setEq("10")));
+
+        assertTrue(accept(filter, row("1", "10.00", "PAID")));
+        assertFalse(accept(filter, row("1", "11", "PAID")));
+    }
+
+    @Test
+    void inOnStringColumn() {
+        TableFilter filter = compile(condition("status", c -> c.setIn(Arrays.asList("PAID", "SHIPPED"))));
+
+        assertTrue(accept(filter, row("1", "10", "SHIPPED")));
+        assertFalse(accept(filter, row("1", "10", "paid")));
+    }
+
+    @Test
+    void inOnNumericColumnComparesAsNumber() {
+        TableFilter filter = compile(condition("amount", c -> c.setIn(Arrays.asList("1", "2.5"))));
+
+        assertTrue(accept(filter, row("1", "2.50", "PAID")));
+        assertFalse(accept(filter, row("1", "3", "PAID")));
+    }
+
+    @Test
+    void minMaxOnNumericColumnIsInclusive() {
+        TableFilter filter = compile(condition("amount", c -> {
+            c.setMin("9");
+            c.setMax("100");
+        }));
+
+        assertTrue(accept(filter, row("1", "9", "PAID")));
+        assertTrue(accept(filter, row("1", "10", "PAID")));
+        assertTrue(accept(filter, row("1", "100", "PAID")));
+        assertFalse(accept(filter, row("1", "8.99", "PAID")));
+        assertFalse(accept(filter, row("1", "101", "PAID")));
+    }
+
+    @Test
+    void minOnStringColumnComparesAsString() {
+        TableFilter filter = compile(condition("status", c -> c.setMin("B")));
+
+        assertTrue(accept(filter, row("1", "10", "PAID")));
+        assertFalse(accept(filter, row("1", "10", "AUDIT")));
+    }
+
+    @Test
+    void nonNumberConditionOnNumericColumnComparesAsString() {
+        TableFilter filter = compile(condition("amount", c -> c.setMin("a")));
+
+        assertFalse(accept(filter, row("1", "10", "PAID")));
+    }
+
+    @Test
+    void nonNumericValueOnNumericColumnIsNotMatched() {
+        TableFilter filter = compile(condition("amount", c -> c.setMin("0")));
+
+        assertFalse(accept(filter, row("1", "", "PAID")));
+    }
+
+    @Test
+    void nullColumnIsNotMatched() {
+        TableFilter filter = compile(condition("status", c -> c.setEq("PAID")));
+        List<CanalEntry.Column> columns = row("1", "10", "PAID");
+        columns.set(2, columns.get(2).toBuilder().setIsNull(true).setValue("").build());
+
+        assertFalse(accept(filter, columns));
+    }
+
+    @Test
+    void missingColumnMatchesNoRow() {
+        TableFilter filter = compile(condition("deleted", c -> c.setEq("0")));
+
+        assertFalse(accept(filter, row("1", "10", "PAID")));
+    }
+
+    @Test
+    void allConditionsMustMatch() {
+        TableFilter filter = compile(condition("amount", c -> c.setMin("5")), condition("status", c -> c.setEq("PAID")));
+
+        assertTrue(accept(filter, row("1", "10", "PAID")));
+        assertFalse(accept(filter, row("1", "1", "PAID")));
+        assertFalse(accept(filter, row("1", "10", "NEW")));
+    }
+
+    @Test
+    void conditionWithoutValueIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> compile(condition("status", c -> {
+        })));
+        assertThrows(IllegalArgumentException.class, () -> compile(condition(null, c -> c.setEq("PAID"))));
+    }
+
+    @Test
+    void includeKeepsPrimaryKey() {
+        FilterProperties.Table table = table();
+        table.setInclude(Collections.singletonList("status"));
+
+        Map<String, EtlColumn> data = insert(table).getData().get(0);
+
+        assertEquals(new HashSet<>(Arrays.asList("id", "status")), data.keySet());
+    }
+
+    @Test
+    void excludeDoesNotRemovePrimaryKey() {
+        FilterProperties.Table table = table();
+        table.setExclude(Arrays.asList("id", "amount"));
+
+        Map<String, EtlColumn> data = insert(table).getData().get(0);
+
+        assertEquals(new HashSet<>(Arrays.asList("id", "status")), data.keySet());
+    }
+
+    @Test
+    void planIsReusedForSameColumns() {
+        TableFilter filter = compile(condition("status", c -> c.setEq("PAID")));
+
+        assertSame(filter.plan("order", row("1", "10", "PAID")), filter.plan("order", row("2", "20", "NEW")));
+    }
+
+    private static boolean accept(TableFilter filter, List<CanalEntry.Column> columns) {
+        return filter.plan("order", columns).accept(columns);
+    }
+
+    private static TableFilter compile(FilterProperties.Condition... conditions) {
+        FilterProperties.Table table = table();
+        table.setWhere(Arrays.asList(conditions));
+        return TableFilter.compile(table);
+    }
+
+    private static FilterProperties.Table table() {
+        FilterProperties.Table table = new FilterProperties.Table();
+        table.setTable("shop.order");
+        return table;
+    }
+
+    private static FilterProperties.Condition condition(String column, Consumer<FilterProperties.Condition> setter) {
+        FilterProperties.Condition condition = new FilterProperties.Condition();
+        condition.setColumn(column);
+        setter.accept(condition);
+        return condition;
+    }
+
+    private static EtlMessage insert(FilterProperties.Table table) {
+        FilterProperties properties = new FilterProperties();
+        properties.setTables(Collections.singletonList(table));
+        MessageFilter messageFilter = new MessageFilter();
+        messageFilter.filterProperties = properties;
+        messageFilter.afterPropertiesSet();
+
+        CanalEntry.RowChange rowChange = CanalEntry.RowChange.newBuilder()
+                .setEventType(CanalEntry.EventType.INSERT)
+                .setIsDdl(false)
+                .addRowDatas(CanalEntry.RowData.newBuilder().addAllAfterColumns(row("1", "10", "PAID")))
+                .build();
+        List<EtlMessage> messages = EtlMessageUtil.convert(new Message(1, false,
+                Collections.singletonList(entry("order", rowChange))), messageFilter);
+        assertEquals(1, messages.size());
+        return messages.get(0);
+    }
+
+    private static List<CanalEntry.Column> row(String id, String amount, String status) {
+        return new ArrayList<>(Arrays.asList(
+                column("id", id, true, Types.INTEGER, "int(11)"),
+                column("amount", amount, false, Types.DECIMAL, "decimal(10,2)"),
+                column("status", status, false, Types.VARCHAR, "varchar(16)")));
+    }
+}
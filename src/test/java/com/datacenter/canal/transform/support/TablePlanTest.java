@@ -0,0 +1,98 @@
+package com.datacenter.canal.transform.support;
+
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.alibaba.otter.canal.protocol.Message;
+import com.datacenter.canal.select.support.EtlColumn;
+import com.datacenter.canal.select.support.EtlMessage;
+import com.datacenter.canal.select.support.EtlMessageUtil;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static com.datacenter.canal.select.support.CanalEntryFixtures.column;
+import static com.datacenter.canal.select.support.CanalEntryFixtures.entry;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TablePlanTest {
+
+    @Test
+    void applyDoesNotModifySource() {
+        EtlMessage source = updateMessage();
+        TablePlan plan = TablePlan.compile(Arrays.asList(
+                rule("email", TransformProperties.RuleType.CONSTANT, "x@y.z"),
+                rule("email", TransformProperties.RuleType.MASK, "2"),
+                rule("amt", TransformProperties.RuleType.RENAME, "amount")));
+
+        EtlMessage transformed = plan.apply(source);
+
+        Map<String, EtlColumn> row = transformed.getData().get(0);
+        assertEquals("***.z", row.get("email").getValue());
+        assertEquals("amount", row.get("amount").getName());
+        assertFalse(row.containsKey("amt"));
+        assertEquals("***.z", transformed.getOld().get(0).get("email").getValue());
+
+        Map<String, EtlColumn> sourceRow = source.getData().get(0);
+        assertEquals("new@b.c", sourceRow.get("email").getValue());
+        assertEquals("amt", sourceRow.get("amt").getName());
+        assertEquals("old@b.c", source.getOld().get(0).get("email").getValue());
+        assertEquals(Collections.singletonList("id"), source.getPkNames());
+    }
+
+    @Test
+    void applyTwiceGivesSameResult() {
+        EtlMessage source = updateMessage();
+        TablePlan plan = TablePlan.compile(Collections.singletonList(
+                rule("email", TransformProperties.RuleType.HASH, "salt")));
+
+        Object first = plan.apply(source).getData().get(0).get("email").getValue();
+        Object second = plan.apply(source).getData().get(0).get("email").getValue();
+
+        assertEquals(first, second);
+        assertNotEquals("new@b.c", first);
+    }
+
+    @Test
+    void renamePrimaryKey() {
+        EtlMessage source = updateMessage();
+        TablePlan plan = TablePlan.compile(Arrays.asList(
+                rule("id", TransformProperties.RuleType.RENAME, "user_id"),
+                rule("id", TransformProperties.RuleType.DROP, null)));
+
+        EtlMessage transformed = plan.apply(source);
+
+        assertEquals(Collections.singletonList("user_id"), transformed.getPkNames());
+        assertEquals("1", String.valueOf(transformed.getData().get(0).get("user_id").getValue()));
+        assertEquals("id", source.getData().get(0).get("id").getName());
+    }
+
+    private static TransformProperties.Rule rule(String column, TransformProperties.RuleType type, String param) {
+        TransformProperties.Rule rule = new TransformProperties.Rule();
+        rule.setColumn(column);
+        rule.setType(type);
+        rule.setParam(param);
+        return rule;
+    }
+
+    private static EtlMessage updateMessage() {
+        CanalEntry.RowData rowData = CanalEntry.RowData.newBuilder()
+                .addBeforeColumns(column("id", "1", true, false, Types.INTEGER, "int(11)"))
+                .addBeforeColumns(column("email", "old@b.c", false, false, Types.VARCHAR, "varchar(64)"))
+                .addBeforeColumns(column("amt", "10", false, false, Types.INTEGER, "int(11)"))
+                .addAfterColumns(column("id", "1", true, false, Types.INTEGER, "int(11)"))
+                .addAfterColumns(column("email", "new@b.c", false, true, Types.VARCHAR, "varchar(64)"))
+                .addAfterColumns(column("amt", "10", false, false, Types.INTEGER, "int(11)"))
+                .build();
+        CanalEntry.RowChange rowChange = CanalEntry.RowChange.newBuilder()
+                .setEventType(CanalEntry.EventType.UPDATE)
+                .setIsDdl(false)
+                .addRowDatas(rowData)
+                .build();
+        List<EtlMessage> messages = EtlMessageUtil.convert(new Message(1, false,
+                Collections.singletonList(entry("user", rowChange))));
+        return messages.get(0);
+    }
+}